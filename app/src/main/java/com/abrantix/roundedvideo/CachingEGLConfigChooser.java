@@ -0,0 +1,218 @@
+package com.abrantix.roundedvideo;
+
+import android.opengl.GLSurfaceView;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLDisplay;
+
+/**
+ * {@link android.opengl.GLSurfaceView.EGLConfigChooser} that picks the config closest to an
+ * {@link EGLConfigPolicy} and remembers it for every display and policy, so that screens with
+ * lots of {@link VideoSurfaceView}s only query EGL once.
+ *
+ * Instead of probing EGL with one spec after another, it asks once for all the GLES2 configs with
+ * at least the color and depth sizes of the policy and scores them. Configs with exactly the
+ * samples asked for are preferred; fewer samples, e.g. no multisampling at all, are only picked
+ * when nothing else is available, and coverage sampling (EGL_NV_coverage_sample on Tegra) counts
+ * as multisampling, just a bit worse. Between those, the config with the fewest unneeded color,
+ * depth and stencil bits wins, since those only cost memory and bandwidth.
+ */
+public class CachingEGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
+    private static final String TAG = "CachingEGLConfigChooser";
+
+    private static final int EGL_OPENGL_ES2_BIT = 4;
+    // See the EGL_NV_coverage_sample documentation
+    private static final int EGL_COVERAGE_BUFFERS_NV = 0x30E0;
+    private static final int EGL_COVERAGE_SAMPLES_NV = 0x30E1;
+
+    // Score weights, lower scores are better
+    private static final int MISSING_SAMPLE_PENALTY = 16;
+    private static final int EXTRA_SAMPLE_PENALTY = 4;
+    private static final int COVERAGE_SAMPLING_PENALTY = 8;
+    private static final int EXTRA_BIT_PENALTY = 1;
+
+    private static final Map<EGLDisplay, Map<EGLConfigPolicy, Choice>> sChoices =
+            new HashMap<EGLDisplay, Map<EGLConfigPolicy, Choice>>();
+
+    private final EGLConfigPolicy mPolicy;
+    private volatile Choice mChoice;
+
+    public CachingEGLConfigChooser(@NonNull EGLConfigPolicy policy) {
+        mPolicy = policy;
+    }
+
+    @NonNull
+    public EGLConfigPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * @return the config picked by the last call to {@link #chooseConfig(EGL10, EGLDisplay)}, or
+     * null if it wasn't called yet.
+     */
+    @Nullable
+    public Choice getChoice() {
+        return mChoice;
+    }
+
+    /**
+     * Forgets the configs picked so far, e.g. if the display was terminated.
+     */
+    public static void clearCache() {
+        synchronized (sChoices) {
+            sChoices.clear();
+        }
+    }
+
+    @Override
+    public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
+        Choice choice;
+        synchronized (sChoices) {
+            Map<EGLConfigPolicy, Choice> choices = sChoices.get(display);
+            if (choices == null) {
+                choices = new HashMap<EGLConfigPolicy, Choice>();
+                sChoices.put(display, choices);
+            }
+            choice = choices.get(mPolicy);
+            if (choice == null) {
+                choice = choose(egl, display, mPolicy);
+                choices.put(mPolicy, choice);
+                Log.i(TAG, "Picked " + choice + " for " + mPolicy);
+            }
+        }
+        mChoice = choice;
+        return choice.config;
+    }
+
+    @NonNull
+    private static Choice choose(EGL10 egl, EGLDisplay display, EGLConfigPolicy policy) {
+        // Sizes are minimums, EGL returns bigger configs too
+        final int[] configSpec = {
+                EGL10.EGL_RED_SIZE, policy.getRedSize(),
+                EGL10.EGL_GREEN_SIZE, policy.getGreenSize(),
+                EGL10.EGL_BLUE_SIZE, policy.getBlueSize(),
+                EGL10.EGL_ALPHA_SIZE, policy.getAlphaSize(),
+                EGL10.EGL_DEPTH_SIZE, policy.getDepthSize(),
+                // Requires that setEGLContextClientVersion(2) is called on the view.
+                EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                EGL10.EGL_NONE
+        };
+        final int[] value = new int[1];
+        if (!egl.eglChooseConfig(display, configSpec, null, 0, value)) {
+            throw new IllegalArgumentException("eglChooseConfig failed");
+        }
+        final int numConfigs = value[0];
+        if (numConfigs <= 0) {
+            throw new IllegalArgumentException("No configs match configSpec");
+        }
+        final EGLConfig[] configs = new EGLConfig[numConfigs];
+        if (!egl.eglChooseConfig(display, configSpec, configs, numConfigs, value)) {
+            throw new IllegalArgumentException("data eglChooseConfig failed");
+        }
+
+        final int count = Math.min(value[0], numConfigs);
+        Choice best = null;
+        for (int i = 0; i < count; i++) {
+            if (configs[i] == null) {
+                continue;
+            }
+            final Choice choice = new Choice(egl, display, configs[i], value);
+            choice.mScore = score(choice, policy);
+            if (best == null || choice.mScore < best.mScore) {
+                best = choice;
+            }
+        }
+        if (best == null) {
+            throw new IllegalArgumentException("No config chosen");
+        }
+        return best;
+    }
+
+    private static int score(@NonNull Choice choice, @NonNull EGLConfigPolicy policy) {
+        int score = 0;
+        score += EXTRA_BIT_PENALTY * (choice.redSize - policy.getRedSize() +
+                choice.greenSize - policy.getGreenSize() +
+                choice.blueSize - policy.getBlueSize() +
+                choice.alphaSize - policy.getAlphaSize() +
+                choice.depthSize - policy.getDepthSize() +
+                choice.stencilSize);
+
+        int samples = choice.samples;
+        if (samples == 0 && choice.coverageSamples > 0) {
+            samples = choice.coverageSamples;
+            score += COVERAGE_SAMPLING_PENALTY;
+        } else if (policy.getSamples() == 0 && choice.coverageSamples > 0) {
+            score += COVERAGE_SAMPLING_PENALTY;
+        }
+        if (samples < policy.getSamples()) {
+            score += MISSING_SAMPLE_PENALTY * (policy.getSamples() - samples);
+        } else {
+            score += EXTRA_SAMPLE_PENALTY * (samples - policy.getSamples());
+        }
+        return score;
+    }
+
+    /**
+     * An EGL config along with the attributes it was scored on.
+     */
+    public static final class Choice {
+        @NonNull
+        public final EGLConfig config;
+        public final int redSize;
+        public final int greenSize;
+        public final int blueSize;
+        public final int alphaSize;
+        public final int depthSize;
+        public final int stencilSize;
+        public final int samples;
+        public final int coverageSamples;
+        private int mScore;
+
+        Choice(EGL10 egl, EGLDisplay display, @NonNull EGLConfig config, int[] value) {
+            this.config = config;
+            redSize = getConfigAttrib(egl, display, config, EGL10.EGL_RED_SIZE, value);
+            greenSize = getConfigAttrib(egl, display, config, EGL10.EGL_GREEN_SIZE, value);
+            blueSize = getConfigAttrib(egl, display, config, EGL10.EGL_BLUE_SIZE, value);
+            alphaSize = getConfigAttrib(egl, display, config, EGL10.EGL_ALPHA_SIZE, value);
+            depthSize = getConfigAttrib(egl, display, config, EGL10.EGL_DEPTH_SIZE, value);
+            stencilSize = getConfigAttrib(egl, display, config, EGL10.EGL_STENCIL_SIZE, value);
+            samples = getConfigAttrib(egl, display, config, EGL10.EGL_SAMPLES, value);
+            coverageSamples =
+                    getConfigAttrib(egl, display, config, EGL_COVERAGE_BUFFERS_NV, value) > 0 ?
+                            getConfigAttrib(egl, display, config, EGL_COVERAGE_SAMPLES_NV,
+                                    value) : 0;
+        }
+
+        private static int getConfigAttrib(EGL10 egl, EGLDisplay display, EGLConfig config,
+                                           int attribute, int[] value) {
+            if (egl.eglGetConfigAttrib(display, config, attribute, value)) {
+                return value[0];
+            }
+            return 0;
+        }
+
+        /**
+         * @return true if the config uses coverage sampling, which needs the coverage buffer to
+         * be cleared along with the color one.
+         */
+        public boolean usesCoverageAa() {
+            return coverageSamples > 0;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "EGLConfig[rgba=" + redSize + greenSize + blueSize + alphaSize +
+                    ", depth=" + depthSize + ", stencil=" + stencilSize +
+                    ", samples=" + samples + ", coverageSamples=" + coverageSamples +
+                    ", score=" + mScore + "]";
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package com.abrantix.roundedvideo;
+
+import android.graphics.Point;
+import android.graphics.RectF;
+import android.opengl.GLES20;
+import android.opengl.GLSurfaceView;
+import android.opengl.Matrix;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * {@link android.opengl.GLSurfaceView.Renderer} of a {@link VideoCompositorView}: draws all its
+ * {@link VideoLayer}s, back to front, with a single program and from a single pair of buffer
+ * objects holding the rounded geometry of every layer.
+ *
+ * By default each layer takes a draw call of its own. With batching on, up to
+ * {@link VideoProgram#BATCH_TEXTURE_UNITS} consecutive layers are drawn by a single call: their
+ * textures are bound to different texture units and a third buffer object gives every vertex the
+ * texture matrix and texture unit of its layer. Since the indices of the layers are laid out one
+ * after the other in drawing order, a batch is just a range of the index buffer.
+ */
+class CompositorRenderer implements GLSurfaceView.Renderer {
+    private static final String TAG = "CompositorRenderer";
+
+    private static final int FLOAT_SIZE_BYTES = 4;
+    private static final int SHORT_SIZE_BYTES = 2;
+    private static final int TRIANGLE_VERTICES_DATA_STRIDE_BYTES =
+            GLRoundedGeometry.FLOATS_PER_VERTEX * FLOAT_SIZE_BYTES;
+    private static final int TRIANGLE_VERTICES_DATA_POS_OFFSET = 0;
+    private static final int TRIANGLE_VERTICES_DATA_UV_OFFSET = 3;
+    // indices are shorts
+    private static final int MAX_VERTICES = 0xFFFF;
+    // per vertex: 2 rows of the texture matrix and the texture unit
+    private static final int TILE_ATTRIBUTES_FLOATS_PER_VERTEX = 7;
+    private static final int TILE_ATTRIBUTES_STRIDE_BYTES =
+            TILE_ATTRIBUTES_FLOATS_PER_VERTEX * FLOAT_SIZE_BYTES;
+    private static final int TILE_ATTRIBUTES_ST_ROW0_OFFSET = 0;
+    private static final int TILE_ATTRIBUTES_ST_ROW1_OFFSET = 3;
+    private static final int TILE_ATTRIBUTES_TEXTURE_INDEX_OFFSET = 6;
+
+    private static final Comparator<VideoLayer> Z_ORDER_COMPARATOR =
+            new Comparator<VideoLayer>() {
+                @Override
+                public int compare(VideoLayer lhs, VideoLayer rhs) {
+                    return lhs.mDrawZOrder < rhs.mDrawZOrder ? -1 :
+                            (lhs.mDrawZOrder == rhs.mDrawZOrder ? 0 : 1);
+                }
+            };
+
+    private final GLStateCache mGL;
+    private final GLRoundedGeometry mRoundedGeometry;
+    private CachingEGLConfigChooser mConfigChooser;
+    private boolean mUsesCoverageAa = false;
+
+    // Guarded by itself
+    private final List<VideoLayer> mLayers = new ArrayList<VideoLayer>();
+    private final List<VideoLayer> mRemovedLayers = new ArrayList<VideoLayer>();
+    private boolean mLayersChanged = false;
+
+    // Only touched on the GL thread
+    private final ArrayList<VideoLayer> mDrawLayers = new ArrayList<VideoLayer>();
+    private VideoProgram mProgram;
+    private VideoProgram mBatchedProgram;
+    private boolean mBatchedProgramFailed = false;
+    private ProgramCache mProgramCache = new ProgramCache();
+    private boolean mOwnsProgramCache = true;
+    private boolean mBatching = false;
+    // whether the current geometry was laid out for batching
+    private boolean mBatched = false;
+    private final float[] mMVPMatrix = new float[16];
+    private final Point mViewPortSize = new Point();
+    private boolean mViewPortChanged = false;
+    private final RectF mLayerGLBounds = new RectF();
+    private final Point mLayerSize = new Point();
+
+    // taken from the DirectBufferPool, with the float and short buffers being views of them
+    private ByteBuffer mTriangleVertexBytes;
+    private ByteBuffer mTriangleIndexBytes;
+    private ByteBuffer mTileAttributeBytes;
+    private FloatBuffer mTriangleVertices;
+    private ShortBuffer mTriangleIndices;
+    private int mVerticesCount;
+    private int mIndicesCount;
+    private final int[] mBufferIds = new int[3];
+    private int mVertexBufferId;
+    private int mIndexBufferId;
+    private int mVertexBufferCapacity;
+    private int mIndexBufferCapacity;
+    private boolean mBuffersDirty = true;
+
+    private FloatBuffer mTileAttributes;
+    private int mTileAttributesBufferId;
+    private int mTileAttributesBufferCapacity;
+    private boolean mTileAttributesDirty = true;
+
+    public CompositorRenderer() {
+        this(GLES20Backend.getInstance(), new GLRoundedGeometry());
+    }
+
+    /**
+     * @param gl where all GL calls go through, {@link GLES20Backend} on device. It gets wrapped
+     *           in a {@link GLStateCache} unless it already is one.
+     * @param roundedGeometry generates the geometry of the layers.
+     */
+    public CompositorRenderer(@NonNull GLBackend gl, @NonNull GLRoundedGeometry roundedGeometry) {
+        mGL = gl instanceof GLStateCache ? (GLStateCache) gl : new GLStateCache(gl);
+        mRoundedGeometry = roundedGeometry;
+        Matrix.setIdentityM(mMVPMatrix, 0);
+    }
+
+    @NonNull
+    public GLStateCache getGLStateCache() {
+        return mGL;
+    }
+
+    /**
+     * @see VideoRenderer#setConfigChooser(CachingEGLConfigChooser)
+     */
+    public void setConfigChooser(@Nullable CachingEGLConfigChooser configChooser) {
+        mConfigChooser = configChooser;
+    }
+
+    /**
+     * @see VideoRenderer#setProgramCache(ProgramCache)
+     */
+    public void setProgramCache(@NonNull ProgramCache programCache) {
+        mProgramCache = programCache;
+        mOwnsProgramCache = false;
+    }
+
+    @NonNull
+    public ProgramCache getProgramCache() {
+        return mProgramCache;
+    }
+
+    public void addLayer(@NonNull VideoLayer layer) {
+        synchronized (mLayers) {
+            if (!mLayers.contains(layer)) {
+                mLayers.add(layer);
+                mRemovedLayers.remove(layer);
+                mLayersChanged = true;
+            }
+        }
+    }
+
+    public void removeLayer(@NonNull VideoLayer layer) {
+        synchronized (mLayers) {
+            if (mLayers.remove(layer)) {
+                mRemovedLayers.add(layer);
+                mLayersChanged = true;
+            }
+        }
+    }
+
+    @NonNull
+    public List<VideoLayer> getLayers() {
+        synchronized (mLayers) {
+            return new ArrayList<VideoLayer>(mLayers);
+        }
+    }
+
+    /**
+     * Sets whether consecutive layers are drawn together, see {@link CompositorRenderer}. Must
+     * run on the GL thread.
+     */
+    public void setBatching(boolean batching) {
+        mBatching = batching;
+    }
+
+    public void onLayerOrderChanged() {
+        synchronized (mLayers) {
+            mLayersChanged = true;
+        }
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
+        // Everything that lived in the old context is gone
+        mVertexBufferId = 0;
+        mIndexBufferId = 0;
+        mTileAttributesBufferId = 0;
+        mBuffersDirty = true;
+        mTileAttributesDirty = true;
+        mGL.invalidate();
+        if (mConfigChooser != null && mConfigChooser.getChoice() != null) {
+            mUsesCoverageAa = mConfigChooser.getChoice().usesCoverageAa();
+        }
+        synchronized (mLayers) {
+            for (int i = 0; i < mLayers.size(); i++) {
+                mLayers.get(i).onContextLost();
+            }
+            for (int i = 0; i < mRemovedLayers.size(); i++) {
+                mRemovedLayers.get(i).onContextLost();
+            }
+            mRemovedLayers.clear();
+        }
+        if (mOwnsProgramCache) {
+            mProgramCache.invalidate();
+        }
+        mProgram = mProgramCache.get(mGL, "");
+        mBatchedProgram = null;
+        mBatchedProgramFailed = false;
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 glUnused, int width, int height) {
+        mGL.glViewport(0, 0, width, height);
+        mViewPortSize.set(width, height);
+        mViewPortChanged = true;
+    }
+
+    @Override
+    public void onDrawFrame(GL10 glUnused) {
+        boolean geometryChanged = updateDrawLayers();
+        for (int i = 0; i < mDrawLayers.size(); i++) {
+            geometryChanged |= mDrawLayers.get(i).prepareForDraw(mGL);
+        }
+        // Layers can only be batched when they are plain triangles, fans don't chain
+        final boolean batched = mBatching &&
+                mRoundedGeometry.getTopology() == GLRoundedGeometry.TOPOLOGY_TRIANGLES &&
+                getBatchedProgram() != null;
+        if (geometryChanged || mViewPortChanged || batched != mBatched) {
+            mBatched = batched;
+            updateVertexData();
+            mViewPortChanged = false;
+        }
+
+        mGL.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        int clearMask = GLES20.GL_COLOR_BUFFER_BIT;
+        if (mUsesCoverageAa) { // Tegra weirdness
+            final int GL_COVERAGE_BUFFER_BIT_NV = 0x8000;
+            clearMask |= GL_COVERAGE_BUFFER_BIT_NV;
+        }
+        mGL.glClear(clearMask);
+
+        final VideoProgram program = mBatched ? mBatchedProgram : mProgram;
+        if (program == null || mIndicesCount == 0) {
+            VideoProgram.checkGlError(mGL, "onDrawFrame");
+            return;
+        }
+
+        mGL.glUseProgram(program.program);
+        uploadBufferObjects();
+        if (!mBatched && mBatchedProgram != null) {
+            // Don't leave the arrays of the batched program pointing at a stale buffer. Done
+            // before enabling ours since the programs are linked apart and can share locations.
+            mGL.glDisableVertexAttribArray(mBatchedProgram.aSTRow0);
+            mGL.glDisableVertexAttribArray(mBatchedProgram.aSTRow1);
+            mGL.glDisableVertexAttribArray(mBatchedProgram.aTextureIndex);
+        }
+        mGL.glVertexAttribPointer(program.aPosition, 3, GLES20.GL_FLOAT, false,
+                TRIANGLE_VERTICES_DATA_STRIDE_BYTES,
+                TRIANGLE_VERTICES_DATA_POS_OFFSET * FLOAT_SIZE_BYTES);
+        mGL.glEnableVertexAttribArray(program.aPosition);
+        mGL.glVertexAttribPointer(program.aTextureCoord, 2, GLES20.GL_FLOAT, false,
+                TRIANGLE_VERTICES_DATA_STRIDE_BYTES,
+                TRIANGLE_VERTICES_DATA_UV_OFFSET * FLOAT_SIZE_BYTES);
+        mGL.glEnableVertexAttribArray(program.aTextureCoord);
+        mGL.glUniformMatrix4fv(program.uMVPMatrix, 1, false, mMVPMatrix, 0);
+
+        if (mBatched) {
+            uploadTileAttributes(program);
+            drawBatches();
+        } else {
+            drawLayers(program);
+        }
+
+        // GL errors stick until read so a single check per frame catches them all
+        VideoProgram.checkGlError(mGL, "onDrawFrame");
+    }
+
+    /**
+     * Draws every layer with a call of its own.
+     */
+    private void drawLayers(@NonNull VideoProgram program) {
+        final int mode =
+                mRoundedGeometry.getTopology() == GLRoundedGeometry.TOPOLOGY_TRIANGLE_FAN ?
+                        GLES20.GL_TRIANGLE_FAN : GLES20.GL_TRIANGLES;
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        // Back to front, so layers on top simply cover the ones below
+        for (int i = 0; i < mDrawLayers.size(); i++) {
+            final VideoLayer layer = mDrawLayers.get(i);
+            if (layer.mIndexCount == 0) {
+                continue;
+            }
+            mGL.glBindTexture(VideoProgram.GL_TEXTURE_EXTERNAL_OES, layer.mTextureId);
+            mGL.glUniformMatrix4fv(program.uSTMatrix, 1, false, layer.mSTMatrix, 0);
+            mGL.glDrawElements(mode, layer.mIndexCount, GLES20.GL_UNSIGNED_SHORT,
+                    layer.mIndexOffset * SHORT_SIZE_BYTES);
+        }
+    }
+
+    /**
+     * Draws the layers in batches of consecutive layers, each one bound to the texture unit it
+     * was given in {@link #updateVertexData()}.
+     */
+    private void drawBatches() {
+        int batchStart = -1;
+        int batchEnd = -1;
+        for (int i = 0; i < mDrawLayers.size(); i++) {
+            final VideoLayer layer = mDrawLayers.get(i);
+            if (layer.mIndexCount == 0) {
+                continue;
+            }
+            mGL.glActiveTexture(GLES20.GL_TEXTURE0 + layer.mBatchSlot);
+            mGL.glBindTexture(VideoProgram.GL_TEXTURE_EXTERNAL_OES, layer.mTextureId);
+            if (batchStart < 0) {
+                batchStart = layer.mIndexOffset;
+            }
+            batchEnd = layer.mIndexOffset + layer.mIndexCount;
+            if (layer.mBatchSlot == VideoProgram.BATCH_TEXTURE_UNITS - 1) {
+                mGL.glDrawElements(GLES20.GL_TRIANGLES, batchEnd - batchStart,
+                        GLES20.GL_UNSIGNED_SHORT, batchStart * SHORT_SIZE_BYTES);
+                batchStart = -1;
+            }
+        }
+        if (batchStart >= 0) {
+            mGL.glDrawElements(GLES20.GL_TRIANGLES, batchEnd - batchStart,
+                    GLES20.GL_UNSIGNED_SHORT, batchStart * SHORT_SIZE_BYTES);
+        }
+    }
+
+    private VideoProgram getBatchedProgram() {
+        if (mBatchedProgram == null && !mBatchedProgramFailed) {
+            mBatchedProgram = mProgramCache.get(mGL, VideoProgram.DEFINE_BATCHED);
+            // e.g. too few texture units, draw layer by layer instead of retrying every frame
+            mBatchedProgramFailed = mBatchedProgram == null;
+        }
+        return mBatchedProgram;
+    }
+
+    /**
+     * Picks up added, removed and reordered layers. Must run on the GL thread.
+     *
+     * @return true if the layers to draw changed.
+     */
+    private boolean updateDrawLayers() {
+        synchronized (mLayers) {
+            for (int i = 0; i < mRemovedLayers.size(); i++) {
+                mRemovedLayers.get(i).release(mGL);
+            }
+            mRemovedLayers.clear();
+            if (!mLayersChanged) {
+                return false;
+            }
+            mLayersChanged = false;
+            mDrawLayers.clear();
+            mDrawLayers.addAll(mLayers);
+        }
+        // Snapshot the z-orders so they can't change while sorting. The sort is stable, so
+        // layers with the same z-order keep the order they were added in.
+        for (int i = 0; i < mDrawLayers.size(); i++) {
+            final VideoLayer layer = mDrawLayers.get(i);
+            layer.mDrawZOrder = layer.getZOrder();
+        }
+        Collections.sort(mDrawLayers, Z_ORDER_COMPARATOR);
+        return true;
+    }
+
+    /**
+     * Regenerates the geometry of every layer into our vertex and index buffers, one after the
+     * other in drawing order.
+     */
+    private void updateVertexData() {
+        int verticesSize = 0;
+        int indicesSize = 0;
+        for (int i = 0; i < mDrawLayers.size(); i++) {
+            final VideoLayer layer = mDrawLayers.get(i);
+            verticesSize += mRoundedGeometry.getVertexFloatCount(layer.mDrawRoundRadius);
+            indicesSize += mRoundedGeometry.getIndexCount(layer.mDrawRoundRadius);
+        }
+        final DirectBufferPool pool = DirectBufferPool.getInstance();
+        if (mTriangleVertices == null || mTriangleVertices.capacity() < verticesSize) {
+            if (mTriangleVertexBytes != null) {
+                pool.release(mTriangleVertexBytes);
+            }
+            mTriangleVertexBytes = pool.acquire(verticesSize * FLOAT_SIZE_BYTES);
+            mTriangleVertices = mTriangleVertexBytes.asFloatBuffer();
+        }
+        if (mTriangleIndices == null || mTriangleIndices.capacity() < indicesSize) {
+            if (mTriangleIndexBytes != null) {
+                pool.release(mTriangleIndexBytes);
+            }
+            mTriangleIndexBytes = pool.acquire(indicesSize * SHORT_SIZE_BYTES);
+            mTriangleIndices = mTriangleIndexBytes.asShortBuffer();
+        }
+        mTriangleVertices.clear();
+        mTriangleIndices.clear();
+
+        int batchSlot = 0;
+        final float width = mViewPortSize.x;
+        final float height = mViewPortSize.y;
+        for (int i = 0; i < mDrawLayers.size(); i++) {
+            final VideoLayer layer = mDrawLayers.get(i);
+            final RectF bounds = layer.mDrawBounds;
+            layer.mIndexOffset = mTriangleIndices.position();
+            layer.mIndexCount = 0;
+            layer.mVertexOffset = mTriangleVertices.position() /
+                    GLRoundedGeometry.FLOATS_PER_VERTEX;
+            layer.mVertexCount = 0;
+            if (bounds.width() <= 0 || bounds.height() <= 0 || width <= 0 || height <= 0) {
+                continue;
+            }
+            final int vertices = mRoundedGeometry.getVertexFloatCount(layer.mDrawRoundRadius) /
+                    GLRoundedGeometry.FLOATS_PER_VERTEX;
+            if (mTriangleVertices.position() / GLRoundedGeometry.FLOATS_PER_VERTEX + vertices >
+                    MAX_VERTICES) {
+                Log.w(TAG, "Too many layers, skipping the ones on top");
+                continue;
+            }
+            // view pixels, y down, to GL units, y up
+            mLayerGLBounds.set(
+                    -1f + 2f * bounds.left / width,
+                    1f - 2f * bounds.top / height,
+                    -1f + 2f * bounds.right / width,
+                    1f - 2f * bounds.bottom / height);
+            mLayerSize.set(Math.round(bounds.width()), Math.round(bounds.height()));
+            mRoundedGeometry.generateVertexData(layer.mDrawRoundRadius, mLayerGLBounds,
+                    mLayerSize, 0f, mTriangleVertices, mTriangleIndices);
+            layer.mIndexCount = mTriangleIndices.position() - layer.mIndexOffset;
+            layer.mVertexCount = vertices;
+            layer.mBatchSlot = batchSlot;
+            batchSlot = (batchSlot + 1) % VideoProgram.BATCH_TEXTURE_UNITS;
+        }
+        mVerticesCount = mTriangleVertices.position();
+        mIndicesCount = mTriangleIndices.position();
+        mTriangleVertices.position(0);
+        mTriangleIndices.position(0);
+        mBuffersDirty = true;
+
+        if (mBatched) {
+            updateTileAttributes();
+        }
+    }
+
+    /**
+     * Gives our vertex, index and tile attribute buffers back to the {@link DirectBufferPool},
+     * for views whose surface is gone not to hold on to native memory. They're taken again on
+     * the next frame. Must run on the GL thread.
+     */
+    void releaseGeometryBuffers() {
+        final DirectBufferPool pool = DirectBufferPool.getInstance();
+        if (mTriangleVertexBytes != null) {
+            pool.release(mTriangleVertexBytes);
+        }
+        if (mTriangleIndexBytes != null) {
+            pool.release(mTriangleIndexBytes);
+        }
+        if (mTileAttributeBytes != null) {
+            pool.release(mTileAttributeBytes);
+        }
+        mTriangleVertexBytes = null;
+        mTriangleIndexBytes = null;
+        mTileAttributeBytes = null;
+        mTriangleVertices = null;
+        mTriangleIndices = null;
+        mTileAttributes = null;
+        mVerticesCount = 0;
+        mIndicesCount = 0;
+        // regenerated on the next frame
+        mViewPortChanged = true;
+    }
+
+    /**
+     * Writes the texture matrix and texture unit of every layer into the per vertex tile
+     * attributes.
+     */
+    private void updateTileAttributes() {
+        final int size = mVerticesCount / GLRoundedGeometry.FLOATS_PER_VERTEX *
+                TILE_ATTRIBUTES_FLOATS_PER_VERTEX;
+        if (mTileAttributes == null || mTileAttributes.capacity() < size) {
+            final DirectBufferPool pool = DirectBufferPool.getInstance();
+            if (mTileAttributeBytes != null) {
+                pool.release(mTileAttributeBytes);
+            }
+            mTileAttributeBytes = pool.acquire(size * FLOAT_SIZE_BYTES);
+            mTileAttributes = mTileAttributeBytes.asFloatBuffer();
+        }
+        for (int i = 0; i < mDrawLayers.size(); i++) {
+            writeTileAttributes(mDrawLayers.get(i));
+        }
+        mTileAttributesDirty = true;
+    }
+
+    private void writeTileAttributes(@NonNull VideoLayer layer) {
+        final float[] m = layer.mSTMatrix;
+        System.arraycopy(m, 0, layer.mBatchedSTMatrix, 0, 16);
+        int position = layer.mVertexOffset * TILE_ATTRIBUTES_FLOATS_PER_VERTEX;
+        for (int i = 0; i < layer.mVertexCount; i++) {
+            // The rows of the column major matrix that transform (u, v, 0, 1) into (s, t)
+            mTileAttributes.put(position, m[0]);
+            mTileAttributes.put(position + 1, m[4]);
+            mTileAttributes.put(position + 2, m[12]);
+            mTileAttributes.put(position + 3, m[1]);
+            mTileAttributes.put(position + 4, m[5]);
+            mTileAttributes.put(position + 5, m[13]);
+            mTileAttributes.put(position + 6, layer.mBatchSlot);
+            position += TILE_ATTRIBUTES_FLOATS_PER_VERTEX;
+        }
+    }
+
+    /**
+     * Makes sure the tile attributes buffer object holds the texture matrices of the latest
+     * frames and points the attributes of the batched program at it. Video texture matrices
+     * rarely change, so this usually uploads nothing.
+     */
+    private void uploadTileAttributes(@NonNull VideoProgram program) {
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTileAttributesBufferId);
+        final int vertices = mVerticesCount / GLRoundedGeometry.FLOATS_PER_VERTEX;
+        if (mTileAttributesDirty) {
+            final int size = vertices * TILE_ATTRIBUTES_STRIDE_BYTES;
+            mTileAttributes.position(0);
+            if (size > mTileAttributesBufferCapacity) {
+                mGL.glBufferData(GLES20.GL_ARRAY_BUFFER, size, mTileAttributes,
+                        GLES20.GL_DYNAMIC_DRAW);
+                mTileAttributesBufferCapacity = size;
+            } else {
+                mGL.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, size, mTileAttributes);
+            }
+            mTileAttributesDirty = false;
+        } else {
+            for (int i = 0; i < mDrawLayers.size(); i++) {
+                final VideoLayer layer = mDrawLayers.get(i);
+                if (layer.mVertexCount == 0 ||
+                        Arrays.equals(layer.mSTMatrix, layer.mBatchedSTMatrix)) {
+                    continue;
+                }
+                writeTileAttributes(layer);
+                final int offset = layer.mVertexOffset * TILE_ATTRIBUTES_FLOATS_PER_VERTEX;
+                mTileAttributes.position(offset);
+                mGL.glBufferSubData(GLES20.GL_ARRAY_BUFFER, offset * FLOAT_SIZE_BYTES,
+                        layer.mVertexCount * TILE_ATTRIBUTES_STRIDE_BYTES, mTileAttributes);
+            }
+            mTileAttributes.position(0);
+        }
+
+        mGL.glVertexAttribPointer(program.aSTRow0, 3, GLES20.GL_FLOAT, false,
+                TILE_ATTRIBUTES_STRIDE_BYTES, TILE_ATTRIBUTES_ST_ROW0_OFFSET * FLOAT_SIZE_BYTES);
+        mGL.glEnableVertexAttribArray(program.aSTRow0);
+        mGL.glVertexAttribPointer(program.aSTRow1, 3, GLES20.GL_FLOAT, false,
+                TILE_ATTRIBUTES_STRIDE_BYTES, TILE_ATTRIBUTES_ST_ROW1_OFFSET * FLOAT_SIZE_BYTES);
+        mGL.glEnableVertexAttribArray(program.aSTRow1);
+        mGL.glVertexAttribPointer(program.aTextureIndex, 1, GLES20.GL_FLOAT, false,
+                TILE_ATTRIBUTES_STRIDE_BYTES,
+                TILE_ATTRIBUTES_TEXTURE_INDEX_OFFSET * FLOAT_SIZE_BYTES);
+        mGL.glEnableVertexAttribArray(program.aTextureIndex);
+    }
+
+    /**
+     * Makes sure our buffer objects exist, are bound and hold the current geometry.
+     */
+    private void uploadBufferObjects() {
+        if (mVertexBufferId == 0) {
+            mGL.glGenBuffers(3, mBufferIds, 0);
+            mVertexBufferId = mBufferIds[0];
+            mIndexBufferId = mBufferIds[1];
+            mTileAttributesBufferId = mBufferIds[2];
+            mVertexBufferCapacity = 0;
+            mIndexBufferCapacity = 0;
+            mTileAttributesBufferCapacity = 0;
+            mBuffersDirty = true;
+            mTileAttributesDirty = true;
+        }
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+        mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
+        if (!mBuffersDirty) {
+            return;
+        }
+        final int verticesSize = mVerticesCount * FLOAT_SIZE_BYTES;
+        mTriangleVertices.position(0);
+        if (verticesSize > mVertexBufferCapacity) {
+            mGL.glBufferData(GLES20.GL_ARRAY_BUFFER, verticesSize, mTriangleVertices,
+                    GLES20.GL_STATIC_DRAW);
+            mVertexBufferCapacity = verticesSize;
+        } else {
+            mGL.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, verticesSize, mTriangleVertices);
+        }
+        final int indicesSize = mIndicesCount * SHORT_SIZE_BYTES;
+        mTriangleIndices.position(0);
+        if (indicesSize > mIndexBufferCapacity) {
+            mGL.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indicesSize, mTriangleIndices,
+                    GLES20.GL_STATIC_DRAW);
+            mIndexBufferCapacity = indicesSize;
+        } else {
+            mGL.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, indicesSize,
+                    mTriangleIndices);
+        }
+        mBuffersDirty = false;
+    }
+}
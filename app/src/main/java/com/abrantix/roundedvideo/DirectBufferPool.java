@@ -0,0 +1,212 @@
+package com.abrantix.roundedvideo;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Process wide pool of the native order direct buffers the renderers keep their vertex and index
+ * data in.
+ *
+ * Direct buffers live in native memory which is only given back when the garbage collector gets
+ * around to finalizing them, so views created and destroyed in a row, e.g. while scrolling a list
+ * of videos, would pile up native memory that the Java heap knows nothing about. Renderers take
+ * their buffers from here instead and give them back as soon as their surface is destroyed, for
+ * the next view to reuse.
+ *
+ * Buffers come in power of two size classes so a buffer given back fits any request of its class.
+ * The pool is bounded by the amount of bytes it holds on to, buffers given back past that are
+ * left to the garbage collector, just like the ones too big to be pooled at all.
+ */
+public class DirectBufferPool {
+    public static final int DEFAULT_MAX_HELD_BYTES = 512 * 1024;
+
+    // smallest and biggest size classes, smaller requests get the smallest and bigger ones an
+    // exact, unpooled, buffer
+    static final int MIN_CLASS_BYTES = 256;
+    static final int MAX_CLASS_BYTES = 1024 * 1024;
+    private static final int CLASS_COUNT =
+            Integer.numberOfTrailingZeros(MAX_CLASS_BYTES / MIN_CLASS_BYTES) + 1;
+
+    private static DirectBufferPool sInstance;
+
+    // free buffers of each size class
+    private final ArrayList<ArrayList<ByteBuffer>> mFree =
+            new ArrayList<ArrayList<ByteBuffer>>(CLASS_COUNT);
+
+    private int mMaxHeldBytes;
+    private int mHeldBytes;
+    private long mOutstandingBytes;
+    private long mHitCount;
+    private long mMissCount;
+    private long mDropCount;
+
+    /**
+     * @return the pool shared by all the renderers in this process.
+     */
+    @NonNull
+    public static synchronized DirectBufferPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new DirectBufferPool(DEFAULT_MAX_HELD_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param maxHeldBytes the maximum amount of bytes in free buffers to keep.
+     */
+    public DirectBufferPool(int maxHeldBytes) {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            mFree.add(new ArrayList<ByteBuffer>());
+        }
+        setMaxHeldBytes(maxHeldBytes);
+    }
+
+    /**
+     * Changes the bound of this pool, dropping free buffers if needed.
+     *
+     * @param maxHeldBytes the maximum amount of bytes in free buffers to keep.
+     */
+    public synchronized void setMaxHeldBytes(int maxHeldBytes) {
+        if (maxHeldBytes < 0) {
+            throw new IllegalArgumentException("Pool bound can't be negative");
+        }
+        mMaxHeldBytes = maxHeldBytes;
+        trimToSize();
+    }
+
+    /**
+     * @param bytes the minimum capacity of the buffer.
+     * @return a cleared, native order, direct buffer of at least the given capacity, which must
+     * be given back with {@link #release(ByteBuffer)} once it's not used anymore.
+     */
+    @NonNull
+    public synchronized ByteBuffer acquire(int bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Buffer size can't be negative");
+        }
+        final int sizeClass = getSizeClass(bytes);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            final ArrayList<ByteBuffer> free = mFree.get(sizeClass);
+            if (!free.isEmpty()) {
+                buffer = free.remove(free.size() - 1);
+                // the last owner may have flipped the order of the buffer itself
+                buffer.clear();
+                buffer.order(ByteOrder.nativeOrder());
+                mHeldBytes -= buffer.capacity();
+                mHitCount++;
+            } else {
+                buffer = allocate(MIN_CLASS_BYTES << sizeClass);
+                mMissCount++;
+            }
+        } else {
+            buffer = allocate(bytes);
+            mMissCount++;
+        }
+        mOutstandingBytes += buffer.capacity();
+        return buffer;
+    }
+
+    /**
+     * Gives back a buffer taken with {@link #acquire(int)}, for the pool to hand out again. The
+     * buffer, and any view of it, must not be used anymore.
+     */
+    public synchronized void release(@NonNull ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        mOutstandingBytes -= capacity;
+        final int sizeClass = getSizeClass(capacity);
+        if (sizeClass < 0 || (MIN_CLASS_BYTES << sizeClass) != capacity) {
+            // too big to be pooled
+            mDropCount++;
+            return;
+        }
+        if (mHeldBytes + capacity > mMaxHeldBytes) {
+            mDropCount++;
+            return;
+        }
+        mFree.get(sizeClass).add(buffer);
+        mHeldBytes += capacity;
+    }
+
+    /**
+     * Drops all the free buffers, for the garbage collector to reclaim. The counters are kept.
+     */
+    public synchronized void evictAll() {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            mDropCount += mFree.get(i).size();
+            mFree.get(i).clear();
+        }
+        mHeldBytes = 0;
+    }
+
+    /**
+     * @return the amount of bytes in free buffers waiting to be handed out again.
+     */
+    public synchronized int getHeldBytes() {
+        return mHeldBytes;
+    }
+
+    /**
+     * @return the amount of bytes in buffers handed out and not given back yet.
+     */
+    public synchronized long getOutstandingBytes() {
+        return mOutstandingBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the amount of buffers given back, or evicted, that the pool didn't keep.
+     */
+    public synchronized long getDropCount() {
+        return mDropCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DirectBufferPool[held=" + mHeldBytes + "/" + mMaxHeldBytes +
+                ", outstanding=" + mOutstandingBytes + ", hits=" + mHitCount +
+                ", misses=" + mMissCount + ", drops=" + mDropCount + "]";
+    }
+
+    private void trimToSize() {
+        // The biggest buffers go first, they free the most for the least reuse lost
+        for (int i = CLASS_COUNT - 1; i >= 0 && mHeldBytes > mMaxHeldBytes; i--) {
+            final ArrayList<ByteBuffer> free = mFree.get(i);
+            while (!free.isEmpty() && mHeldBytes > mMaxHeldBytes) {
+                mHeldBytes -= free.remove(free.size() - 1).capacity();
+                mDropCount++;
+            }
+        }
+    }
+
+    /**
+     * @return the index of the smallest size class that holds the given amount of bytes, or -1
+     * if it's bigger than the biggest one.
+     */
+    static int getSizeClass(int bytes) {
+        if (bytes > MAX_CLASS_BYTES) {
+            return -1;
+        }
+        if (bytes <= MIN_CLASS_BYTES) {
+            return 0;
+        }
+        // ceil(log2(bytes)) - log2(MIN_CLASS_BYTES)
+        return 32 - Integer.numberOfLeadingZeros(bytes - 1) -
+                Integer.numberOfTrailingZeros(MIN_CLASS_BYTES);
+    }
+
+    @NonNull
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,128 @@
+package com.abrantix.roundedvideo;
+
+import android.graphics.PixelFormat;
+import android.support.annotation.NonNull;
+
+/**
+ * What a {@link CachingEGLConfigChooser} looks for in an EGL config: the color format, the amount
+ * of multisampling samples and the depth buffer size. Configs that don't match exactly are still
+ * picked if nothing better is available, see {@link CachingEGLConfigChooser}.
+ *
+ * The renderers of this package don't use the depth buffer, so the policies default to none and
+ * no surface pays for one.
+ */
+public final class EGLConfigPolicy {
+
+    /**
+     * Translucent surface with 4x MSAA, so {@link VideoSurfaceView#ROUNDING_GEOMETRY} has smooth
+     * edges. This is the default of {@link VideoSurfaceView}.
+     */
+    public static final EGLConfigPolicy TRANSLUCENT_MSAA_4X =
+            new EGLConfigPolicy(PixelFormat.RGBA_8888, 4);
+    /**
+     * Translucent surface without multisampling, enough for
+     * {@link VideoSurfaceView#ROUNDING_SDF} which antialiases the edges itself.
+     */
+    public static final EGLConfigPolicy TRANSLUCENT =
+            new EGLConfigPolicy(PixelFormat.RGBA_8888, 0);
+    /**
+     * Opaque 16 bit surface without multisampling, the cheapest one. The corners show the
+     * clear color instead of what's behind the view.
+     */
+    public static final EGLConfigPolicy OPAQUE_RGB_565 =
+            new EGLConfigPolicy(PixelFormat.RGB_565, 0);
+
+    private final int mPixelFormat;
+    private final int mSamples;
+    private final int mDepthSize;
+
+    /**
+     * @param pixelFormat either {@link PixelFormat#RGBA_8888} for translucent surfaces or
+     *                    {@link PixelFormat#RGBX_8888} or {@link PixelFormat#RGB_565} for opaque
+     *                    ones.
+     * @param samples the amount of samples per pixel: 0 for no multisampling, 2 or 4.
+     */
+    public EGLConfigPolicy(int pixelFormat, int samples) {
+        this(pixelFormat, samples, 0);
+    }
+
+    /**
+     * @param pixelFormat either {@link PixelFormat#RGBA_8888} for translucent surfaces or
+     *                    {@link PixelFormat#RGBX_8888} or {@link PixelFormat#RGB_565} for opaque
+     *                    ones.
+     * @param samples the amount of samples per pixel: 0 for no multisampling, 2 or 4.
+     * @param depthSize the bits of the depth buffer, 0 for none.
+     */
+    public EGLConfigPolicy(int pixelFormat, int samples, int depthSize) {
+        if (pixelFormat != PixelFormat.RGBA_8888 && pixelFormat != PixelFormat.RGBX_8888 &&
+                pixelFormat != PixelFormat.RGB_565) {
+            throw new IllegalArgumentException("Unsupported pixel format " + pixelFormat);
+        }
+        if (samples < 0 || depthSize < 0) {
+            throw new IllegalArgumentException("samples and depthSize can't be negative");
+        }
+        mPixelFormat = pixelFormat;
+        mSamples = samples;
+        mDepthSize = depthSize;
+    }
+
+    /**
+     * @return the format to set on the {@link android.view.SurfaceHolder} of the view.
+     */
+    public int getPixelFormat() {
+        return mPixelFormat;
+    }
+
+    public boolean isTranslucent() {
+        return mPixelFormat == PixelFormat.RGBA_8888;
+    }
+
+    public int getSamples() {
+        return mSamples;
+    }
+
+    public int getDepthSize() {
+        return mDepthSize;
+    }
+
+    int getRedSize() {
+        return mPixelFormat == PixelFormat.RGB_565 ? 5 : 8;
+    }
+
+    int getGreenSize() {
+        return mPixelFormat == PixelFormat.RGB_565 ? 6 : 8;
+    }
+
+    int getBlueSize() {
+        return mPixelFormat == PixelFormat.RGB_565 ? 5 : 8;
+    }
+
+    int getAlphaSize() {
+        return isTranslucent() ? 8 : 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EGLConfigPolicy)) {
+            return false;
+        }
+        final EGLConfigPolicy policy = (EGLConfigPolicy) o;
+        return mPixelFormat == policy.mPixelFormat && mSamples == policy.mSamples &&
+                mDepthSize == policy.mDepthSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return (mPixelFormat * 31 + mSamples) * 31 + mDepthSize;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "EGLConfigPolicy[format=" + mPixelFormat + ", samples=" + mSamples +
+                ", depth=" + mDepthSize + "]";
+    }
+}
@@ -0,0 +1,83 @@
+package com.abrantix.roundedvideo;
+
+/**
+ * Timings of a single frame drawn by a {@link VideoSurfaceView}, reported to its
+ * {@link VideoSurfaceView.OnFrameMetricsListener}.
+ *
+ * All times are in nanoseconds from {@link System#nanoTime()}. Instances are reused from frame to
+ * frame, so copy whatever needs to outlive the listener call.
+ */
+public final class FrameMetrics {
+
+    /**
+     * Increases by one on every frame drawn.
+     */
+    public long frameNumber;
+    /**
+     * Time spent latching the latest video frame into the texture, 0 if there was no new one.
+     */
+    public long latchNanos;
+    /**
+     * CPU time spent issuing the GL calls that draw the frame.
+     */
+    public long drawNanos;
+    /**
+     * Time spent blocked waiting for the GPU to finish drawing, 0 if the frame didn't wait.
+     */
+    public long finishNanos;
+    /**
+     * Time from the moment the decoder made the latest video frame available to the moment it
+     * started being drawn, -1 if there was no new video frame.
+     */
+    public long frameAvailableToDrawNanos;
+    /**
+     * Timestamp of the video frame shown, as reported by
+     * {@link android.graphics.SurfaceTexture#getTimestamp()}.
+     */
+    public long frameTimestampNanos;
+    /**
+     * The amount of video frames the decoder made available since the previous draw that were
+     * never shown because a newer one replaced them.
+     */
+    public int coalescedFrames;
+    /**
+     * Time from the view asking a shared render thread for the frame to the thread starting it,
+     * which includes drawing the views ahead of it. -1 with the view's own render thread, see
+     * {@link VideoSurfaceView#VideoSurfaceView(android.content.Context, EGLConfigPolicy,
+     * boolean)}.
+     */
+    public long scheduleDelayNanos;
+    /**
+     * The amount of views with a surface drawn by the same render thread, 1 for a view with its
+     * own thread.
+     */
+    public int renderThreadViewCount;
+
+    /**
+     * @return the total time spent on the render thread for this frame.
+     */
+    public long getTotalNanos() {
+        return latchNanos + drawNanos + finishNanos;
+    }
+
+    void reset() {
+        latchNanos = 0;
+        drawNanos = 0;
+        finishNanos = 0;
+        frameAvailableToDrawNanos = -1;
+        frameTimestampNanos = 0;
+        coalescedFrames = 0;
+        scheduleDelayNanos = -1;
+        renderThreadViewCount = 1;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameMetrics[frame=" + frameNumber + ", latch=" + latchNanos / 1000 +
+                "us, draw=" + drawNanos / 1000 + "us, finish=" + finishNanos / 1000 +
+                "us, frameAvailableToDraw=" + frameAvailableToDrawNanos / 1000 +
+                "us, coalesced=" + coalescedFrames +
+                ", scheduleDelay=" + scheduleDelayNanos / 1000 +
+                "us, renderThreadViews=" + renderThreadViewCount + "]";
+    }
+}
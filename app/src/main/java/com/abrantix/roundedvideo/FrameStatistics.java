@@ -0,0 +1,141 @@
+package com.abrantix.roundedvideo;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Rolling statistics over the {@link FrameMetrics} of the last frames of a
+ * {@link VideoSurfaceView}, plus totals since it started drawing.
+ *
+ * Recording a frame only copies a few numbers into fixed size rings, nothing is allocated, so it
+ * can be left on in production. Percentiles sort a copy of a ring when asked for, so ask for them
+ * every now and then rather than on every frame.
+ *
+ * Not thread safe: it's updated on the GL thread, right before
+ * {@link VideoSurfaceView.OnFrameMetricsListener#onFrameMetrics} is called, which is where it
+ * should be read.
+ */
+public final class FrameStatistics {
+
+    public static final int METRIC_LATCH = 0;
+    public static final int METRIC_DRAW = 1;
+    public static final int METRIC_FINISH = 2;
+    public static final int METRIC_TOTAL = 3;
+    /**
+     * Only recorded for frames that showed a new video frame.
+     */
+    public static final int METRIC_FRAME_AVAILABLE_TO_DRAW = 4;
+    /**
+     * Only recorded for views drawn by a shared render thread.
+     */
+    public static final int METRIC_SCHEDULE_DELAY = 5;
+    private static final int METRIC_COUNT = 6;
+
+    public static final int DEFAULT_WINDOW_SIZE = 120;
+
+    private final long[][] mWindows;
+    private final int[] mSizes = new int[METRIC_COUNT];
+    private final int[] mNextIndices = new int[METRIC_COUNT];
+    private final long[] mScratch;
+
+    private long mFrameCount;
+    private long mVideoFrameCount;
+    private long mCoalescedFrameCount;
+
+    public FrameStatistics() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize the amount of frames the percentiles are computed over.
+     */
+    public FrameStatistics(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        mWindows = new long[METRIC_COUNT][windowSize];
+        mScratch = new long[windowSize];
+    }
+
+    void record(@NonNull FrameMetrics metrics) {
+        mFrameCount++;
+        add(METRIC_LATCH, metrics.latchNanos);
+        add(METRIC_DRAW, metrics.drawNanos);
+        add(METRIC_FINISH, metrics.finishNanos);
+        add(METRIC_TOTAL, metrics.getTotalNanos());
+        if (metrics.frameAvailableToDrawNanos >= 0) {
+            mVideoFrameCount++;
+            add(METRIC_FRAME_AVAILABLE_TO_DRAW, metrics.frameAvailableToDrawNanos);
+        }
+        if (metrics.scheduleDelayNanos >= 0) {
+            add(METRIC_SCHEDULE_DELAY, metrics.scheduleDelayNanos);
+        }
+        mCoalescedFrameCount += metrics.coalescedFrames;
+    }
+
+    private void add(int metric, long value) {
+        final long[] window = mWindows[metric];
+        window[mNextIndices[metric]] = value;
+        mNextIndices[metric] = (mNextIndices[metric] + 1) % window.length;
+        if (mSizes[metric] < window.length) {
+            mSizes[metric]++;
+        }
+    }
+
+    /**
+     * @param metric one of the METRIC_ constants.
+     * @param percentile from 0 to 100, e.g. 50 for the median.
+     * @return the value of the metric at that percentile over the last frames, in nanoseconds,
+     * or 0 if there are no frames yet.
+     */
+    public long getPercentile(int metric, float percentile) {
+        final int size = mSizes[metric];
+        if (size == 0) {
+            return 0;
+        }
+        System.arraycopy(mWindows[metric], 0, mScratch, 0, size);
+        Arrays.sort(mScratch, 0, size);
+        final int index = Math.round(percentile / 100f * (size - 1));
+        return mScratch[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    /**
+     * @return the amount of frames drawn so far.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return the amount of frames drawn so far that showed a new video frame.
+     */
+    public long getVideoFrameCount() {
+        return mVideoFrameCount;
+    }
+
+    /**
+     * @return the amount of video frames that were never shown because a newer one replaced
+     * them before the next draw.
+     */
+    public long getCoalescedFrameCount() {
+        return mCoalescedFrameCount;
+    }
+
+    public void reset() {
+        Arrays.fill(mSizes, 0);
+        Arrays.fill(mNextIndices, 0);
+        mFrameCount = 0;
+        mVideoFrameCount = 0;
+        mCoalescedFrameCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameStatistics[frames=" + mFrameCount + ", videoFrames=" + mVideoFrameCount +
+                ", coalesced=" + mCoalescedFrameCount +
+                ", drawP50=" + getPercentile(METRIC_DRAW, 50) / 1000 +
+                "us, totalP90=" + getPercentile(METRIC_TOTAL, 90) / 1000 +
+                "us, totalP99=" + getPercentile(METRIC_TOTAL, 99) / 1000 + "us]";
+    }
+}
@@ -0,0 +1,99 @@
+package com.abrantix.roundedvideo;
+
+import java.nio.Buffer;
+
+/**
+ * The subset of OpenGL ES 2.0 used by the renderers of this package.
+ *
+ * Renderers issue all their GL calls through this interface instead of calling the
+ * {@link android.opengl.GLES20} statics directly, so the unit tests can run the render path
+ * against a backend that counts calls, uploaded bytes and state changes instead of drawing.
+ * The method names and signatures match {@link android.opengl.GLES20}.
+ *
+ * @see GLES20Backend
+ */
+public interface GLBackend {
+
+    void glActiveTexture(int texture);
+
+    void glAttachShader(int program, int shader);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBindTexture(int target, int texture);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glCompileShader(int shader);
+
+    int glCreateProgram();
+
+    int glCreateShader(int type);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteProgram(int program);
+
+    void glDeleteShader(int shader);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawElements(int mode, int count, int type, Buffer indices);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glFinish();
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetError();
+
+    String glGetProgramInfoLog(int program);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glLinkProgram(int program);
+
+    void glShaderSource(int shader, String string);
+
+    void glTexParameterf(int target, int pname, float param);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform2f(int location, float x, float y);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                            int offset);
+
+    void glUseProgram(int program);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                               Buffer ptr);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                               int offset);
+
+    void glViewport(int x, int y, int width, int height);
+}
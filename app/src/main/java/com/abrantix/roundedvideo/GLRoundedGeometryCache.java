@@ -0,0 +1,244 @@
+package com.abrantix.roundedvideo;
+
+import android.graphics.Point;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process wide LRU cache of the meshes generated by {@link GLRoundedGeometry}.
+ *
+ * Lists and feeds usually show lots of videos with the exact same size and corner radius. Instead
+ * of having every renderer generate (and allocate) the very same geometry, meshes are cached by
+ * the parameters that define them: the corner radii, the GL view port bounds, the view port size
+ * in pixels, the z coordinate, the amount of triangles of each corner and the topology. Views
+ * with identical parameters share one single mesh.
+ *
+ * The {@link GLRoundedGeometry.GeometryArrays} handed out by this cache are shared and must be
+ * treated as read-only.
+ *
+ * The cache is bounded both by the amount of entries and by the amount of bytes held by the
+ * vertex and index arrays, whatever is reached first. The least recently used meshes are evicted
+ * first.
+ */
+public class GLRoundedGeometryCache {
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    public static final int DEFAULT_MAX_BYTES = 256 * 1024;
+
+    private static final int FLOAT_SIZE_BYTES = 4;
+    private static final int SHORT_SIZE_BYTES = 2;
+
+    private static GLRoundedGeometryCache sInstance;
+
+    // access ordered so that iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, GLRoundedGeometry.GeometryArrays> mEntries =
+            new LinkedHashMap<Key, GLRoundedGeometry.GeometryArrays>(16, 0.75f, true);
+
+    // used for lookups so that cache hits don't allocate
+    private final Key mLookupKey = new Key();
+
+    private int mMaxEntries;
+    private int mMaxBytes;
+    private int mBytes;
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * @return the cache shared by all the renderers in this process.
+     */
+    @NonNull
+    public static synchronized GLRoundedGeometryCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new GLRoundedGeometryCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param maxEntries the maximum amount of meshes to keep.
+     * @param maxBytes the maximum amount of bytes in vertex and index data to keep.
+     */
+    public GLRoundedGeometryCache(int maxEntries, int maxBytes) {
+        setMaxSize(maxEntries, maxBytes);
+    }
+
+    /**
+     * Changes the bounds of this cache, evicting entries if needed.
+     *
+     * @param maxEntries the maximum amount of meshes to keep.
+     * @param maxBytes the maximum amount of bytes in vertex and index data to keep.
+     */
+    public synchronized void setMaxSize(int maxEntries, int maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Cache bounds can't be negative");
+        }
+        mMaxEntries = maxEntries;
+        mMaxBytes = maxBytes;
+        trimToSize();
+    }
+
+    /**
+     * Returns the mesh for the given parameters, generating it with the given
+     * {@link GLRoundedGeometry} if it isn't cached yet.
+     *
+     * @param geometry the geometry generator, the resulting triangles per corner and its topology
+     *                 are part of the cache key.
+     * @param radii the corner radius of each corner.
+     * @param viewPortGLBounds the bounds of the GL viewport in GL scalar units.
+     * @param viewPortPxSize the size of the view port in pixels.
+     * @param z the z coordinate for the z-plane geometry.
+     * @return a shared, read-only, mesh.
+     * @see GLRoundedGeometry#generateVertexData(RectF, RectF, Point, float)
+     */
+    @NonNull
+    public synchronized GLRoundedGeometry.GeometryArrays get(@NonNull GLRoundedGeometry geometry,
+                                                            @NonNull RectF radii,
+                                                            @NonNull RectF viewPortGLBounds,
+                                                            @NonNull Point viewPortPxSize,
+                                                            float z) {
+        mLookupKey.set(radii, viewPortGLBounds, viewPortPxSize, z, geometry);
+        GLRoundedGeometry.GeometryArrays arrays = mEntries.get(mLookupKey);
+        if (arrays != null) {
+            mHitCount++;
+            return arrays;
+        }
+        mMissCount++;
+
+        arrays = geometry.generateVertexData(radii, viewPortGLBounds, viewPortPxSize, z);
+        final Key key = new Key();
+        key.set(mLookupKey);
+        mEntries.put(key, arrays);
+        mBytes += sizeOf(arrays);
+        trimToSize();
+        return arrays;
+    }
+
+    /**
+     * Drops all the cached meshes. The counters are kept.
+     */
+    public synchronized void evictAll() {
+        mEvictionCount += mEntries.size();
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized int sizeBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "GLRoundedGeometryCache[entries=" + mEntries.size() + "/" + mMaxEntries +
+                ", bytes=" + mBytes + "/" + mMaxBytes + ", hits=" + mHitCount +
+                ", misses=" + mMissCount + ", evictions=" + mEvictionCount + "]";
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<Key, GLRoundedGeometry.GeometryArrays>> it =
+                mEntries.entrySet().iterator();
+        while (it.hasNext() && (mEntries.size() > mMaxEntries || mBytes > mMaxBytes)) {
+            final Map.Entry<Key, GLRoundedGeometry.GeometryArrays> eldest = it.next();
+            mBytes -= sizeOf(eldest.getValue());
+            it.remove();
+            mEvictionCount++;
+        }
+    }
+
+    private static int sizeOf(@NonNull GLRoundedGeometry.GeometryArrays arrays) {
+        return arrays.triangleVertices.length * FLOAT_SIZE_BYTES +
+                arrays.triangleIndices.length * SHORT_SIZE_BYTES;
+    }
+
+    /**
+     * The parameters that fully define a generated mesh.
+     */
+    private static final class Key {
+        final float[] mValues = new float[11];
+        // triangles of each corner
+        final int[] mTessellation = new int[4];
+        int mTopology;
+
+        void set(@NonNull RectF radii, @NonNull RectF viewPortGLBounds,
+                 @NonNull Point viewPortPxSize, float z, @NonNull GLRoundedGeometry geometry) {
+            mValues[0] = radii.left;
+            mValues[1] = radii.top;
+            mValues[2] = radii.right;
+            mValues[3] = radii.bottom;
+            mValues[4] = viewPortGLBounds.left;
+            mValues[5] = viewPortGLBounds.top;
+            mValues[6] = viewPortGLBounds.right;
+            mValues[7] = viewPortGLBounds.bottom;
+            mValues[8] = viewPortPxSize.x;
+            mValues[9] = viewPortPxSize.y;
+            mValues[10] = z;
+            mTessellation[0] = geometry.getTrianglesPerCorner(radii.left);
+            mTessellation[1] = geometry.getTrianglesPerCorner(radii.top);
+            mTessellation[2] = geometry.getTrianglesPerCorner(radii.right);
+            mTessellation[3] = geometry.getTrianglesPerCorner(radii.bottom);
+            mTopology = geometry.getTopology();
+        }
+
+        void set(@NonNull Key other) {
+            System.arraycopy(other.mValues, 0, mValues, 0, mValues.length);
+            System.arraycopy(other.mTessellation, 0, mTessellation, 0, mTessellation.length);
+            mTopology = other.mTopology;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            if (mTopology != other.mTopology) {
+                return false;
+            }
+            for (int i = 0; i < mTessellation.length; i++) {
+                if (mTessellation[i] != other.mTessellation[i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < mValues.length; i++) {
+                if (Float.floatToIntBits(mValues[i]) != Float.floatToIntBits(other.mValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = mTopology;
+            for (final int triangles : mTessellation) {
+                hash = 31 * hash + triangles;
+            }
+            for (final float value : mValues) {
+                hash = 31 * hash + Float.floatToIntBits(value);
+            }
+            return hash;
+        }
+    }
+}
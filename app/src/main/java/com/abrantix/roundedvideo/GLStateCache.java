@@ -0,0 +1,596 @@
+package com.abrantix.roundedvideo;
+
+import android.support.annotation.NonNull;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link GLBackend} that shadows the GL state of a context and drops the calls that wouldn't
+ * change it before they reach the wrapped backend.
+ *
+ * It tracks the bound program, the active texture unit, the textures bound to each unit, the
+ * bound buffer objects, the enabled vertex attribute arrays and their pointers, the values of
+ * matrix and vector uniforms, the clear color and the viewport. Everything else is passed
+ * straight through.
+ *
+ * One instance must be used per GL context, and only for the calls going to that context. The
+ * shadow state can't tell when the context is lost, so call {@link #invalidate()} whenever a new
+ * context is created (e.g. on
+ * {@link android.opengl.GLSurfaceView.Renderer#onSurfaceCreated}).
+ */
+public class GLStateCache implements GLBackend {
+    // From GLES20, copied so this class doesn't need the Android framework
+    private static final int GL_TEXTURE0 = 0x84C0;
+    private static final int GL_TEXTURE_2D = 0x0DE1;
+    private static final int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+    private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+    private static final int MAX_UNIFORM_LOCATIONS = 32;
+    private static final int UNKNOWN = -1;
+
+    private final GLBackend mGL;
+
+    private int mProgram;
+    private int mActiveTexture;
+    private final int[] mBoundTextures2D = new int[MAX_TEXTURE_UNITS];
+    private final int[] mBoundTexturesExternal = new int[MAX_TEXTURE_UNITS];
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    private final VertexAttrib[] mVertexAttribs = new VertexAttrib[MAX_VERTEX_ATTRIBS];
+    private final List<ProgramUniforms> mProgramUniforms = new ArrayList<ProgramUniforms>();
+    private final float[] mClearColor = new float[4];
+    private boolean mClearColorKnown;
+    private final int[] mViewport = new int[4];
+    private boolean mViewportKnown;
+
+    private long mElidedCalls;
+    private final Map<String, int[]> mElidedCallCounts = new HashMap<String, int[]>();
+
+    public GLStateCache(@NonNull GLBackend gl) {
+        mGL = gl;
+        for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+            mVertexAttribs[i] = new VertexAttrib();
+        }
+        invalidate();
+    }
+
+    /**
+     * Forgets all the shadow state, so the next calls reach GL no matter what. Call this when the
+     * GL context is (re)created.
+     */
+    public void invalidate() {
+        mProgram = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        Arrays.fill(mBoundTextures2D, UNKNOWN);
+        Arrays.fill(mBoundTexturesExternal, UNKNOWN);
+        mArrayBuffer = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+        for (final VertexAttrib attrib : mVertexAttribs) {
+            attrib.invalidate();
+        }
+        mProgramUniforms.clear();
+        mClearColorKnown = false;
+        mViewportKnown = false;
+    }
+
+    /**
+     * @return the amount of calls that were dropped since they wouldn't change anything.
+     */
+    public long getElidedCallCount() {
+        return mElidedCalls;
+    }
+
+    /**
+     * @param method the name of a GL method, e.g. "glUseProgram".
+     * @return the amount of calls to that method that were dropped.
+     */
+    public int getElidedCallCount(String method) {
+        final int[] count = mElidedCallCounts.get(method);
+        return count != null ? count[0] : 0;
+    }
+
+    public void resetElidedCallCounts() {
+        mElidedCalls = 0;
+        mElidedCallCounts.clear();
+    }
+
+    private void elided(String method) {
+        mElidedCalls++;
+        int[] count = mElidedCallCounts.get(method);
+        if (count == null) {
+            count = new int[1];
+            mElidedCallCounts.put(method, count);
+        }
+        count[0]++;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        if (texture == mActiveTexture) {
+            elided("glActiveTexture");
+            return;
+        }
+        mActiveTexture = texture;
+        mGL.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        mGL.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (target == GL_ARRAY_BUFFER) {
+            if (buffer == mArrayBuffer) {
+                elided("glBindBuffer");
+                return;
+            }
+            mArrayBuffer = buffer;
+        } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            if (buffer == mElementArrayBuffer) {
+                elided("glBindBuffer");
+                return;
+            }
+            mElementArrayBuffer = buffer;
+        }
+        mGL.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        final int[] boundTextures = getBoundTextures(target);
+        final int unit = mActiveTexture - GL_TEXTURE0;
+        if (boundTextures != null && unit >= 0 && unit < MAX_TEXTURE_UNITS) {
+            if (boundTextures[unit] == texture) {
+                elided("glBindTexture");
+                return;
+            }
+            boundTextures[unit] = texture;
+        }
+        mGL.glBindTexture(target, texture);
+    }
+
+    private int[] getBoundTextures(int target) {
+        if (target == GL_TEXTURE_2D) {
+            return mBoundTextures2D;
+        } else if (target == GL_TEXTURE_EXTERNAL_OES) {
+            return mBoundTexturesExternal;
+        }
+        return null;
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        mGL.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        mGL.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        mGL.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        if (mClearColorKnown && mClearColor[0] == red && mClearColor[1] == green &&
+                mClearColor[2] == blue && mClearColor[3] == alpha) {
+            elided("glClearColor");
+            return;
+        }
+        mClearColor[0] = red;
+        mClearColor[1] = green;
+        mClearColor[2] = blue;
+        mClearColor[3] = alpha;
+        mClearColorKnown = true;
+        mGL.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        mGL.glCompileShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return mGL.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return mGL.glCreateShader(type);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        for (int i = 0; i < n; i++) {
+            final int buffer = buffers[offset + i];
+            // deleting a bound buffer unbinds it
+            if (buffer == mArrayBuffer) {
+                mArrayBuffer = 0;
+            }
+            if (buffer == mElementArrayBuffer) {
+                mElementArrayBuffer = 0;
+            }
+            // the name can be generated again, don't let a pointer into the new buffer match
+            if (buffer != 0) {
+                for (final VertexAttrib attrib : mVertexAttribs) {
+                    if (attrib.mBuffer == buffer) {
+                        attrib.mBuffer = UNKNOWN;
+                    }
+                }
+            }
+        }
+        mGL.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        if (program == mProgram) {
+            mProgram = UNKNOWN;
+        }
+        for (int i = mProgramUniforms.size() - 1; i >= 0; i--) {
+            if (mProgramUniforms.get(i).mProgram == program) {
+                mProgramUniforms.remove(i);
+            }
+        }
+        mGL.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        mGL.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        for (int i = 0; i < n; i++) {
+            final int texture = textures[offset + i];
+            // deleting a bound texture unbinds it from every unit
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (mBoundTextures2D[unit] == texture) {
+                    mBoundTextures2D[unit] = 0;
+                }
+                if (mBoundTexturesExternal[unit] == texture) {
+                    mBoundTexturesExternal[unit] = 0;
+                }
+            }
+        }
+        mGL.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            final VertexAttrib attrib = mVertexAttribs[index];
+            if (!attrib.mEnabled && attrib.mEnabledKnown) {
+                elided("glDisableVertexAttribArray");
+                return;
+            }
+            attrib.mEnabled = false;
+            attrib.mEnabledKnown = true;
+        }
+        mGL.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        mGL.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        mGL.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            final VertexAttrib attrib = mVertexAttribs[index];
+            if (attrib.mEnabled) {
+                elided("glEnableVertexAttribArray");
+                return;
+            }
+            attrib.mEnabled = true;
+            attrib.mEnabledKnown = true;
+        }
+        mGL.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glFinish() {
+        mGL.glFinish();
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        mGL.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        mGL.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return mGL.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetError() {
+        return mGL.glGetError();
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        return mGL.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        mGL.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        return mGL.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        mGL.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return mGL.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        // linking resets the values of all uniforms
+        for (int i = mProgramUniforms.size() - 1; i >= 0; i--) {
+            if (mProgramUniforms.get(i).mProgram == program) {
+                mProgramUniforms.remove(i);
+            }
+        }
+        mGL.glLinkProgram(program);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        mGL.glShaderSource(shader, string);
+    }
+
+    @Override
+    public void glTexParameterf(int target, int pname, float param) {
+        mGL.glTexParameterf(target, pname, param);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        // kept by its bits, so any int survives the trip through a float
+        if (!updateUniformVector(location, 1, Float.intBitsToFloat(x), 0f, 0f, 0f)) {
+            elided("glUniform1i");
+            return;
+        }
+        mGL.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        if (!updateUniformVector(location, 2, x, y, 0f, 0f)) {
+            elided("glUniform2f");
+            return;
+        }
+        mGL.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        if (!updateUniformVector(location, 4, x, y, z, w)) {
+            elided("glUniform4f");
+            return;
+        }
+        mGL.glUniform4f(location, x, y, z, w);
+    }
+
+    /**
+     * @return false if the vector uniform at location of the current program already holds
+     * these values.
+     */
+    private boolean updateUniformVector(int location, int size, float x, float y, float z,
+                                        float w) {
+        final ProgramUniforms uniforms = getProgramUniforms(mProgram);
+        if (uniforms == null || location < 0 || location >= MAX_UNIFORM_LOCATIONS) {
+            return true;
+        }
+        float[] current = uniforms.mVectors[location];
+        if (current != null && current[4] == size &&
+                Float.floatToIntBits(current[0]) == Float.floatToIntBits(x) &&
+                Float.floatToIntBits(current[1]) == Float.floatToIntBits(y) &&
+                Float.floatToIntBits(current[2]) == Float.floatToIntBits(z) &&
+                Float.floatToIntBits(current[3]) == Float.floatToIntBits(w)) {
+            return false;
+        }
+        if (current == null) {
+            // x, y, z, w and the amount of components
+            current = new float[5];
+            uniforms.mVectors[location] = current;
+        }
+        current[0] = x;
+        current[1] = y;
+        current[2] = z;
+        current[3] = w;
+        current[4] = size;
+        return true;
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                   int offset) {
+        final ProgramUniforms uniforms = getProgramUniforms(mProgram);
+        if (uniforms != null && count == 1 && !transpose && location >= 0 &&
+                location < MAX_UNIFORM_LOCATIONS) {
+            float[] current = uniforms.mMatrices[location];
+            if (current != null && equals(current, value, offset)) {
+                elided("glUniformMatrix4fv");
+                return;
+            }
+            if (current == null) {
+                current = new float[16];
+                uniforms.mMatrices[location] = current;
+            }
+            System.arraycopy(value, offset, current, 0, 16);
+        }
+        mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    private static boolean equals(@NonNull float[] matrix, @NonNull float[] value, int offset) {
+        for (int i = 0; i < 16; i++) {
+            if (Float.floatToIntBits(matrix[i]) != Float.floatToIntBits(value[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ProgramUniforms getProgramUniforms(int program) {
+        if (program == UNKNOWN || program == 0) {
+            return null;
+        }
+        for (int i = 0; i < mProgramUniforms.size(); i++) {
+            final ProgramUniforms uniforms = mProgramUniforms.get(i);
+            if (uniforms.mProgram == program) {
+                return uniforms;
+            }
+        }
+        final ProgramUniforms uniforms = new ProgramUniforms(program);
+        mProgramUniforms.add(uniforms);
+        return uniforms;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (program == mProgram) {
+            elided("glUseProgram");
+            return;
+        }
+        mProgram = program;
+        mGL.glUseProgram(program);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, Buffer ptr) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            final VertexAttrib attrib = mVertexAttribs[index];
+            // client side pointers are only the same if they point at the same spot
+            if (mArrayBuffer == 0 && attrib.matches(0, size, type, normalized, stride,
+                    ptr.position()) && attrib.mClientBuffer == ptr) {
+                elided("glVertexAttribPointer");
+                return;
+            }
+            attrib.set(mArrayBuffer == 0 ? 0 : UNKNOWN, size, type, normalized, stride,
+                    ptr.position());
+            attrib.mClientBuffer = ptr;
+        }
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, ptr);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, int offset) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            final VertexAttrib attrib = mVertexAttribs[index];
+            if (mArrayBuffer != UNKNOWN && mArrayBuffer != 0 && attrib.mClientBuffer == null &&
+                    attrib.matches(mArrayBuffer, size, type, normalized, stride, offset)) {
+                elided("glVertexAttribPointer");
+                return;
+            }
+            attrib.set(mArrayBuffer, size, type, normalized, stride, offset);
+            attrib.mClientBuffer = null;
+        }
+        mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        if (mViewportKnown && mViewport[0] == x && mViewport[1] == y &&
+                mViewport[2] == width && mViewport[3] == height) {
+            elided("glViewport");
+            return;
+        }
+        mViewport[0] = x;
+        mViewport[1] = y;
+        mViewport[2] = width;
+        mViewport[3] = height;
+        mViewportKnown = true;
+        mGL.glViewport(x, y, width, height);
+    }
+
+    /**
+     * The shadow state of a vertex attribute array.
+     */
+    private static final class VertexAttrib {
+        boolean mEnabled;
+        // disabled is only known once we disabled it ourselves
+        boolean mEnabledKnown;
+        int mBuffer;
+        int mSize;
+        int mType;
+        boolean mNormalized;
+        int mStride;
+        int mOffset;
+        Buffer mClientBuffer;
+
+        void invalidate() {
+            mEnabled = false;
+            mEnabledKnown = false;
+            mBuffer = UNKNOWN;
+            mClientBuffer = null;
+        }
+
+        boolean matches(int buffer, int size, int type, boolean normalized, int stride,
+                        int offset) {
+            return mBuffer != UNKNOWN && mBuffer == buffer && mSize == size && mType == type &&
+                    mNormalized == normalized && mStride == stride && mOffset == offset;
+        }
+
+        void set(int buffer, int size, int type, boolean normalized, int stride, int offset) {
+            mBuffer = buffer;
+            mSize = size;
+            mType = type;
+            mNormalized = normalized;
+            mStride = stride;
+            mOffset = offset;
+        }
+    }
+
+    /**
+     * The last values uploaded to the matrix and vector uniforms of a program, indexed by
+     * location.
+     */
+    private static final class ProgramUniforms {
+        final int mProgram;
+        final float[][] mMatrices = new float[MAX_UNIFORM_LOCATIONS][];
+        final float[][] mVectors = new float[MAX_UNIFORM_LOCATIONS][];
+
+        ProgramUniforms(int program) {
+            mProgram = program;
+        }
+    }
+}
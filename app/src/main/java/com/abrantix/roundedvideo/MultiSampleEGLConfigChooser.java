@@ -17,6 +17,9 @@ import javax.microedition.khronos.egl.EGLDisplay;
  * myGLSurfaceView.setEGLConfigChooser(new MultisampleConfigChooser()); before calling
  * setRenderer(). Multisampling will probably slow down your app -- measure performance carefully
  * and decide if the vastly improved visual quality is worth the cost.
+ *
+ * {@link CachingEGLConfigChooser} finds a config in a single query, remembers it across views and
+ * doesn't ask for a depth buffer, which the renderers of this package never use.
  */
 public class MultiSampleEGLConfigChooser implements GLSurfaceView.EGLConfigChooser {
     static private final String TAG = MultiSampleEGLConfigChooser.class.getSimpleName();
@@ -38,6 +41,9 @@ public class MultiSampleEGLConfigChooser implements GLSurfaceView.EGLConfigChoos
                 EGL10.EGL_NONE
         };
 
+        if (!egl.eglChooseConfig(display, configSpec, null, 0, mValue)) {
+            throw new IllegalArgumentException("eglChooseConfig failed");
+        }
         int numConfigs = mValue[0];
 
         if (numConfigs <= 0) {
@@ -60,6 +66,9 @@ public class MultiSampleEGLConfigChooser implements GLSurfaceView.EGLConfigChoos
                     EGL10.EGL_NONE
             };
 
+            if (!egl.eglChooseConfig(display, configSpec, null, 0, mValue)) {
+                throw new IllegalArgumentException("2nd eglChooseConfig failed");
+            }
             numConfigs = mValue[0];
 
             if (numConfigs <= 0) {
@@ -110,6 +119,7 @@ public class MultiSampleEGLConfigChooser implements GLSurfaceView.EGLConfigChoos
         }
         if (index == -1) {
             Log.w(TAG, "Did not find sane config, using first");
+            index = 0;
         }
         EGLConfig config = configs.length > 0 ? configs[index] : null;
         if (config == null) {
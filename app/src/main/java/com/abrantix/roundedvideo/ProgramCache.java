@@ -0,0 +1,144 @@
+package com.abrantix.roundedvideo;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of the linked {@link VideoProgram}s of a GL context group, keyed by their shader sources,
+ * so every variant is compiled and linked once no matter how many renderers draw with it.
+ *
+ * GL programs belong to a context and to the contexts it shares objects with, so one cache must
+ * only be shared by renderers whose contexts are in the same share group. Whoever owns the
+ * contexts calls {@link #invalidate()} when the group is lost, since its programs die with it.
+ *
+ * It also keeps the time spent compiling and linking, which is what screens with several videos
+ * pay for on startup.
+ */
+public class ProgramCache {
+    private static final String TAG = "ProgramCache";
+
+    private final Map<String, VideoProgram> mPrograms = new HashMap<String, VideoProgram>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mCompileCount;
+    private int mLinkCount;
+    private long mCompileTimeNanos;
+    private long mLinkTimeNanos;
+
+    /**
+     * Returns the program of a variant, building it the first time. Must run on a GL thread with
+     * a context of the group current.
+     *
+     * @param gl the GL backend to build the program with.
+     * @param defines the defines of the variant, see {@link VideoProgram#create(GLBackend,
+     *                String)}.
+     * @return the program or null if it failed to compile or link, in which case it's tried
+     * again on the next call.
+     */
+    @Nullable
+    synchronized VideoProgram get(@NonNull GLBackend gl, @NonNull String defines) {
+        final String key = VideoProgram.getSourceKey(defines);
+        VideoProgram program = mPrograms.get(key);
+        if (program != null) {
+            mHitCount++;
+            return program;
+        }
+        mMissCount++;
+        final long compileTimeNanos = mCompileTimeNanos;
+        final long linkTimeNanos = mLinkTimeNanos;
+        program = VideoProgram.create(gl, defines, this);
+        if (program != null) {
+            mPrograms.put(key, program);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Built program " + defines.trim() + " in " +
+                    (mCompileTimeNanos - compileTimeNanos) / 1000 + "us compiling, " +
+                    (mLinkTimeNanos - linkTimeNanos) / 1000 + "us linking");
+        }
+        return program;
+    }
+
+    synchronized void onShaderCompiled(long nanos) {
+        mCompileCount++;
+        mCompileTimeNanos += nanos;
+    }
+
+    synchronized void onProgramLinked(long nanos) {
+        mLinkCount++;
+        mLinkTimeNanos += nanos;
+    }
+
+    /**
+     * Forgets all the programs, without deleting them, since their context group is gone. The
+     * statistics are kept.
+     */
+    public synchronized void invalidate() {
+        mPrograms.clear();
+    }
+
+    /**
+     * Deletes all the programs. Must run on a GL thread with a context of the group current.
+     */
+    public synchronized void release(@NonNull GLBackend gl) {
+        for (VideoProgram program : mPrograms.values()) {
+            gl.glDeleteProgram(program.program);
+        }
+        mPrograms.clear();
+    }
+
+    /**
+     * @return the amount of programs in the cache.
+     */
+    public synchronized int size() {
+        return mPrograms.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the amount of shaders compiled so far.
+     */
+    public synchronized int getCompileCount() {
+        return mCompileCount;
+    }
+
+    /**
+     * @return the amount of programs linked so far.
+     */
+    public synchronized int getLinkCount() {
+        return mLinkCount;
+    }
+
+    /**
+     * @return the time spent compiling shaders so far, in nanoseconds.
+     */
+    public synchronized long getCompileTimeNanos() {
+        return mCompileTimeNanos;
+    }
+
+    /**
+     * @return the time spent linking programs so far, in nanoseconds.
+     */
+    public synchronized long getLinkTimeNanos() {
+        return mLinkTimeNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProgramCache[size=" + mPrograms.size() + ", hits=" + mHitCount +
+                ", misses=" + mMissCount + ", compiles=" + mCompileCount +
+                " (" + mCompileTimeNanos / 1000 + "us), links=" + mLinkCount +
+                " (" + mLinkTimeNanos / 1000 + "us)]";
+    }
+}
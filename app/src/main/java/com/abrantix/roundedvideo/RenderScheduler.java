@@ -0,0 +1,93 @@
+package com.abrantix.roundedvideo;
+
+import android.annotation.TargetApi;
+import android.opengl.GLSurfaceView;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides when a {@link GLSurfaceView} is asked to render after a new video frame is available.
+ *
+ * The base scheduler asks right away, on whichever thread the frame arrived. See
+ * {@link #create(GLSurfaceView, int)} for the vsync aligned one.
+ */
+class RenderScheduler {
+
+    protected final GLSurfaceView mView;
+
+    RenderScheduler(@NonNull GLSurfaceView view) {
+        mView = view;
+    }
+
+    /**
+     * @param view the view to render.
+     * @param scheduling either {@link VideoSurfaceView#SCHEDULING_ON_FRAME_AVAILABLE} or
+     *                   {@link VideoSurfaceView#SCHEDULING_VSYNC}. The latter needs a
+     *                   {@link Choreographer}, so before Jelly Bean it renders right away too.
+     * @return a scheduler for the view. Must be called on the UI thread, whose
+     * {@link Choreographer} the vsync scheduler follows.
+     */
+    @NonNull
+    static RenderScheduler create(@NonNull GLSurfaceView view, int scheduling) {
+        if (scheduling == VideoSurfaceView.SCHEDULING_VSYNC
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return new VsyncRenderScheduler(view);
+        }
+        return new RenderScheduler(view);
+    }
+
+    /**
+     * Asks the view to render, now or later. Can be called from any thread.
+     */
+    void requestRender() {
+        mView.requestRender();
+    }
+
+    /**
+     * Drops a render asked for but not requested from the view yet, if any.
+     */
+    void cancel() {
+    }
+
+    /**
+     * Requests a render from the view on the next vsync, no matter how many times it's asked
+     * before then, so decoder frames arriving within the same display frame are drawn once and
+     * the render thread starts right after vsync, with the whole frame ahead of it.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class VsyncRenderScheduler extends RenderScheduler
+            implements Choreographer.FrameCallback {
+
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+        private final AtomicBoolean mPending = new AtomicBoolean();
+
+        VsyncRenderScheduler(@NonNull GLSurfaceView view) {
+            super(view);
+        }
+
+        @Override
+        void requestRender() {
+            // Posting frame callbacks is thread safe, but the same callback posted twice runs
+            // twice, hence the flag
+            if (mPending.compareAndSet(false, true)) {
+                mChoreographer.postFrameCallback(this);
+            }
+        }
+
+        @Override
+        void cancel() {
+            if (mPending.compareAndSet(true, false)) {
+                mChoreographer.removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mPending.set(false);
+            mView.requestRender();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.abrantix.roundedvideo;
+
+/**
+ * Plain Java version of the coverage computed by the fragment shader of the
+ * {@link VideoSurfaceView#ROUNDING_SDF} mode, so its edges can be checked off device.
+ *
+ * All the coordinates are in pixels, with the origin at the top left corner of the rect and y
+ * growing downwards. Radii bigger than half the shortest side are clamped to it, the same way the
+ * renderer does before handing them to the shader.
+ */
+final class RoundedRectCoverage {
+
+    private RoundedRectCoverage() {
+    }
+
+    /**
+     * @return the radius clamped so that it fits in a rect of the given size.
+     */
+    static float clampRadius(float radius, float width, float height) {
+        return Math.max(0f, Math.min(radius, Math.min(width, height) * 0.5f));
+    }
+
+    /**
+     * @param x the x of the point, from the left edge of the rect.
+     * @param y the y of the point, from the top edge of the rect.
+     * @return the distance from the point to the outline of the rounded rect, negative inside of
+     * it.
+     */
+    static float signedDistance(float x, float y, float width, float height,
+                                float topLeft, float topRight, float bottomRight,
+                                float bottomLeft) {
+        // relative to the center, like the shader
+        final float px = x - width * 0.5f;
+        final float py = y - height * 0.5f;
+        final float radius;
+        if (px < 0f) {
+            radius = py < 0f ? topLeft : bottomLeft;
+        } else {
+            radius = py < 0f ? topRight : bottomRight;
+        }
+        final float r = clampRadius(radius, width, height);
+        final float qx = Math.abs(px) - width * 0.5f + r;
+        final float qy = Math.abs(py) - height * 0.5f + r;
+        final float outside = (float) Math.hypot(Math.max(qx, 0f), Math.max(qy, 0f));
+        return Math.min(Math.max(qx, qy), 0f) + outside - r;
+    }
+
+    /**
+     * @param x the x of the point, from the left edge of the rect. Use the center of a pixel to
+     *          get the coverage of that pixel, e.g. 0.5 for the first column.
+     * @param y the y of the point, from the top edge of the rect.
+     * @return how much of the pixel centered at the point is inside the rounded rect, from 0 to 1.
+     * The edge fades over a single pixel.
+     */
+    static float coverage(float x, float y, float width, float height,
+                          float topLeft, float topRight, float bottomRight,
+                          float bottomLeft) {
+        final float d = signedDistance(x, y, width, height, topLeft, topRight, bottomRight,
+                bottomLeft);
+        return Math.max(0f, Math.min(1f, 0.5f - d));
+    }
+}
@@ -0,0 +1,486 @@
+package com.abrantix.roundedvideo;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+/**
+ * A render thread drawing every {@link VideoSurfaceView} of an {@link EGLConfigPolicy} that asks
+ * for it, instead of each view running its own {@link android.opengl.GLSurfaceView} thread.
+ *
+ * It owns a single EGL context and one window surface per view, and makes the context current
+ * with the surface of whichever view it draws. So all the views share their GL programs, through
+ * one {@link ProgramCache}, and one {@link GLStateCache}, which shadows the state of the one
+ * context they all draw with.
+ *
+ * Views asking for frames are served round robin, so one playing at a high frame rate can't
+ * starve the others. How long a view waited for its turn is reported in
+ * {@link FrameMetrics#scheduleDelayNanos}.
+ *
+ * The context lives while at least one view has a surface, like the context of a
+ * {@link android.opengl.GLSurfaceView} lives while it has one. When the last surface goes, so do
+ * the context and every GL object in it, and the renderers create theirs again on the next one.
+ * The thread itself goes along with them, once it ran the events left, and a new one starts with
+ * the next surface or event. So one instance per policy is kept for good, but a thread only runs
+ * while some view of the policy is on screen.
+ */
+final class SharedRenderThread implements Runnable {
+    private static final String TAG = "SharedRenderThread";
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+    private static final Map<EGLConfigPolicy, SharedRenderThread> sThreads =
+            new HashMap<EGLConfigPolicy, SharedRenderThread>();
+
+    /**
+     * A view drawn by the thread. Every field is guarded by the thread.
+     */
+    static final class Target {
+        final VideoRenderer mRenderer;
+        SurfaceHolder mHolder;
+        boolean mHasSurface;
+        boolean mPaused;
+        int mWidth;
+        int mHeight;
+        boolean mSizeChanged;
+        boolean mRenderRequested;
+        long mRenderRequestNanos;
+        // set while the thread uses the target without holding the lock
+        boolean mBusy;
+        // released while it still had a surface, forgotten once the surface goes
+        boolean mReleased;
+        // only touched by the thread
+        EGLSurface mEglSurface;
+        int mContextGeneration = -1;
+
+        Target(@NonNull VideoRenderer renderer) {
+            mRenderer = renderer;
+        }
+
+        boolean canDraw() {
+            return mHasSurface && !mPaused && mWidth > 0 && mHeight > 0;
+        }
+    }
+
+    private final CachingEGLConfigChooser mConfigChooser;
+    private final GLStateCache mGL = new GLStateCache(GLES20Backend.getInstance());
+    private final ProgramCache mProgramCache = new ProgramCache();
+
+    // guarded by this
+    private final List<Target> mTargets = new ArrayList<Target>();
+    private final List<Runnable> mEvents = new ArrayList<Runnable>();
+    private int mNextTarget;
+    // null while no view has a surface
+    private Thread mThread;
+
+    // only touched by the thread, the next one starts after the last one is done with them
+    private EGL10 mEgl;
+    private EGLDisplay mEglDisplay;
+    private EGLConfig mEglConfig;
+    private EGLContext mEglContext;
+    private EGLSurface mCurrentSurface;
+    private int mContextGeneration;
+
+    private SharedRenderThread(@NonNull EGLConfigPolicy policy) {
+        mConfigChooser = new CachingEGLConfigChooser(policy);
+    }
+
+    /**
+     * @return the render thread of the views rendering into configs of a policy, created the
+     * first time.
+     */
+    @NonNull
+    static SharedRenderThread getInstance(@NonNull EGLConfigPolicy policy) {
+        synchronized (sThreads) {
+            SharedRenderThread thread = sThreads.get(policy);
+            if (thread == null) {
+                thread = new SharedRenderThread(policy);
+                sThreads.put(policy, thread);
+            }
+            return thread;
+        }
+    }
+
+    /**
+     * @return the state cache every renderer of this thread must draw through.
+     */
+    @NonNull
+    GLStateCache getGLStateCache() {
+        return mGL;
+    }
+
+    @NonNull
+    ProgramCache getProgramCache() {
+        return mProgramCache;
+    }
+
+    @NonNull
+    CachingEGLConfigChooser getConfigChooser() {
+        return mConfigChooser;
+    }
+
+    @NonNull
+    Target createTarget(@NonNull VideoRenderer renderer) {
+        return new Target(renderer);
+    }
+
+    synchronized void surfaceCreated(@NonNull Target target, @NonNull SurfaceHolder holder) {
+        if (!mTargets.contains(target)) {
+            mTargets.add(target);
+        }
+        target.mHolder = holder;
+        target.mHasSurface = true;
+        target.mReleased = false;
+        startLocked();
+        notifyAll();
+    }
+
+    synchronized void surfaceChanged(@NonNull Target target, int width, int height) {
+        target.mWidth = width;
+        target.mHeight = height;
+        target.mSizeChanged = true;
+        requestRender(target);
+    }
+
+    /**
+     * Returns once the thread is done with the surface of the target, since the surface is gone
+     * right after.
+     */
+    synchronized void surfaceDestroyed(@NonNull Target target) {
+        target.mHasSurface = false;
+        notifyAll();
+        boolean interrupted = false;
+        while (target.mBusy || target.mEglSurface != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        target.mHolder = null;
+        target.mWidth = 0;
+        target.mHeight = 0;
+        if (target.mReleased) {
+            mTargets.remove(target);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized void onPause(@NonNull Target target) {
+        target.mPaused = true;
+    }
+
+    synchronized void onResume(@NonNull Target target) {
+        target.mPaused = false;
+        requestRender(target);
+    }
+
+    synchronized void requestRender(@NonNull Target target) {
+        if (!target.mRenderRequested) {
+            target.mRenderRequested = true;
+            target.mRenderRequestNanos = System.nanoTime();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Runs an event on the thread, with the context current if there is one.
+     */
+    synchronized void queueEvent(@NonNull Runnable event) {
+        mEvents.add(event);
+        startLocked();
+        notifyAll();
+    }
+
+    private void startLocked() {
+        if (mThread == null) {
+            mThread = new Thread(this, TAG);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stops drawing a view for good and deletes the GL objects of its renderer.
+     */
+    void release(@NonNull final Target target) {
+        queueEvent(new Runnable() {
+            public void run() {
+                // The objects of an older context died with it, its SurfaceTexture didn't
+                if (target.mContextGeneration == mContextGeneration
+                        && mCurrentSurface != null) {
+                    target.mRenderer.release();
+                } else {
+                    target.mRenderer.releaseWithoutContext();
+                }
+                target.mContextGeneration = -1;
+                synchronized (SharedRenderThread.this) {
+                    if (target.mHasSurface) {
+                        // the view is detached before its surface goes
+                        target.mReleased = true;
+                    } else {
+                        mTargets.remove(target);
+                    }
+                }
+            }});
+    }
+
+    @Override
+    public void run() {
+        try {
+            guardedRun();
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                destroyContext();
+                mThread = null;
+            }
+        }
+    }
+
+    private void guardedRun() throws InterruptedException {
+        while (true) {
+            Runnable event = null;
+            Target target = null;
+            boolean sizeChanged = false;
+            long scheduleDelayNanos = 0;
+            int viewCount = 0;
+            synchronized (this) {
+                while (true) {
+                    destroyLostSurfacesLocked();
+                    if (!mEvents.isEmpty()) {
+                        event = mEvents.remove(0);
+                        break;
+                    }
+                    target = nextTargetLocked();
+                    if (target != null) {
+                        target.mBusy = true;
+                        sizeChanged = target.mSizeChanged;
+                        target.mSizeChanged = false;
+                        target.mRenderRequested = false;
+                        scheduleDelayNanos = System.nanoTime() - target.mRenderRequestNanos;
+                        viewCount = countSurfacesLocked();
+                        break;
+                    }
+                    if (countSurfacesLocked() == 0) {
+                        // Nothing to draw until the next surface, which starts a new thread
+                        destroyContext();
+                        mThread = null;
+                        return;
+                    }
+                    wait();
+                }
+            }
+
+            if (event != null) {
+                if (mEglContext != null) {
+                    makeAnyCurrent();
+                }
+                event.run();
+                continue;
+            }
+
+            try {
+                draw(target, sizeChanged, scheduleDelayNanos, viewCount);
+            } finally {
+                synchronized (this) {
+                    target.mBusy = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the next target after the last one drawn that has a frame to draw, so that every
+     * target gets its turn.
+     */
+    private Target nextTargetLocked() {
+        final int size = mTargets.size();
+        for (int i = 0; i < size; i++) {
+            final int index = (mNextTarget + i) % size;
+            final Target target = mTargets.get(index);
+            if (target.canDraw() && (target.mRenderRequested || target.mSizeChanged)) {
+                mNextTarget = (index + 1) % size;
+                return target;
+            }
+        }
+        return null;
+    }
+
+    private int countSurfacesLocked() {
+        int count = 0;
+        for (int i = 0; i < mTargets.size(); i++) {
+            if (mTargets.get(i).mHasSurface) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Destroys the EGL surfaces of the targets whose view surface is gone, and the context along
+     * with the last one.
+     */
+    private void destroyLostSurfacesLocked() {
+        boolean destroyed = false;
+        for (int i = 0; i < mTargets.size(); i++) {
+            final Target target = mTargets.get(i);
+            if (!target.mHasSurface && !target.mBusy && target.mEglSurface != null) {
+                destroySurface(target);
+                destroyed = true;
+            }
+        }
+        if (destroyed) {
+            if (mEglContext != null && countSurfacesLocked() == 0) {
+                destroyContext();
+            }
+            notifyAll();
+        }
+    }
+
+    private void draw(@NonNull Target target, boolean sizeChanged, long scheduleDelayNanos,
+                      int viewCount) {
+        if (mEglContext == null) {
+            createContext();
+        }
+        if (target.mEglSurface == null) {
+            target.mEglSurface = mEgl.eglCreateWindowSurface(mEglDisplay, mEglConfig,
+                    target.mHolder, null);
+            if (target.mEglSurface == null || target.mEglSurface == EGL10.EGL_NO_SURFACE) {
+                target.mEglSurface = null;
+                Log.e(TAG, "eglCreateWindowSurface failed " + mEgl.eglGetError());
+                return;
+            }
+        }
+        if (!makeCurrent(target.mEglSurface)) {
+            return;
+        }
+
+        final VideoRenderer renderer = target.mRenderer;
+        if (target.mContextGeneration != mContextGeneration) {
+            renderer.onSurfaceCreated(null, mEglConfig);
+            target.mContextGeneration = mContextGeneration;
+            sizeChanged = true;
+        }
+        if (sizeChanged) {
+            renderer.onSurfaceChanged(null, target.mWidth, target.mHeight);
+        } else {
+            // The viewport belongs to the context, which the views take turns at
+            mGL.glViewport(0, 0, target.mWidth, target.mHeight);
+        }
+        renderer.setScheduleDelay(scheduleDelayNanos, viewCount);
+        renderer.onDrawFrame(null);
+
+        if (!mEgl.eglSwapBuffers(mEglDisplay, target.mEglSurface)) {
+            final int error = mEgl.eglGetError();
+            if (error == EGL10.EGL_CONTEXT_LOST) {
+                Log.w(TAG, "EGL context lost");
+                synchronized (this) {
+                    for (int i = 0; i < mTargets.size(); i++) {
+                        destroySurface(mTargets.get(i));
+                        mTargets.get(i).mSizeChanged = true;
+                    }
+                }
+                destroyContext();
+            } else {
+                // Usually EGL_BAD_NATIVE_WINDOW, the view surface is going away
+                Log.w(TAG, "eglSwapBuffers failed " + error);
+            }
+        }
+    }
+
+    private void createContext() {
+        if (mEgl == null) {
+            mEgl = (EGL10) EGLContext.getEGL();
+            mEglDisplay = mEgl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+            if (mEglDisplay == EGL10.EGL_NO_DISPLAY) {
+                throw new RuntimeException("eglGetDisplay failed");
+            }
+            if (!mEgl.eglInitialize(mEglDisplay, new int[2])) {
+                throw new RuntimeException("eglInitialize failed");
+            }
+            mEglConfig = mConfigChooser.chooseConfig(mEgl, mEglDisplay);
+        }
+        final int[] attribs = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
+        mEglContext = mEgl.eglCreateContext(mEglDisplay, mEglConfig, EGL10.EGL_NO_CONTEXT,
+                attribs);
+        if (mEglContext == null || mEglContext == EGL10.EGL_NO_CONTEXT) {
+            mEglContext = null;
+            throw new RuntimeException("eglCreateContext failed " + mEgl.eglGetError());
+        }
+        mContextGeneration++;
+        mGL.invalidate();
+        mProgramCache.invalidate();
+    }
+
+    private void destroyContext() {
+        if (mEglContext == null) {
+            return;
+        }
+        mEgl.eglMakeCurrent(mEglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
+                EGL10.EGL_NO_CONTEXT);
+        mCurrentSurface = null;
+        mEgl.eglDestroyContext(mEglDisplay, mEglContext);
+        mEglContext = null;
+        // Whatever was in the context is gone, even for views that don't know it yet
+        mContextGeneration++;
+        mGL.invalidate();
+        mProgramCache.invalidate();
+    }
+
+    private void destroySurface(@NonNull Target target) {
+        if (target.mEglSurface == null) {
+            return;
+        }
+        if (mCurrentSurface == target.mEglSurface) {
+            mEgl.eglMakeCurrent(mEglDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE,
+                    EGL10.EGL_NO_CONTEXT);
+            mCurrentSurface = null;
+        }
+        mEgl.eglDestroySurface(mEglDisplay, target.mEglSurface);
+        target.mEglSurface = null;
+    }
+
+    private boolean makeCurrent(@NonNull EGLSurface surface) {
+        if (mCurrentSurface == surface) {
+            return true;
+        }
+        if (!mEgl.eglMakeCurrent(mEglDisplay, surface, surface, mEglContext)) {
+            Log.w(TAG, "eglMakeCurrent failed " + mEgl.eglGetError());
+            mCurrentSurface = null;
+            return false;
+        }
+        mCurrentSurface = surface;
+        return true;
+    }
+
+    /**
+     * Makes the context current with any surface, since without surfaceless contexts GL needs
+     * one to run events.
+     */
+    private void makeAnyCurrent() {
+        if (mCurrentSurface != null) {
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < mTargets.size(); i++) {
+                final EGLSurface surface = mTargets.get(i).mEglSurface;
+                if (surface != null && makeCurrent(surface)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.abrantix.roundedvideo;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands values from a producer thread to a consumer thread without locks. The producer fills the
+ * back slot and publishes it, the consumer swaps in the latest published slot whenever it's ready
+ * for it, e.g. at the start of a frame. Neither ever waits for the other and a slot only changes
+ * hands when it's published or swapped in, so the consumer never sees one half written. Slots
+ * published before the consumer gets to swap are skipped.
+ *
+ * The three slots are reused, so the producer finds whatever it published a couple of times ago
+ * in the back slot, and must only fill what changed since. Only one thread at a time may produce
+ * and one consume.
+ */
+final class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int PUBLISHED = 4;
+
+    private final T[] mSlots;
+    // index of the slot in between the producer and the consumer, flagged with PUBLISHED until
+    // the consumer swaps it in
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+    // only touched by the producer
+    private int mBack = 2;
+    // only touched by the consumer
+    private int mFront = 0;
+
+    /**
+     * @param slots the three slots, the first one is the initial front.
+     */
+    TripleBuffer(@NonNull T[] slots) {
+        if (slots.length != 3) {
+            throw new IllegalArgumentException("A triple buffer needs 3 slots");
+        }
+        mSlots = slots;
+    }
+
+    /**
+     * @return the slot the producer fills. Producer only.
+     */
+    @NonNull
+    T getBack() {
+        return mSlots[mBack];
+    }
+
+    /**
+     * Makes the back slot the one the consumer swaps in next. Producer only.
+     */
+    void publish() {
+        mBack = mMiddle.getAndSet(mBack | PUBLISHED) & INDEX_MASK;
+    }
+
+    /**
+     * Swaps in the latest published slot, if any was published since the last swap. Consumer
+     * only.
+     *
+     * @return true if the front slot changed.
+     */
+    boolean swap() {
+        if ((mMiddle.get() & PUBLISHED) == 0) {
+            return false;
+        }
+        mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * @return the slot the consumer reads. Consumer only.
+     */
+    @NonNull
+    T getFront() {
+        return mSlots[mFront];
+    }
+}
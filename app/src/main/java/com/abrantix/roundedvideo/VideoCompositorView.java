@@ -0,0 +1,134 @@
+package com.abrantix.roundedvideo;
+
+import android.content.Context;
+import android.opengl.GLSurfaceView;
+import android.support.annotation.NonNull;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+
+import java.util.List;
+
+/**
+ * {@link android.opengl.GLSurfaceView} that draws any number of rounded corner videos, each one a
+ * {@link VideoLayer} with its own {@link android.media.MediaPlayer}, bounds, z-order and corner
+ * radii, into a single surface.
+ *
+ * Compared to one {@link VideoSurfaceView} per video, all the videos share one render thread, one
+ * EGL context, one program and one window surface for the system to composite, which is what
+ * screens showing lots of previews at once want.
+ *
+ * <pre>
+ * VideoLayer layer = new VideoLayer();
+ * layer.setBounds(0, 0, 320, 180);
+ * layer.setCornerRadius(radius);
+ * layer.setMediaPlayer(mediaPlayer);
+ * compositorView.addLayer(layer);
+ * </pre>
+ */
+public class VideoCompositorView extends GLSurfaceView {
+
+    CompositorRenderer mRenderer;
+    CachingEGLConfigChooser mConfigChooser;
+
+    public VideoCompositorView(Context context) {
+        super(context);
+        init(EGLConfigPolicy.TRANSLUCENT_MSAA_4X);
+    }
+
+    public VideoCompositorView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(EGLConfigPolicy.TRANSLUCENT_MSAA_4X);
+    }
+
+    /**
+     * @param configPolicy the kind of EGL config to render into, see
+     *                     {@link VideoSurfaceView#VideoSurfaceView(Context, EGLConfigPolicy)}.
+     */
+    public VideoCompositorView(Context context, @NonNull EGLConfigPolicy configPolicy) {
+        super(context);
+        init(configPolicy);
+    }
+
+    private void init(@NonNull EGLConfigPolicy configPolicy) {
+        setEGLContextClientVersion(2);
+
+        if (configPolicy.isTranslucent()) {
+            setZOrderOnTop(true);
+        }
+        mConfigChooser = new CachingEGLConfigChooser(configPolicy);
+        setEGLConfigChooser(mConfigChooser);
+        getHolder().setFormat(configPolicy.getPixelFormat());
+
+        mRenderer = new CompositorRenderer();
+        mRenderer.setConfigChooser(mConfigChooser);
+        // Keeps the layer textures and their players' surfaces across onPause/onResume where
+        // the device allows
+        setPreserveEGLContextOnPause(true);
+        setRenderer(mRenderer);
+        setRenderMode(RENDERMODE_WHEN_DIRTY);
+    }
+
+    /**
+     * Adds a layer on top of the ones with the same z-order. A layer can only be in one view at a
+     * time.
+     */
+    public void addLayer(@NonNull VideoLayer layer) {
+        layer.setView(this);
+        mRenderer.addLayer(layer);
+        requestRender();
+    }
+
+    /**
+     * Removes a layer, its GL texture is released on the next frame.
+     */
+    public void removeLayer(@NonNull VideoLayer layer) {
+        mRenderer.removeLayer(layer);
+        layer.setView(null);
+        requestRender();
+    }
+
+    /**
+     * @return a copy of the layers of the view, in the order they were added.
+     */
+    @NonNull
+    public List<VideoLayer> getLayers() {
+        return mRenderer.getLayers();
+    }
+
+    /**
+     * Sets whether consecutive layers are drawn together, up to 8 per draw call, instead of one
+     * draw call per layer. Pays off with lots of small layers, e.g. a grid of thumbnails.
+     * Defaults to false.
+     */
+    public void setBatching(final boolean batching) {
+        queueEvent(new Runnable() {
+            public void run() {
+                mRenderer.setBatching(batching);
+            }});
+        requestRender();
+    }
+
+    /**
+     * @return the cache of the GL programs of this view, which tells how much time went into
+     * compiling and linking them.
+     */
+    @NonNull
+    public ProgramCache getProgramCache() {
+        return mRenderer.getProgramCache();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        super.surfaceDestroyed(holder);
+        // The render thread is done with the surface by now and runs events without one
+        queueEvent(new Runnable() {
+            public void run() {
+                mRenderer.releaseGeometryBuffers();
+            }});
+    }
+
+    void onLayerOrderChanged() {
+        mRenderer.onLayerOrderChanged();
+        requestRender();
+    }
+}
@@ -0,0 +1,246 @@
+package com.abrantix.roundedvideo;
+
+import android.graphics.RectF;
+import android.graphics.SurfaceTexture;
+import android.media.MediaPlayer;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+
+/**
+ * A rounded corner video drawn by a {@link VideoCompositorView}, along with the other layers of
+ * that view, in a single GL surface.
+ *
+ * Each layer has its own {@link android.media.MediaPlayer}, bounds in view pixels, z-order and
+ * corner radii. The setters can be called from any thread; the changes are picked up on the next
+ * frame.
+ *
+ * Like {@link VideoSurfaceView}, the layer attaches a surface to its
+ * {@link android.media.MediaPlayer} and calls {@link MediaPlayer#prepare()} once the GL texture
+ * backing it is available.
+ */
+public class VideoLayer implements SurfaceTexture.OnFrameAvailableListener {
+    private static final String TAG = "VideoLayer";
+
+    // Guarded by this, written from any thread and read on the GL thread
+    private final RectF mBounds = new RectF();
+    private final RectF mRoundRadius = new RectF();
+    private int mZOrder;
+    private MediaPlayer mMediaPlayer;
+    private boolean mGeometryDirty = true;
+    private boolean mMediaPlayerDirty = false;
+    private boolean mUpdateSurface = false;
+
+    private volatile VideoCompositorView mView;
+
+    // Only touched on the GL thread
+    int mTextureId;
+    SurfaceTexture mSurfaceTexture;
+    final float[] mSTMatrix = new float[16];
+    private MediaPlayer mPreparedMediaPlayer;
+    // Where the geometry of the layer is in the combined buffers of the compositor, snapshot
+    // taken on the GL thread
+    final RectF mDrawBounds = new RectF();
+    final RectF mDrawRoundRadius = new RectF();
+    int mDrawZOrder;
+    int mIndexOffset;
+    int mIndexCount;
+    int mVertexOffset;
+    int mVertexCount;
+    // texture unit of the layer when batching, and the texture matrix its vertices hold
+    int mBatchSlot;
+    final float[] mBatchedSTMatrix = new float[16];
+
+    public VideoLayer() {
+        Matrix.setIdentityM(mSTMatrix, 0);
+    }
+
+    /**
+     * @param left the left edge of the layer, in pixels from the left of the view.
+     * @param top the top edge of the layer, in pixels from the top of the view.
+     * @param right the right edge of the layer, in pixels from the left of the view.
+     * @param bottom the bottom edge of the layer, in pixels from the top of the view.
+     */
+    public void setBounds(float left, float top, float right, float bottom) {
+        synchronized (this) {
+            mBounds.set(left, top, right, bottom);
+            mGeometryDirty = true;
+        }
+        requestRender();
+    }
+
+    public void setBounds(@NonNull RectF bounds) {
+        setBounds(bounds.left, bounds.top, bounds.right, bounds.bottom);
+    }
+
+    /**
+     * @param outBounds set to the bounds of the layer, in view pixels.
+     */
+    public synchronized void getBounds(@NonNull RectF outBounds) {
+        outBounds.set(mBounds);
+    }
+
+    /**
+     * Layers with a higher z-order are drawn on top of the ones with a lower one. Layers with the
+     * same z-order are drawn in the order they were added.
+     */
+    public void setZOrder(int zOrder) {
+        synchronized (this) {
+            mZOrder = zOrder;
+        }
+        final VideoCompositorView view = mView;
+        if (view != null) {
+            view.onLayerOrderChanged();
+        }
+    }
+
+    public synchronized int getZOrder() {
+        return mZOrder;
+    }
+
+    public void setCornerRadius(float radius) {
+        setCornerRadius(radius, radius, radius, radius);
+    }
+
+    public void setCornerRadius(float topLeft, float topRight, float bottomRight,
+                                float bottomLeft) {
+        synchronized (this) {
+            mRoundRadius.set(topLeft, topRight, bottomRight, bottomLeft);
+            mGeometryDirty = true;
+        }
+        requestRender();
+    }
+
+    public void setMediaPlayer(@Nullable MediaPlayer mediaPlayer) {
+        synchronized (this) {
+            mMediaPlayer = mediaPlayer;
+            mMediaPlayerDirty = true;
+        }
+        requestRender();
+    }
+
+    @Nullable
+    public synchronized MediaPlayer getMediaPlayer() {
+        return mMediaPlayer;
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+        synchronized (this) {
+            mUpdateSurface = true;
+        }
+        requestRender();
+    }
+
+    void setView(@Nullable VideoCompositorView view) {
+        mView = view;
+    }
+
+    private void requestRender() {
+        final VideoCompositorView view = mView;
+        if (view != null) {
+            view.requestRender();
+        }
+    }
+
+    /**
+     * Gets the layer ready to be drawn: creates its texture if needed, hands it to the media
+     * player and latches the latest video frame. Must run on the GL thread.
+     *
+     * @return true if the bounds or radii changed since the last call, copied to
+     * {@link #mDrawBounds} and {@link #mDrawRoundRadius}.
+     */
+    boolean prepareForDraw(@NonNull GLBackend gl) {
+        if (mTextureId == 0) {
+            final int[] textures = new int[1];
+            gl.glGenTextures(1, textures, 0);
+            mTextureId = textures[0];
+            gl.glBindTexture(VideoProgram.GL_TEXTURE_EXTERNAL_OES, mTextureId);
+            gl.glTexParameterf(VideoProgram.GL_TEXTURE_EXTERNAL_OES,
+                    GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            gl.glTexParameterf(VideoProgram.GL_TEXTURE_EXTERNAL_OES,
+                    GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            gl.glTexParameterf(VideoProgram.GL_TEXTURE_EXTERNAL_OES,
+                    GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            gl.glTexParameterf(VideoProgram.GL_TEXTURE_EXTERNAL_OES,
+                    GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            mSurfaceTexture = new SurfaceTexture(mTextureId);
+            mSurfaceTexture.setOnFrameAvailableListener(this);
+            synchronized (this) {
+                // the new texture has to be handed to the player
+                mMediaPlayerDirty = true;
+                mUpdateSurface = false;
+            }
+        }
+
+        final MediaPlayer mediaPlayer;
+        final boolean mediaPlayerDirty;
+        final boolean updateSurface;
+        final boolean geometryDirty;
+        synchronized (this) {
+            mediaPlayer = mMediaPlayer;
+            mediaPlayerDirty = mMediaPlayerDirty;
+            updateSurface = mUpdateSurface;
+            geometryDirty = mGeometryDirty;
+            mMediaPlayerDirty = false;
+            mUpdateSurface = false;
+            mGeometryDirty = false;
+            if (geometryDirty) {
+                mDrawBounds.set(mBounds);
+                mDrawRoundRadius.set(mRoundRadius);
+            }
+        }
+
+        if (mediaPlayerDirty && mediaPlayer != null) {
+            final Surface surface = new Surface(mSurfaceTexture);
+            mediaPlayer.setSurface(surface);
+            surface.release();
+            // A player only needs preparing once, not on every new texture
+            if (mediaPlayer != mPreparedMediaPlayer) {
+                mPreparedMediaPlayer = mediaPlayer;
+                try {
+                    mediaPlayer.prepare();
+                } catch (IOException t) {
+                    Log.e(TAG, "media player prepare failed");
+                }
+            }
+        }
+
+        if (updateSurface) {
+            mSurfaceTexture.updateTexImage();
+            mSurfaceTexture.getTransformMatrix(mSTMatrix);
+        }
+        return geometryDirty;
+    }
+
+    /**
+     * Forgets the GL resources of the layer since their context is gone, they'll be created
+     * again on the next frame. Must run on the GL thread.
+     */
+    void onContextLost() {
+        if (mSurfaceTexture != null) {
+            mSurfaceTexture.release();
+            mSurfaceTexture = null;
+        }
+        mTextureId = 0;
+        synchronized (this) {
+            mGeometryDirty = true;
+        }
+    }
+
+    /**
+     * Deletes the GL resources of the layer. Must run on the GL thread.
+     */
+    void release(@NonNull GLBackend gl) {
+        if (mTextureId != 0) {
+            final int[] textures = {mTextureId};
+            gl.glDeleteTextures(1, textures, 0);
+        }
+        onContextLost();
+    }
+}
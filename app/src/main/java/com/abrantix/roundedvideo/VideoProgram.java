@@ -0,0 +1,348 @@
+package com.abrantix.roundedvideo;
+
+import android.opengl.GLES20;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * The GL program that draws video frames from an external texture, along with the locations of
+ * its attributes and uniforms.
+ *
+ * The shaders come in variants selected by preprocessor defines, see {@link #DEFINE_SDF} and
+ * {@link #DEFINE_BATCHED}.
+ */
+class VideoProgram {
+    private static final String TAG = "VideoProgram";
+
+    static final int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+
+    /**
+     * Makes the program round the corners itself: the fragment shader computes the coverage of
+     * each pixel from the signed distance to a rounded rect with the radii in uRadii, fading the
+     * edges over one pixel, so it only needs geometry covering the corners. The math is the same
+     * as in {@link RoundedRectCoverage}.
+     */
+    static final String DEFINE_SDF = "#define ROUNDED_SDF\n";
+
+    /**
+     * Makes the program draw several videos in a single draw call: instead of the uSTMatrix
+     * uniform, each vertex carries the rows of the texture matrix of its video that apply to 2D
+     * coordinates (aSTRow0 and aSTRow1) and the texture unit its video is bound to
+     * (aTextureIndex), out of {@link #BATCH_TEXTURE_UNITS}.
+     */
+    static final String DEFINE_BATCHED = "#define BATCHED\n";
+
+    /**
+     * Makes the program place the vertices of a unit mesh, see
+     * {@link GLRoundedGeometry#getUnitMesh(int, int)}, from the view size in uSize and the
+     * corner radii in uRadii, both in pixels, and derive the texture coordinates from the
+     * resulting position. Resizing the view or animating the radii then only changes uniforms.
+     * Not meant to be combined with {@link #DEFINE_SDF}.
+     */
+    static final String DEFINE_UNIT_MESH = "#define UNIT_MESH\n";
+
+    /**
+     * The amount of videos the {@link #DEFINE_BATCHED} variant samples from, bound to
+     * GL_TEXTURE0 onwards. GLES2 guarantees at least 8 texture units for fragment shaders.
+     */
+    static final int BATCH_TEXTURE_UNITS = 8;
+
+    static final String VERTEX_SHADER =
+            "uniform mat4 uMVPMatrix;\n" +
+                    "uniform mat4 uSTMatrix;\n" +
+                    "attribute vec4 aPosition;\n" +
+                    "attribute vec4 aTextureCoord;\n" +
+                    "varying vec2 vTextureCoord;\n" +
+                    "#ifdef BATCHED\n" +
+                    "attribute vec3 aSTRow0;\n" +
+                    "attribute vec3 aSTRow1;\n" +
+                    "attribute float aTextureIndex;\n" +
+                    "varying float vTextureIndex;\n" +
+                    "#endif\n" +
+                    "#if defined(ROUNDED_SDF) || defined(UNIT_MESH)\n" +
+                    "uniform vec2 uSize;\n" +
+                    "#endif\n" +
+                    "#ifdef UNIT_MESH\n" +
+                    "uniform vec4 uRadii;\n" +
+                    "#endif\n" +
+                    "#ifdef ROUNDED_SDF\n" +
+                    "varying vec2 vPosition;\n" +
+                    "varying vec2 vHalfSize;\n" +
+                    "#endif\n" +
+                    "void main() {\n" +
+                    "#ifdef UNIT_MESH\n" +
+                    // aPosition.xy is the corner of the view the vertex hangs from and
+                    // aTextureCoord its offset from there, in radii of that corner
+                    "  float r = aPosition.x < 0.0 ? (aPosition.y > 0.0 ? uRadii.x : uRadii.w)\n" +
+                    "                              : (aPosition.y > 0.0 ? uRadii.y : uRadii.z);\n" +
+                    "  vec2 position = aPosition.xy + aTextureCoord.xy * r / (uSize * 0.5);\n" +
+                    "  gl_Position = uMVPMatrix * vec4(position, 0.0, 1.0);\n" +
+                    "  vec4 textureCoord = vec4(position * 0.5 + 0.5, 0.0, 1.0);\n" +
+                    "#else\n" +
+                    "  gl_Position = uMVPMatrix * aPosition;\n" +
+                    "  vec4 textureCoord = aTextureCoord;\n" +
+                    "#endif\n" +
+                    "#ifdef BATCHED\n" +
+                    "  vec3 uv = vec3(textureCoord.xy, 1.0);\n" +
+                    "  vTextureCoord = vec2(dot(aSTRow0, uv), dot(aSTRow1, uv));\n" +
+                    "  vTextureIndex = aTextureIndex;\n" +
+                    "#else\n" +
+                    "  vTextureCoord = (uSTMatrix * textureCoord).xy;\n" +
+                    "#endif\n" +
+                    "#ifdef ROUNDED_SDF\n" +
+                    // pixels from the center, y grows downwards unlike the texture coordinates.
+                    // The size goes through a varying since uniforms shared by both shaders must
+                    // have the same precision, which isn't possible without highp fragments.
+                    "  vHalfSize = uSize * 0.5;\n" +
+                    "  vPosition = vec2(textureCoord.x - 0.5, 0.5 - textureCoord.y) * uSize;\n" +
+                    "#endif\n" +
+                    "}\n";
+
+    static final String FRAGMENT_SHADER_EXTENSIONS =
+            "#extension GL_OES_EGL_image_external : require\n";
+
+    static final String FRAGMENT_SHADER =
+            "#if defined(ROUNDED_SDF) && defined(GL_FRAGMENT_PRECISION_HIGH)\n" +
+                    // mediump can't hold pixel positions of big views accurately
+                    "precision highp float;\n" +
+                    "#else\n" +
+                    "precision mediump float;\n" +
+                    "#endif\n" +
+                    "varying vec2 vTextureCoord;\n" +
+                    "#ifdef BATCHED\n" +
+                    batchedSamplerDeclarations() +
+                    "varying float vTextureIndex;\n" +
+                    "#else\n" +
+                    "uniform samplerExternalOES sTexture;\n" +
+                    "#endif\n" +
+                    "#ifdef ROUNDED_SDF\n" +
+                    // topLeft, topRight, bottomRight, bottomLeft
+                    "uniform vec4 uRadii;\n" +
+                    "varying vec2 vPosition;\n" +
+                    "varying vec2 vHalfSize;\n" +
+                    "#endif\n" +
+                    "void main() {\n" +
+                    "#ifdef BATCHED\n" +
+                    "  vec4 color;\n" +
+                    batchedSampling() +
+                    "#else\n" +
+                    "  vec4 color = texture2D(sTexture, vTextureCoord);\n" +
+                    "#endif\n" +
+                    "#ifdef ROUNDED_SDF\n" +
+                    "  vec2 p = vPosition;\n" +
+                    "  float r = p.x < 0.0 ? (p.y < 0.0 ? uRadii.x : uRadii.w)\n" +
+                    "                      : (p.y < 0.0 ? uRadii.y : uRadii.z);\n" +
+                    "  vec2 q = abs(p) - vHalfSize + r;\n" +
+                    "  float d = min(max(q.x, q.y), 0.0) + length(max(q, 0.0)) - r;\n" +
+                    "  float coverage = clamp(0.5 - d, 0.0, 1.0);\n" +
+                    // premultiplied alpha, like the surface expects
+                    "  gl_FragColor = color * coverage;\n" +
+                    "#else\n" +
+                    "  gl_FragColor = color;\n" +
+                    "#endif\n" +
+                    "}\n";
+
+    final int program;
+    final int aPosition;
+    final int aTextureCoord;
+    final int uMVPMatrix;
+    // -1 for the BATCHED variant
+    final int uSTMatrix;
+    // -1 unless the program is the ROUNDED_SDF or UNIT_MESH variant
+    final int uSize;
+    final int uRadii;
+    // -1 unless the program is the BATCHED variant
+    final int aSTRow0;
+    final int aSTRow1;
+    final int aTextureIndex;
+
+    private VideoProgram(int program, int aPosition, int aTextureCoord, int uMVPMatrix,
+                         int uSTMatrix, int uSize, int uRadii, int aSTRow0, int aSTRow1,
+                         int aTextureIndex) {
+        this.program = program;
+        this.aPosition = aPosition;
+        this.aTextureCoord = aTextureCoord;
+        this.uMVPMatrix = uMVPMatrix;
+        this.uSTMatrix = uSTMatrix;
+        this.uSize = uSize;
+        this.uRadii = uRadii;
+        this.aSTRow0 = aSTRow0;
+        this.aSTRow1 = aSTRow1;
+        this.aTextureIndex = aTextureIndex;
+    }
+
+    private static String batchedSamplerDeclarations() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BATCH_TEXTURE_UNITS; i++) {
+            sb.append("uniform samplerExternalOES sTexture").append(i).append(";\n");
+        }
+        return sb.toString();
+    }
+
+    private static String batchedSampling() {
+        // Samplers can only be indexed by constants in GLSL ES 1.0, so pick one by comparing.
+        // The index is the same on all the vertices of a video so it interpolates to itself.
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BATCH_TEXTURE_UNITS; i++) {
+            sb.append(i == 0 ? "  " : "  else ");
+            if (i < BATCH_TEXTURE_UNITS - 1) {
+                sb.append("if (vTextureIndex < ").append(i).append(".5) ");
+            }
+            sb.append("color = texture2D(sTexture").append(i).append(", vTextureCoord);\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Compiles and links the program and looks up its attributes and uniforms. Must run on the
+     * GL thread.
+     *
+     * @param gl the GL backend to use.
+     * @param defines the defines of the variant to build, e.g. {@link #DEFINE_SDF}, or an empty
+     *                string.
+     * @return the program or null if it failed to compile or link.
+     */
+    @Nullable
+    static VideoProgram create(@NonNull GLBackend gl, @NonNull String defines) {
+        return create(gl, defines, null);
+    }
+
+    /**
+     * Same as {@link #create(GLBackend, String)}, reporting the time spent compiling and linking
+     * to the given cache.
+     */
+    @Nullable
+    static VideoProgram create(@NonNull GLBackend gl, @NonNull String defines,
+                               @Nullable ProgramCache timings) {
+        final int program = createProgram(gl, getVertexShader(defines),
+                getFragmentShader(defines), timings);
+        if (program == 0) {
+            return null;
+        }
+        final boolean sdf = defines.contains(DEFINE_SDF);
+        final boolean batched = defines.contains(DEFINE_BATCHED);
+        final boolean sized = sdf || defines.contains(DEFINE_UNIT_MESH);
+        if (batched) {
+            // Sampler uniforms hold texture units, which never change
+            gl.glUseProgram(program);
+            for (int i = 0; i < BATCH_TEXTURE_UNITS; i++) {
+                gl.glUniform1i(getUniformLocation(gl, program, "sTexture" + i), i);
+            }
+        }
+        return new VideoProgram(program,
+                getAttribLocation(gl, program, "aPosition"),
+                getAttribLocation(gl, program, "aTextureCoord"),
+                getUniformLocation(gl, program, "uMVPMatrix"),
+                batched ? -1 : getUniformLocation(gl, program, "uSTMatrix"),
+                sized ? getUniformLocation(gl, program, "uSize") : -1,
+                sized ? getUniformLocation(gl, program, "uRadii") : -1,
+                batched ? getAttribLocation(gl, program, "aSTRow0") : -1,
+                batched ? getAttribLocation(gl, program, "aSTRow1") : -1,
+                batched ? getAttribLocation(gl, program, "aTextureIndex") : -1);
+    }
+
+    @NonNull
+    private static String getVertexShader(@NonNull String defines) {
+        return defines + VERTEX_SHADER;
+    }
+
+    @NonNull
+    private static String getFragmentShader(@NonNull String defines) {
+        return FRAGMENT_SHADER_EXTENSIONS + defines + FRAGMENT_SHADER;
+    }
+
+    /**
+     * @return a key that identifies the sources of the variant with the given defines.
+     */
+    @NonNull
+    static String getSourceKey(@NonNull String defines) {
+        return getVertexShader(defines) + '\0' + getFragmentShader(defines);
+    }
+
+    private static int getAttribLocation(@NonNull GLBackend gl, int program, String name) {
+        final int location = gl.glGetAttribLocation(program, name);
+        checkGlError(gl, "glGetAttribLocation " + name);
+        if (location == -1) {
+            throw new RuntimeException("Could not get attrib location for " + name);
+        }
+        return location;
+    }
+
+    private static int getUniformLocation(@NonNull GLBackend gl, int program, String name) {
+        final int location = gl.glGetUniformLocation(program, name);
+        checkGlError(gl, "glGetUniformLocation " + name);
+        if (location == -1) {
+            throw new RuntimeException("Could not get attrib location for " + name);
+        }
+        return location;
+    }
+
+    private static int loadShader(@NonNull GLBackend gl, int shaderType, String source,
+                                  @Nullable ProgramCache timings) {
+        int shader = gl.glCreateShader(shaderType);
+        if (shader != 0) {
+            final long start = System.nanoTime();
+            gl.glShaderSource(shader, source);
+            gl.glCompileShader(shader);
+            int[] compiled = new int[1];
+            // querying the status waits for the compiler
+            gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+            if (timings != null) {
+                timings.onShaderCompiled(System.nanoTime() - start);
+            }
+            if (compiled[0] == 0) {
+                Log.e(TAG, "Could not compile shader " + shaderType + ":");
+                Log.e(TAG, gl.glGetShaderInfoLog(shader));
+                gl.glDeleteShader(shader);
+                shader = 0;
+            }
+        }
+        return shader;
+    }
+
+    private static int createProgram(@NonNull GLBackend gl, String vertexSource,
+                                     String fragmentSource, @Nullable ProgramCache timings) {
+        int vertexShader = loadShader(gl, GLES20.GL_VERTEX_SHADER, vertexSource, timings);
+        if (vertexShader == 0) {
+            return 0;
+        }
+        int pixelShader = loadShader(gl, GLES20.GL_FRAGMENT_SHADER, fragmentSource, timings);
+        if (pixelShader == 0) {
+            return 0;
+        }
+
+        int program = gl.glCreateProgram();
+        if (program != 0) {
+            gl.glAttachShader(program, vertexShader);
+            checkGlError(gl, "glAttachShader");
+            gl.glAttachShader(program, pixelShader);
+            checkGlError(gl, "glAttachShader");
+            final long start = System.nanoTime();
+            gl.glLinkProgram(program);
+            int[] linkStatus = new int[1];
+            gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+            if (timings != null) {
+                timings.onProgramLinked(System.nanoTime() - start);
+            }
+            if (linkStatus[0] != GLES20.GL_TRUE) {
+                Log.e(TAG, "Could not link program: ");
+                Log.e(TAG, gl.glGetProgramInfoLog(program));
+                gl.glDeleteProgram(program);
+                program = 0;
+            }
+        }
+        // The program keeps its shaders alive for as long as it needs them
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(pixelShader);
+        return program;
+    }
+
+    static void checkGlError(@NonNull GLBackend gl, String op) {
+        int error;
+        while ((error = gl.glGetError()) != GLES20.GL_NO_ERROR) {
+            Log.e(TAG, op + ": glError " + error);
+            throw new RuntimeException(op + ": glError " + error);
+        }
+    }
+}
@@ -0,0 +1,1190 @@
+/*
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.abrantix.roundedvideo;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.graphics.SurfaceTexture;
+import android.media.MediaPlayer;
+import android.opengl.GLES20;
+import android.opengl.GLSurfaceView;
+import android.opengl.Matrix;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * {@link android.opengl.GLSurfaceView.Renderer} that draws the frames of a
+ * {@link android.media.MediaPlayer}, through a {@link android.graphics.SurfaceTexture}, mapped on
+ * to a rounded corner geometry.
+ *
+ * Adapted from the renderer in the CTS VideoSurfaceView, see {@link VideoSurfaceView}.
+ */
+class VideoRenderer
+        implements GLSurfaceView.Renderer, SurfaceTexture.OnFrameAvailableListener {
+    private static String TAG = "VideoRender";
+
+    private static final int FLOAT_SIZE_BYTES = 4;
+    private static final int SHORT_SIZE_BYTES = 2;
+    private static final int TRIANGLE_VERTICES_DATA_STRIDE_BYTES = 5 * FLOAT_SIZE_BYTES;
+    private static final int TRIANGLE_VERTICES_DATA_POS_OFFSET = 0;
+    private static final int TRIANGLE_VERTICES_DATA_UV_OFFSET = 3;
+
+    private float[] mMVPMatrix = new float[16];
+    private float[] mSTMatrix = new float[16];
+    // crop of the scale mode in texture coordinates, composed into the texture matrix of each
+    // frame unless it's the identity
+    private final float[] mCropMatrix = new float[16];
+    private boolean mCropping = false;
+    private final float[] mCroppedSTMatrix = new float[16];
+
+    // created lazily on the GL thread, one for each rounding mode
+    private VideoProgram mGeometryProgram;
+    private VideoProgram mSdfProgram;
+    private VideoProgram mUnitMeshProgram;
+    private ProgramCache mProgramCache = new ProgramCache();
+    private boolean mOwnsProgramCache = true;
+    private int mTextureID;
+
+    private static int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+
+    private final GLSurfaceView mGLSurfaceView;
+    private volatile RenderScheduler mRenderScheduler;
+    private volatile boolean mFinishFrames = true;
+    private final GLStateCache mGL;
+    private MediaPlayer mMediaPlayer;
+    private SurfaceTexture mSurfaceTexture;
+    // the player last prepared and the SurfaceTexture the player was last given a Surface of
+    private MediaPlayer mPreparedMediaPlayer;
+    private SurfaceTexture mMediaPlayerSurfaceTexture;
+    private boolean mUpdateSurface = false;
+
+    // The SDF mesh cuts the view in a 3x3 grid of 4x4 vertices: the cross of the 5 middle and
+    // edge cells comes first in the indices, then the 4 corner cells
+    private static final int SDF_GRID_VERTICES = 4;
+    private static final int SDF_PLAIN_INDICES_COUNT = 5 * 6;
+    private static final short[] SDF_GRID_INDICES = createSdfGridIndices();
+
+    /**
+     * The geometry of a frame: the mesh and whatever the draw needs to match it.
+     */
+    private static final class Geometry {
+        // taken from the DirectBufferPool, with vertices and indices being views of them
+        ByteBuffer vertexBytes;
+        ByteBuffer indexBytes;
+        FloatBuffer vertices;
+        ShortBuffer indices;
+        int verticesCount;
+        int indicesCount;
+        // the first indices can be drawn by the plain program of ROUNDING_GEOMETRY, which is
+        // cheaper than the one of the rounding mode since they're all inside the rounded rect
+        int plainIndicesCount;
+        // triangles of each corner and topology of the indices
+        final int[] indexLayout = new int[5];
+        // the same key means the same vertices, 0 for none
+        long meshKey;
+        int roundingMode;
+        int topology;
+        // radii handed to the SDF and unit mesh shaders, clamped to the content size
+        final float[] shaderRadii = new float[4];
+        int contentWidth;
+        int contentHeight;
+    }
+
+    // Whichever thread changes the geometry builds it into the back slot, under
+    // mGeometryLock, and the GL thread swaps in the latest one at the start of each frame
+    private final Geometry[] mGeometrySlots =
+            new Geometry[] {new Geometry(), new Geometry(), new Geometry()};
+    private final TripleBuffer<Geometry> mGeometry = new TripleBuffer<Geometry>(mGeometrySlots);
+    private final Object mGeometryLock = new Object();
+    private long mMeshVersion;
+
+    private boolean mUseBufferObjects = true;
+    private boolean mBufferObjectsBound = false;
+    private final int[] mBufferIds = new int[2];
+    private int mVertexBufferId;
+    private int mIndexBufferId;
+    private int mVertexBufferCapacity;
+    private int mIndexBufferCapacity;
+    // what our buffer objects hold
+    private long mUploadedMeshKey;
+    private final int[] mUploadedIndexLayout = new int[5];
+    // the inputs of the geometry, guarded by mGeometryLock
+    private final RectF mRoundRadius = new RectF();
+    private final GLRoundedGeometry mRoundedGeometry;
+    private final Point mViewPortSize = new Point();
+    // pixels the video is drawn on, smaller than the viewport when fitting it in
+    private final Point mContentSize = new Point();
+    private int mRoundingMode = VideoSurfaceView.ROUNDING_GEOMETRY;
+    private int mScaleMode = VideoSurfaceView.SCALE_FILL;
+    private float mVideoAspectRatio = 0f;
+    private final RectF mViewPortGLBounds;
+    // scratch space of getOpaqueRegion, guarded by mGeometryLock
+    private final float[] mOpaqueRadii = new float[4];
+    private final Rect mOpaqueRect = new Rect();
+    private boolean mUsesCoverageAa = false;
+    private CachingEGLConfigChooser mConfigChooser;
+
+    // per frame timings, only measured while there's a listener
+    private volatile VideoSurfaceView.OnFrameMetricsListener mFrameMetricsListener;
+    private FrameMetrics mFrameMetrics;
+    private FrameStatistics mFrameStatistics;
+    private long mFrameNumber;
+    private long mScheduleDelayNanos = -1;
+    private int mRenderThreadViewCount = 1;
+    // guarded by this, like mUpdateSurface
+    private long mFrameAvailableNanos;
+    private int mPendingFrameCount;
+    // idle detection, see setIdleTimeout(long), guarded by this too
+    private long mIdleTimeoutMillis = VideoSurfaceView.DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private long mFrameAvailableCount;
+    private long mIdleCheckFrameCount;
+    private boolean mIdleCheckPending;
+    private boolean mIdle;
+    private volatile VideoSurfaceView.OnIdleChangedListener mIdleListener;
+    // what the listener was last told, only used on the UI thread
+    private boolean mNotifiedIdle;
+
+    // Runs on the UI thread, the idle timeout after the check was scheduled
+    private final Runnable mIdleCheck = new Runnable() {
+        public void run() {
+            synchronized (VideoRenderer.this) {
+                mIdleCheckPending = false;
+                if (mFrameAvailableCount != mIdleCheckFrameCount) {
+                    // Frames arrived meanwhile, give the last one a whole timeout
+                    scheduleIdleCheck();
+                    return;
+                }
+                mIdle = true;
+                // Under the lock so it can't drop the render of a frame arriving right now
+                mRenderScheduler.cancel();
+            }
+            mNotifyIdleChanged.run();
+        }
+    };
+
+    private final Runnable mNotifyIdleChanged = new Runnable() {
+        public void run() {
+            final boolean idle = isIdle();
+            final VideoSurfaceView.OnIdleChangedListener listener = mIdleListener;
+            if (idle != mNotifiedIdle) {
+                mNotifiedIdle = idle;
+                if (listener != null) {
+                    listener.onIdleChanged(idle);
+                }
+            }
+        }
+    };
+
+    public VideoRenderer(@NonNull GLSurfaceView view) {
+        this(view, GLES20Backend.getInstance(), new GLRoundedGeometry(), new RectF(-1, 1, 1, -1));
+    }
+
+    /**
+     * @param view the view we render into, only used to request renders.
+     * @param gl where all GL calls go through, {@link GLES20Backend} on device. It gets wrapped
+     *           in a {@link GLStateCache} unless it already is one.
+     * @param roundedGeometry generates the geometry the video is mapped on.
+     * @param viewPortGLBounds the bounds of the GL viewport in GL scalar units.
+     */
+    public VideoRenderer(@NonNull GLSurfaceView view,
+                         @NonNull GLBackend gl,
+                         @NonNull GLRoundedGeometry roundedGeometry,
+                         @NonNull RectF viewPortGLBounds) {
+        mGLSurfaceView = view;
+        mRenderScheduler = new RenderScheduler(view);
+        mGL = gl instanceof GLStateCache ? (GLStateCache) gl : new GLStateCache(gl);
+        mRoundedGeometry = roundedGeometry;
+        mViewPortGLBounds = viewPortGLBounds;
+        mViewPortSize.set(1, 1); // init this with a non-zero size
+        mContentSize.set(1, 1);
+
+        Matrix.setIdentityM(mSTMatrix, 0);
+        Matrix.setIdentityM(mMVPMatrix, 0);
+        Matrix.setIdentityM(mCropMatrix, 0);
+    }
+
+    /**
+     * @return the GL state cache of this renderer, which counts the GL calls it dropped.
+     */
+    @NonNull
+    public GLStateCache getGLStateCache() {
+        return mGL;
+    }
+
+    public void setUsesCoverageAa(boolean usesCoverageAa) {
+        mUsesCoverageAa = usesCoverageAa;
+    }
+
+    /**
+     * @param configChooser the chooser of the EGL config we render into. The config it picks
+     *                      tells whether the coverage buffer has to be cleared, see
+     *                      {@link #setUsesCoverageAa(boolean)}.
+     */
+    public void setConfigChooser(@Nullable CachingEGLConfigChooser configChooser) {
+        mConfigChooser = configChooser;
+    }
+
+    /**
+     * Can be called from any thread, the GL thread picks up the new geometry on its next frame.
+     */
+    public void setCornerRadius(float topLeft, float topRight, float bottomRight,
+                                float bottomLeft) {
+        synchronized (mGeometryLock) {
+            mRoundRadius.left = topLeft;
+            mRoundRadius.top = topRight;
+            mRoundRadius.right = bottomRight;
+            mRoundRadius.bottom = bottomLeft;
+            if (mViewPortSize.x > 1) {
+                // Radius changes are usually animated so write straight into our buffers
+                // instead of filling the shared cache with one-off meshes
+                updateVertexData(false);
+            }
+        }
+    }
+
+    /**
+     * Can be called from any thread, the GL thread picks up the new geometry on its next frame.
+     *
+     * @param roundingMode one of {@link VideoSurfaceView#ROUNDING_GEOMETRY},
+     *                     {@link VideoSurfaceView#ROUNDING_SDF} or
+     *                     {@link VideoSurfaceView#ROUNDING_UNIT_MESH}.
+     */
+    public void setRoundingMode(int roundingMode) {
+        synchronized (mGeometryLock) {
+            mRoundingMode = roundingMode;
+            if (mViewPortSize.x > 1) {
+                updateVertexData(true);
+            }
+        }
+    }
+
+    /**
+     * Can be called from any thread, the GL thread picks up the new geometry on its next frame.
+     */
+    public void setGeometryTopology(int topology) {
+        synchronized (mGeometryLock) {
+            mRoundedGeometry.setTopology(topology);
+            if (mViewPortSize.x > 1) {
+                updateVertexData(true);
+            }
+        }
+    }
+
+    /**
+     * Builds the geometry for the current inputs into the back slot of {@link #mGeometry} and
+     * publishes it. Must be called with {@link #mGeometryLock} held, which keeps the producers of
+     * the triple buffer to one at a time.
+     *
+     * @param shared true to go through the shared {@link GLRoundedGeometryCache}, so that views
+     *               with the same size and radii share the same mesh.
+     */
+    private void updateVertexData(boolean shared) {
+        final Geometry geometry = mGeometry.getBack();
+        geometry.roundingMode = mRoundingMode;
+        geometry.topology = mRoundedGeometry.getTopology();
+        geometry.contentWidth = mContentSize.x;
+        geometry.contentHeight = mContentSize.y;
+        updateShaderRadii(geometry.shaderRadii);
+        if (mRoundingMode == VideoSurfaceView.ROUNDING_UNIT_MESH) {
+            updateUnitMeshVertexData(geometry);
+        } else if (mRoundingMode == VideoSurfaceView.ROUNDING_SDF) {
+            updateSdfVertexData(geometry);
+        } else {
+            updateGeometryVertexData(geometry, shared);
+        }
+        mGeometry.publish();
+    }
+
+    private void updateGeometryVertexData(@NonNull Geometry geometry, boolean shared) {
+        final int verticesSize = mRoundedGeometry.getVertexFloatCount(mRoundRadius);
+        final int indicesSize = mRoundedGeometry.getIndexCount(mRoundRadius);
+        ensureBufferCapacity(geometry, verticesSize, indicesSize);
+        geometry.vertices.clear();
+        geometry.indices.clear();
+        if (shared) {
+            final GLRoundedGeometry.GeometryArrays arrays =
+                    GLRoundedGeometryCache.getInstance().get(
+                            mRoundedGeometry,
+                            mRoundRadius,
+                            mViewPortGLBounds,
+                            mContentSize,
+                            0f);
+            geometry.vertices.put(arrays.triangleVertices);
+            geometry.indices.put(arrays.triangleIndices);
+        } else {
+            mRoundedGeometry.generateVertexData(mRoundRadius, mViewPortGLBounds,
+                    mContentSize, 0f, geometry.vertices, geometry.indices);
+        }
+        geometry.vertices.position(0);
+        geometry.indices.position(0);
+        geometry.verticesCount = verticesSize;
+        geometry.indicesCount = indicesSize;
+        geometry.plainIndicesCount = 0;
+        geometry.meshKey = ++mMeshVersion;
+
+        // The indices only depend on the amount of triangles of each corner and the topology,
+        // so radius and size changes usually only need the vertices to be uploaded again
+        final int[] indexLayout = geometry.indexLayout;
+        indexLayout[0] = mRoundedGeometry.getTrianglesPerCorner(mRoundRadius.left);
+        indexLayout[1] = mRoundedGeometry.getTrianglesPerCorner(mRoundRadius.top);
+        indexLayout[2] = mRoundedGeometry.getTrianglesPerCorner(mRoundRadius.right);
+        indexLayout[3] = mRoundedGeometry.getTrianglesPerCorner(mRoundRadius.bottom);
+        indexLayout[4] = mRoundedGeometry.getTopology();
+    }
+
+    /**
+     * Makes the geometry cover the whole view, the SDF program rounds the corners itself. Only
+     * the corner cells need it though: every pixel past the radius of its corner is fully
+     * covered, so the rest of the view goes through the plain program instead of computing the
+     * distance to the outline for nothing, which on a full screen video is almost every pixel.
+     */
+    private void updateSdfVertexData(@NonNull Geometry geometry) {
+        final int verticesSize =
+                SDF_GRID_VERTICES * SDF_GRID_VERTICES * GLRoundedGeometry.FLOATS_PER_VERTEX;
+        final int indicesSize = SDF_GRID_INDICES.length;
+        ensureBufferCapacity(geometry, verticesSize, indicesSize);
+        final float[] radii = geometry.shaderRadii;
+        final float width = geometry.contentWidth;
+        final float height = geometry.contentHeight;
+        // where the corner cells end, as fractions of the content size
+        final float left = Math.max(radii[0], radii[3]) / width;
+        final float right = 1f - Math.max(radii[1], radii[2]) / width;
+        final float top = Math.max(radii[0], radii[1]) / height;
+        final float bottom = 1f - Math.max(radii[3], radii[2]) / height;
+
+        final RectF bounds = mViewPortGLBounds;
+        final FloatBuffer vertices = geometry.vertices;
+        vertices.clear();
+        for (int row = 0; row < SDF_GRID_VERTICES; row++) {
+            final float y = row == 0 ? 0f : row == 1 ? top : row == 2 ? bottom : 1f;
+            for (int column = 0; column < SDF_GRID_VERTICES; column++) {
+                final float x = column == 0 ? 0f : column == 1 ? left : column == 2 ? right : 1f;
+                // x, y, z, u, v with the v of the top row being 1
+                vertices.put(bounds.left + (bounds.right - bounds.left) * x)
+                        .put(bounds.top + (bounds.bottom - bounds.top) * y)
+                        .put(0f).put(x).put(1f - y);
+            }
+        }
+        vertices.position(0);
+        geometry.indices.clear();
+        geometry.indices.put(SDF_GRID_INDICES);
+        geometry.indices.position(0);
+        geometry.verticesCount = verticesSize;
+        geometry.indicesCount = indicesSize;
+        geometry.plainIndicesCount = SDF_PLAIN_INDICES_COUNT;
+        geometry.meshKey = ++mMeshVersion;
+        // no corner has -1 triangles, so this layout never matches the geometry ones
+        Arrays.fill(geometry.indexLayout, -1);
+    }
+
+    @NonNull
+    private static short[] createSdfGridIndices() {
+        // row and column of the top left vertex of each cell, the cross first
+        final int[] cells = {0, 1, 1, 0, 1, 1, 1, 2, 2, 1, 0, 0, 0, 2, 2, 0, 2, 2};
+        final short[] indices = new short[cells.length / 2 * 6];
+        int i = 0;
+        for (int cell = 0; cell < cells.length; cell += 2) {
+            final int topLeft = cells[cell] * SDF_GRID_VERTICES + cells[cell + 1];
+            final int bottomLeft = topLeft + SDF_GRID_VERTICES;
+            indices[i++] = (short) topLeft;
+            indices[i++] = (short) bottomLeft;
+            indices[i++] = (short) (topLeft + 1);
+            indices[i++] = (short) (topLeft + 1);
+            indices[i++] = (short) bottomLeft;
+            indices[i++] = (short) (bottomLeft + 1);
+        }
+        return indices;
+    }
+
+    /**
+     * Makes sure the geometry holds the unit mesh for the current radii, see
+     * {@link GLRoundedGeometry#getUnitMesh(int, int)}. The mesh only changes when the radii need
+     * a different amount of triangles, otherwise size and radius changes only change the
+     * uniforms the program places its vertices with, so nothing is generated nor uploaded.
+     */
+    private void updateUnitMeshVertexData(@NonNull Geometry geometry) {
+        final float[] radii = geometry.shaderRadii;
+        final float maxRadius =
+                Math.max(Math.max(radii[0], radii[1]), Math.max(radii[2], radii[3]));
+        final int triangles = mRoundedGeometry.getUnitMeshTrianglesPerCorner(maxRadius);
+        final int topology = mRoundedGeometry.getTopology();
+        final long meshKey =
+                -2 - (topology * (GLRoundedGeometry.MAX_TRIANGLES_PER_CORNER + 1) + triangles);
+        if (geometry.meshKey == meshKey) {
+            return;
+        }
+        final GLRoundedGeometry.GeometryArrays mesh =
+                GLRoundedGeometry.getUnitMesh(topology, triangles);
+        final int verticesSize = mesh.triangleVertices.length;
+        final int indicesSize = mesh.triangleIndices.length;
+        ensureBufferCapacity(geometry, verticesSize, indicesSize);
+        geometry.vertices.clear();
+        geometry.vertices.put(mesh.triangleVertices);
+        geometry.vertices.position(0);
+        geometry.indices.clear();
+        geometry.indices.put(mesh.triangleIndices);
+        geometry.indices.position(0);
+        geometry.verticesCount = verticesSize;
+        geometry.indicesCount = indicesSize;
+        geometry.plainIndicesCount = 0;
+        geometry.meshKey = meshKey;
+
+        // Same indices as the geometry with as many triangles in every corner
+        Arrays.fill(geometry.indexLayout, 0, 4, triangles);
+        geometry.indexLayout[4] = topology;
+    }
+
+    /**
+     * Sets the given region to the pixels of the view the video fully covers: the cross between
+     * its rounded corners. Everything else is either transparent or only partly covered, which
+     * is all that has to be blended over whatever is behind the view. Can be called from any
+     * thread.
+     *
+     * @return false if the view has no size yet, leaving the region empty.
+     */
+    public boolean getOpaqueRegion(@NonNull Region region) {
+        synchronized (mGeometryLock) {
+            region.setEmpty();
+            if (mViewPortSize.x <= 1) {
+                return false;
+            }
+            final float[] radii = mOpaqueRadii;
+            updateShaderRadii(radii);
+            // the video is centered in the view when fitted
+            final float left = (mViewPortSize.x - mContentSize.x) * 0.5f;
+            final float top = (mViewPortSize.y - mContentSize.y) * 0.5f;
+            final float right = left + mContentSize.x;
+            final float bottom = top + mContentSize.y;
+            // Only whole pixels count, so round inwards
+            final Rect rect = mOpaqueRect;
+            rect.set((int) Math.ceil(left),
+                    (int) Math.ceil(top + Math.max(radii[0], radii[1])),
+                    (int) Math.floor(right),
+                    (int) Math.floor(bottom - Math.max(radii[3], radii[2])));
+            if (!rect.isEmpty()) {
+                region.op(rect, Region.Op.UNION);
+            }
+            rect.set((int) Math.ceil(left + Math.max(radii[0], radii[3])),
+                    (int) Math.ceil(top),
+                    (int) Math.floor(right - Math.max(radii[1], radii[2])),
+                    (int) Math.floor(bottom));
+            if (!rect.isEmpty()) {
+                region.op(rect, Region.Op.UNION);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Clamps the radii to the size the video is drawn at, like the shaders expect them.
+     */
+    private void updateShaderRadii(@NonNull float[] shaderRadii) {
+        final float width = mContentSize.x;
+        final float height = mContentSize.y;
+        shaderRadii[0] = RoundedRectCoverage.clampRadius(mRoundRadius.left, width, height);
+        shaderRadii[1] = RoundedRectCoverage.clampRadius(mRoundRadius.top, width, height);
+        shaderRadii[2] = RoundedRectCoverage.clampRadius(mRoundRadius.right, width, height);
+        shaderRadii[3] = RoundedRectCoverage.clampRadius(mRoundRadius.bottom, width, height);
+    }
+
+    private static void ensureBufferCapacity(@NonNull Geometry geometry, int verticesSize,
+                                             int indicesSize) {
+        final DirectBufferPool pool = DirectBufferPool.getInstance();
+        if (geometry.vertices == null || geometry.vertices.capacity() < verticesSize) {
+            if (geometry.vertexBytes != null) {
+                pool.release(geometry.vertexBytes);
+            }
+            geometry.vertexBytes = pool.acquire(verticesSize * FLOAT_SIZE_BYTES);
+            geometry.vertices = geometry.vertexBytes.asFloatBuffer();
+        }
+        if (geometry.indices == null || geometry.indices.capacity() < indicesSize) {
+            if (geometry.indexBytes != null) {
+                pool.release(geometry.indexBytes);
+            }
+            geometry.indexBytes = pool.acquire(indicesSize * SHORT_SIZE_BYTES);
+            geometry.indices = geometry.indexBytes.asShortBuffer();
+        }
+    }
+
+    /**
+     * Gives the buffers of every geometry back to the {@link DirectBufferPool}, for views whose
+     * surface is gone not to hold on to native memory. The geometry is built again on the next
+     * {@link #onSurfaceChanged(GL10, int, int)}. Must run on the GL thread.
+     */
+    void releaseGeometryBuffers() {
+        synchronized (mGeometryLock) {
+            final DirectBufferPool pool = DirectBufferPool.getInstance();
+            for (final Geometry geometry : mGeometrySlots) {
+                if (geometry.vertexBytes != null) {
+                    pool.release(geometry.vertexBytes);
+                }
+                if (geometry.indexBytes != null) {
+                    pool.release(geometry.indexBytes);
+                }
+                geometry.vertexBytes = null;
+                geometry.indexBytes = null;
+                geometry.vertices = null;
+                geometry.indices = null;
+                geometry.verticesCount = 0;
+                geometry.indicesCount = 0;
+                geometry.plainIndicesCount = 0;
+                geometry.meshKey = 0;
+            }
+            // Nothing to build the geometry for until the next surface
+            mViewPortSize.set(0, 0);
+        }
+    }
+
+    /**
+     * When true the geometry is uploaded once to GL buffer objects and drawn from there,
+     * instead of handing GL our client side buffers on every frame.
+     */
+    public void setUseBufferObjects(boolean useBufferObjects) {
+        mUseBufferObjects = useBufferObjects;
+    }
+
+    /**
+     * Makes sure our buffer objects exist and hold the given geometry. Must run on the GL
+     * thread.
+     */
+    private void uploadBufferObjects(@NonNull Geometry geometry) {
+        if (mVertexBufferId == 0) {
+            mGL.glGenBuffers(2, mBufferIds, 0);
+            checkGlError("glGenBuffers");
+            mVertexBufferId = mBufferIds[0];
+            mIndexBufferId = mBufferIds[1];
+            mVertexBufferCapacity = 0;
+            mIndexBufferCapacity = 0;
+            mUploadedMeshKey = 0;
+            Arrays.fill(mUploadedIndexLayout, Integer.MIN_VALUE);
+        }
+
+        mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertexBufferId);
+        mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndexBufferId);
+        if (geometry.meshKey != mUploadedMeshKey) {
+            final int size = geometry.verticesCount * FLOAT_SIZE_BYTES;
+            geometry.vertices.position(0);
+            if (size > mVertexBufferCapacity) {
+                mGL.glBufferData(GLES20.GL_ARRAY_BUFFER, size, geometry.vertices,
+                        GLES20.GL_STATIC_DRAW);
+                mVertexBufferCapacity = size;
+            } else {
+                mGL.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, size, geometry.vertices);
+            }
+            checkGlError("upload vertices");
+            mUploadedMeshKey = geometry.meshKey;
+        }
+        if (!Arrays.equals(geometry.indexLayout, mUploadedIndexLayout)) {
+            final int size = geometry.indicesCount * SHORT_SIZE_BYTES;
+            geometry.indices.position(0);
+            if (size > mIndexBufferCapacity) {
+                mGL.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, size, geometry.indices,
+                        GLES20.GL_STATIC_DRAW);
+                mIndexBufferCapacity = size;
+            } else {
+                mGL.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, size,
+                        geometry.indices);
+            }
+            checkGlError("upload indices");
+            System.arraycopy(geometry.indexLayout, 0, mUploadedIndexLayout, 0,
+                    mUploadedIndexLayout.length);
+        }
+        mBufferObjectsBound = true;
+    }
+
+    /**
+     * Deletes our buffer objects, if any. Must run on the GL thread.
+     */
+    private void deleteBufferObjects() {
+        if (mVertexBufferId != 0) {
+            mGL.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            mGL.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            mBufferIds[0] = mVertexBufferId;
+            mBufferIds[1] = mIndexBufferId;
+            mGL.glDeleteBuffers(2, mBufferIds, 0);
+            mVertexBufferId = 0;
+            mIndexBufferId = 0;
+        }
+        mBufferObjectsBound = false;
+    }
+
+    /**
+     * Must run on the GL thread.
+     */
+    public void setMediaPlayer(@Nullable MediaPlayer player) {
+        mMediaPlayer = player;
+        mMediaPlayerSurfaceTexture = null;
+        attachMediaPlayer();
+    }
+
+    /**
+     * Gives the player a Surface of our SurfaceTexture, unless it already has one, and prepares
+     * it unless it already was. Must run on the GL thread.
+     */
+    private void attachMediaPlayer() {
+        if (mMediaPlayer == null || mSurfaceTexture == null) {
+            return;
+        }
+        if (mMediaPlayerSurfaceTexture != mSurfaceTexture) {
+            Surface surface = new Surface(mSurfaceTexture);
+            mMediaPlayer.setSurface(surface);
+            surface.release();
+            mMediaPlayerSurfaceTexture = mSurfaceTexture;
+        }
+        // A player only needs preparing once, not on every new texture. Preparing it again
+        // would re-buffer the video, or fail if it's already playing.
+        if (mMediaPlayer != mPreparedMediaPlayer) {
+            mPreparedMediaPlayer = mMediaPlayer;
+            try {
+                mMediaPlayer.prepare();
+            } catch (IOException t) {
+                Log.e(TAG, "media player prepare failed");
+            }
+        }
+    }
+
+    /**
+     * @param listener called on the GL thread after every frame with its timings, or null to stop
+     *                 measuring them.
+     */
+    public void setOnFrameMetricsListener(
+            @Nullable VideoSurfaceView.OnFrameMetricsListener listener) {
+        mFrameMetricsListener = listener;
+    }
+
+    /**
+     * @param scheduling either {@link VideoSurfaceView#SCHEDULING_ON_FRAME_AVAILABLE} or
+     *                   {@link VideoSurfaceView#SCHEDULING_VSYNC}. Must be called on the UI
+     *                   thread.
+     */
+    public void setRenderScheduling(int scheduling) {
+        mRenderScheduler.cancel();
+        mRenderScheduler = RenderScheduler.create(mGLSurfaceView, scheduling);
+        mFinishFrames = scheduling == VideoSurfaceView.SCHEDULING_ON_FRAME_AVAILABLE;
+    }
+
+    /**
+     * Drops a render the scheduler is holding back, e.g. because the view is paused, along with
+     * the pending idle check, see {@link #startIdleCheck()}.
+     */
+    public void cancelScheduledRender() {
+        mRenderScheduler.cancel();
+        synchronized (this) {
+            cancelIdleCheck();
+        }
+    }
+
+    public void onDrawFrame(GL10 glUnused) {
+        // Read once so the listener can't go away halfway through the frame
+        final VideoSurfaceView.OnFrameMetricsListener metricsListener = mFrameMetricsListener;
+        final FrameMetrics metrics = metricsListener != null ? getFrameMetrics() : null;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        final boolean idle;
+
+        synchronized(this) {
+            if (mUpdateSurface) {
+                // Each latch only takes the oldest queued frame, so latch until the newest one
+                // instead of showing frames late and letting them pile up in the queue
+                for (int i = 0; i < mPendingFrameCount; i++) {
+                    mSurfaceTexture.updateTexImage();
+                }
+                mSurfaceTexture.getTransformMatrix(mSTMatrix);
+                if (mCropping) {
+                    Matrix.multiplyMM(mCroppedSTMatrix, 0, mSTMatrix, 0, mCropMatrix, 0);
+                }
+                mUpdateSurface = false;
+                if (metrics != null) {
+                    metrics.frameAvailableToDrawNanos = startNanos - mFrameAvailableNanos;
+                    metrics.frameTimestampNanos = mSurfaceTexture.getTimestamp();
+                    metrics.coalescedFrames = Math.max(0, mPendingFrameCount - 1);
+                    final long latchedNanos = System.nanoTime();
+                    metrics.latchNanos = latchedNanos - startNanos;
+                    startNanos = latchedNanos;
+                }
+            }
+            mPendingFrameCount = 0;
+            idle = mIdle;
+        }
+
+        mGL.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        int clearMask = GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT;
+        if (mUsesCoverageAa) { // Tegra weirdness
+            final int GL_COVERAGE_BUFFER_BIT_NV = 0x8000;
+            clearMask |= GL_COVERAGE_BUFFER_BIT_NV;
+        }
+        mGL.glClear(clearMask);
+
+        // Never blocks, a geometry being built meanwhile shows up on the next frame
+        mGeometry.swap();
+        final Geometry geometry = mGeometry.getFront();
+        if (geometry.vertices == null) {
+            return;
+        }
+        final VideoProgram program = getProgram(geometry.roundingMode);
+        final VideoProgram plainProgram = geometry.plainIndicesCount > 0 ?
+                getProgram(VideoSurfaceView.ROUNDING_GEOMETRY) : null;
+        if (program == null || (geometry.plainIndicesCount > 0 && plainProgram == null)) {
+            return;
+        }
+
+        mGL.glActiveTexture(GLES20.GL_TEXTURE0);
+        mGL.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureID);
+
+        if (mUseBufferObjects) {
+            uploadBufferObjects(geometry);
+        } else if (mBufferObjectsBound) {
+            deleteBufferObjects();
+        }
+
+        final int mode;
+        if (geometry.roundingMode == VideoSurfaceView.ROUNDING_SDF) {
+            // The cells don't overlap and the shader writes premultiplied colors, so the faded
+            // edges need no blending
+            mode = GLES20.GL_TRIANGLES;
+        } else {
+            mode = getGeometryDrawMode(geometry.topology);
+        }
+        final int plainCount = geometry.plainIndicesCount;
+        if (plainCount > 0) {
+            drawIndices(plainProgram, geometry, mode, 0, plainCount);
+        }
+        if (plainCount == 0 || hasCorners(geometry.shaderRadii)) {
+            drawIndices(program, geometry, mode, plainCount, geometry.indicesCount - plainCount);
+        }
+
+        // GL errors stick until read so a single check per frame catches them all, without
+        // stalling on glGetError after every call
+        checkGlError("onDrawFrame");
+        // Without waiting, eglSwapBuffers paces us against the display instead. While idle
+        // there are no video frames to keep pace with, only redraws of the last one.
+        final boolean finish = mFinishFrames && !idle;
+        if (metrics == null) {
+            if (finish) {
+                mGL.glFinish();
+            }
+            return;
+        }
+
+        final long drawnNanos = System.nanoTime();
+        metrics.drawNanos = drawnNanos - startNanos;
+        if (finish) {
+            mGL.glFinish();
+            metrics.finishNanos = System.nanoTime() - drawnNanos;
+        }
+        mFrameStatistics.record(metrics);
+        metricsListener.onFrameMetrics(metrics, mFrameStatistics);
+    }
+
+    /**
+     * @return the metrics of the frame about to be drawn, created the first time they're needed
+     * so views nobody measures don't pay for them. Must run on the GL thread.
+     */
+    @NonNull
+    private FrameMetrics getFrameMetrics() {
+        if (mFrameMetrics == null) {
+            mFrameMetrics = new FrameMetrics();
+            mFrameStatistics = new FrameStatistics();
+        }
+        mFrameMetrics.reset();
+        mFrameMetrics.frameNumber = mFrameNumber++;
+        mFrameMetrics.scheduleDelayNanos = mScheduleDelayNanos;
+        mFrameMetrics.renderThreadViewCount = mRenderThreadViewCount;
+        return mFrameMetrics;
+    }
+
+    /**
+     * Tells the renderer how its next frame was scheduled by a {@link SharedRenderThread}, for
+     * its {@link FrameMetrics}. Must run on the GL thread.
+     *
+     * @param scheduleDelayNanos time from the render being requested to it starting.
+     * @param renderThreadViewCount the amount of views the render thread draws.
+     */
+    void setScheduleDelay(long scheduleDelayNanos, int renderThreadViewCount) {
+        mScheduleDelayNanos = scheduleDelayNanos;
+        mRenderThreadViewCount = renderThreadViewCount;
+    }
+
+    /**
+     * Draws a range of the indices of the geometry with the given program. Must run on the GL
+     * thread, with the texture bound and the buffer objects, if used, up to date.
+     */
+    private void drawIndices(@NonNull VideoProgram program, @NonNull Geometry geometry,
+                             int mode, int first, int count) {
+        // Redundant state changes below are dropped by mGL, which is a GLStateCache, so in a
+        // steady state only the texture update and the draws reach the driver
+        mGL.glUseProgram(program.program);
+
+        if (mUseBufferObjects) {
+            mGL.glVertexAttribPointer(program.aPosition, 3, GLES20.GL_FLOAT, false,
+                    TRIANGLE_VERTICES_DATA_STRIDE_BYTES,
+                    TRIANGLE_VERTICES_DATA_POS_OFFSET * FLOAT_SIZE_BYTES);
+        } else {
+            geometry.vertices.position(TRIANGLE_VERTICES_DATA_POS_OFFSET);
+            mGL.glVertexAttribPointer(program.aPosition, 3, GLES20.GL_FLOAT, false,
+                    TRIANGLE_VERTICES_DATA_STRIDE_BYTES, geometry.vertices);
+        }
+        mGL.glEnableVertexAttribArray(program.aPosition);
+
+        // Only read the 2 uv floats, reading 3 would run past the end of the last vertex
+        if (mUseBufferObjects) {
+            mGL.glVertexAttribPointer(program.aTextureCoord, 2, GLES20.GL_FLOAT, false,
+                    TRIANGLE_VERTICES_DATA_STRIDE_BYTES,
+                    TRIANGLE_VERTICES_DATA_UV_OFFSET * FLOAT_SIZE_BYTES);
+        } else {
+            geometry.vertices.position(TRIANGLE_VERTICES_DATA_UV_OFFSET);
+            mGL.glVertexAttribPointer(program.aTextureCoord, 2, GLES20.GL_FLOAT, false,
+                    TRIANGLE_VERTICES_DATA_STRIDE_BYTES, geometry.vertices);
+        }
+        mGL.glEnableVertexAttribArray(program.aTextureCoord);
+
+        mGL.glUniformMatrix4fv(program.uMVPMatrix, 1, false, mMVPMatrix, 0);
+        mGL.glUniformMatrix4fv(program.uSTMatrix, 1, false,
+                mCropping ? mCroppedSTMatrix : mSTMatrix, 0);
+
+        if (program.uSize >= 0) {
+            final float[] radii = geometry.shaderRadii;
+            mGL.glUniform2f(program.uSize, geometry.contentWidth, geometry.contentHeight);
+            mGL.glUniform4f(program.uRadii, radii[0], radii[1], radii[2], radii[3]);
+        }
+        if (mUseBufferObjects) {
+            mGL.glDrawElements(mode, count, GL10.GL_UNSIGNED_SHORT, first * SHORT_SIZE_BYTES);
+        } else {
+            geometry.indices.position(first);
+            mGL.glDrawElements(mode, count, GL10.GL_UNSIGNED_SHORT, geometry.indices);
+            geometry.indices.position(0);
+        }
+    }
+
+    private static boolean hasCorners(@NonNull float[] radii) {
+        return radii[0] > 0f || radii[1] > 0f || radii[2] > 0f || radii[3] > 0f;
+    }
+
+    private static int getGeometryDrawMode(int topology) {
+        // Alternatively we can use a GL_TRIANGLE_STRIP but with the current geometry setup
+        // it ends up drawing a lot of 'degenerate' triangles which represents more work for
+        // our shaders, especially the fragment one. A single fan avoids those since the
+        // geometry is convex.
+        return topology == GLRoundedGeometry.TOPOLOGY_TRIANGLE_FAN ?
+                GLES20.GL_TRIANGLE_FAN : GLES20.GL_TRIANGLES;
+    }
+
+    /**
+     * @return the program of the given rounding mode, building it if needed, or null if it
+     * failed to build. Must run on the GL thread.
+     */
+    private VideoProgram getProgram(int roundingMode) {
+        if (roundingMode == VideoSurfaceView.ROUNDING_SDF) {
+            if (mSdfProgram == null) {
+                mSdfProgram = mProgramCache.get(mGL, VideoProgram.DEFINE_SDF);
+            }
+            return mSdfProgram;
+        }
+        if (roundingMode == VideoSurfaceView.ROUNDING_UNIT_MESH) {
+            if (mUnitMeshProgram == null) {
+                mUnitMeshProgram = mProgramCache.get(mGL, VideoProgram.DEFINE_UNIT_MESH);
+            }
+            return mUnitMeshProgram;
+        }
+        if (mGeometryProgram == null) {
+            mGeometryProgram = mProgramCache.get(mGL, "");
+        }
+        return mGeometryProgram;
+    }
+
+    /**
+     * Makes the renderer take its programs from a cache shared with other renderers, whose
+     * contexts must be in the same share group as ours. The owner of the cache takes care of
+     * invalidating it when the group is lost. Must be called before the surface is created.
+     *
+     * Uniform values belong to the program, so renderers sharing programs must also share the
+     * {@link GLStateCache} they were created with, or they'd skip uploads the others undid.
+     */
+    public void setProgramCache(@NonNull ProgramCache programCache) {
+        mProgramCache = programCache;
+        mOwnsProgramCache = false;
+    }
+
+    @NonNull
+    public ProgramCache getProgramCache() {
+        return mProgramCache;
+    }
+
+    public void onSurfaceChanged(GL10 glUnused, int width, int height) {
+        mGL.glViewport(0, 0, width, height);
+        synchronized (mGeometryLock) {
+            if (mViewPortSize.x == width && mViewPortSize.y == height && width > 1) {
+                // Resuming with the context kept gets here with the size we built for
+                return;
+            }
+            mViewPortSize.set(width, height);
+            updateScaleTransform();
+            updateVertexData(true);
+        }
+    }
+
+    public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
+        // A new context means our buffer objects, if any, are gone. They'll be created and
+        // uploaded again on the next frame.
+        mVertexBufferId = 0;
+        mIndexBufferId = 0;
+        mBufferObjectsBound = false;
+        mGL.invalidate();
+
+        // The config is picked right before the context is created
+        if (mConfigChooser != null && mConfigChooser.getChoice() != null) {
+            mUsesCoverageAa = mConfigChooser.getChoice().usesCoverageAa();
+        }
+
+        // The programs of the old context are gone too
+        mGeometryProgram = null;
+        mSdfProgram = null;
+        mUnitMeshProgram = null;
+        if (mOwnsProgramCache) {
+            mProgramCache.invalidate();
+        }
+        final int roundingMode;
+        synchronized (mGeometryLock) {
+            roundingMode = mRoundingMode;
+        }
+        if (getProgram(roundingMode) == null) {
+            return;
+        }
+
+        int[] textures = new int[1];
+        mGL.glGenTextures(1, textures, 0);
+
+        mTextureID = textures[0];
+        mGL.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureID);
+        checkGlError("glBindTexture mTextureID");
+
+        mGL.glTexParameterf(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER,
+                GLES20.GL_LINEAR);
+        mGL.glTexParameterf(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER,
+                GLES20.GL_LINEAR);
+        // Texture parameters belong to the texture so they only need to be set once
+        mGL.glTexParameterf(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S,
+                GLES20.GL_CLAMP_TO_EDGE);
+        mGL.glTexParameterf(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T,
+                GLES20.GL_CLAMP_TO_EDGE);
+
+        // The texture of the old SurfaceTexture, if any, died with its context
+        if (mSurfaceTexture != null) {
+            mSurfaceTexture.setOnFrameAvailableListener(null);
+            mSurfaceTexture.release();
+        }
+        /*
+         * Create the SurfaceTexture that will feed this textureID,
+         * and pass it to the MediaPlayer
+         */
+        mSurfaceTexture = new SurfaceTexture(mTextureID);
+        mSurfaceTexture.setOnFrameAvailableListener(this);
+        attachMediaPlayer();
+
+        synchronized(this) {
+            mUpdateSurface = false;
+            mPendingFrameCount = 0;
+        }
+    }
+
+    /**
+     * Deletes the GL objects of this renderer and releases its {@link SurfaceTexture}, for
+     * renderers whose context outlives them. Must run on the GL thread with the context current.
+     */
+    void release() {
+        deleteBufferObjects();
+        if (mTextureID != 0) {
+            mGL.glDeleteTextures(1, new int[] {mTextureID}, 0);
+        }
+        releaseWithoutContext();
+    }
+
+    /**
+     * Like {@link #release()} for renderers whose GL objects already died with their context.
+     * Nothing is deleted, but the {@link SurfaceTexture}, which would keep the renderer as its
+     * listener, and the geometry buffers are still let go. Must run on the GL thread.
+     */
+    void releaseWithoutContext() {
+        mVertexBufferId = 0;
+        mIndexBufferId = 0;
+        mBufferObjectsBound = false;
+        mTextureID = 0;
+        releaseGeometryBuffers();
+        if (mSurfaceTexture != null) {
+            mSurfaceTexture.setOnFrameAvailableListener(null);
+            mSurfaceTexture.release();
+            mSurfaceTexture = null;
+        }
+        mGeometryProgram = null;
+        mSdfProgram = null;
+        mUnitMeshProgram = null;
+    }
+
+    synchronized public void onFrameAvailable(SurfaceTexture surface) {
+        mUpdateSurface = true;
+        mFrameAvailableNanos = System.nanoTime();
+        mPendingFrameCount++;
+        mFrameAvailableCount++;
+        if (mIdle) {
+            mIdle = false;
+            mGLSurfaceView.post(mNotifyIdleChanged);
+        }
+        scheduleIdleCheck();
+        mRenderScheduler.requestRender();
+    }
+
+    /**
+     * @param idleTimeoutMillis how long without video frames before the renderer goes idle, or 0
+     *                          to never go idle. See
+     *                          {@link VideoSurfaceView#setIdleTimeout(long)}.
+     */
+    public synchronized void setIdleTimeout(long idleTimeoutMillis) {
+        mIdleTimeoutMillis = idleTimeoutMillis;
+        cancelIdleCheck();
+        scheduleIdleCheck();
+    }
+
+    /**
+     * @return true if no video frame arrived for the idle timeout. Can be called from any
+     * thread.
+     */
+    public synchronized boolean isIdle() {
+        return mIdle;
+    }
+
+    /**
+     * @param listener called on the UI thread when the renderer goes idle or wakes up, or null.
+     */
+    public void setOnIdleChangedListener(
+            @Nullable VideoSurfaceView.OnIdleChangedListener listener) {
+        mIdleListener = listener;
+    }
+
+    /**
+     * Starts waiting for the renderer to go idle, e.g. when resumed with the video paused, in
+     * which case no frame would arrive to start it.
+     */
+    public synchronized void startIdleCheck() {
+        scheduleIdleCheck();
+    }
+
+    // must be called with the lock of this held
+    private void scheduleIdleCheck() {
+        if (!mIdleCheckPending && !mIdle && mIdleTimeoutMillis > 0) {
+            mIdleCheckPending = true;
+            mIdleCheckFrameCount = mFrameAvailableCount;
+            mGLSurfaceView.postDelayed(mIdleCheck, mIdleTimeoutMillis);
+        }
+    }
+
+    // must be called with the lock of this held
+    private void cancelIdleCheck() {
+        if (mIdleCheckPending) {
+            mIdleCheckPending = false;
+            mGLSurfaceView.removeCallbacks(mIdleCheck);
+        }
+    }
+
+    private void checkGlError(String op) {
+        VideoProgram.checkGlError(mGL, op);
+    }
+
+    /**
+     * @param aspectRatio width over height of the video frames, or 0 if unknown, in which case
+     *                    it's stretched over the view whatever the scale mode.
+     */
+    public void setVideoAspectRatio(float aspectRatio) {
+        mVideoAspectRatio = aspectRatio;
+        onScaleChanged();
+    }
+
+    /**
+     * @param scaleMode one of {@link VideoSurfaceView#SCALE_FILL},
+     *                  {@link VideoSurfaceView#SCALE_CENTER_CROP} or
+     *                  {@link VideoSurfaceView#SCALE_FIT_CENTER}.
+     */
+    public void setScaleMode(int scaleMode) {
+        mScaleMode = scaleMode;
+        onScaleChanged();
+    }
+
+    private void onScaleChanged() {
+        synchronized (mGeometryLock) {
+            if (mViewPortSize.x > 1 && updateScaleTransform()) {
+                // Only fitting changes the size the geometry is made for
+                updateVertexData(true);
+            }
+        }
+    }
+
+    /**
+     * Sets up the transforms that apply the scale mode, which only depend on the aspect ratios
+     * of the view and the video: the video is cropped by scaling its texture coordinates around
+     * the center and fitted by scaling the geometry around the center of the view.
+     *
+     * @return whether the size the video is drawn at changed.
+     */
+    private boolean updateScaleTransform() {
+        float cropX = 1f;
+        float cropY = 1f;
+        float fitX = 1f;
+        float fitY = 1f;
+        if (mVideoAspectRatio > 0f && mScaleMode != VideoSurfaceView.SCALE_FILL) {
+            final float viewAspectRatio = mViewPortSize.x / (float) mViewPortSize.y;
+            // below 1 when the video is wider than the view
+            final float ratio = viewAspectRatio / mVideoAspectRatio;
+            if (mScaleMode == VideoSurfaceView.SCALE_CENTER_CROP) {
+                cropX = Math.min(ratio, 1f);
+                cropY = Math.min(1f / ratio, 1f);
+            } else {
+                fitX = Math.min(1f / ratio, 1f);
+                fitY = Math.min(ratio, 1f);
+            }
+        }
+
+        Matrix.setIdentityM(mCropMatrix, 0);
+        mCropping = cropX != 1f || cropY != 1f;
+        if (mCropping) {
+            Matrix.translateM(mCropMatrix, 0, 0.5f, 0.5f, 0f);
+            Matrix.scaleM(mCropMatrix, 0, cropX, cropY, 1f);
+            Matrix.translateM(mCropMatrix, 0, -0.5f, -0.5f, 0f);
+            Matrix.multiplyMM(mCroppedSTMatrix, 0, mSTMatrix, 0, mCropMatrix, 0);
+        }
+        Matrix.setIdentityM(mMVPMatrix, 0);
+        Matrix.scaleM(mMVPMatrix, 0, fitX, fitY, 1f);
+
+        // The geometry is made for the fitted size and then scaled down to it, so its corners
+        // stay round
+        final int contentWidth = Math.max(1, Math.round(mViewPortSize.x * fitX));
+        final int contentHeight = Math.max(1, Math.round(mViewPortSize.y * fitY));
+        final boolean changed = mContentSize.x != contentWidth || mContentSize.y != contentHeight;
+        mContentSize.set(contentWidth, contentHeight);
+        return changed;
+    }
+}
@@ -17,28 +17,14 @@
 package com.abrantix.roundedvideo;
 
 import android.content.Context;
-import android.graphics.PixelFormat;
-import android.graphics.Point;
 import android.graphics.RectF;
-import android.graphics.SurfaceTexture;
+import android.graphics.Region;
 import android.media.MediaPlayer;
-import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
-import android.util.Log;
-import android.view.Surface;
-
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
-
-import javax.microedition.khronos.egl.EGLConfig;
-import javax.microedition.khronos.opengles.GL10;
+import android.view.SurfaceHolder;
 
 /**
  * This class has been adapted from
@@ -60,35 +46,160 @@ import javax.microedition.khronos.opengles.GL10;
  */
 public class VideoSurfaceView extends GLSurfaceView {
     private static final String TAG = "VideoSurfaceView";
-    private static final boolean USE_MULTI_SAMPLING = true;
+
+    /**
+     * Rounds the corners by mapping the video on to a rounded corner geometry, whose edges are
+     * only smooth with a multisampled EGL config.
+     */
+    public static final int ROUNDING_GEOMETRY = 0;
+    /**
+     * Covers the whole view and rounds the corners in the fragment shader, from the signed
+     * distance of each pixel to the outline, which only runs on the corners. The edges are
+     * antialiased by the shader, so they don't depend on multisampling, see
+     * {@link EGLConfigPolicy#TRANSLUCENT}.
+     */
+    public static final int ROUNDING_SDF = 1;
+    /**
+     * Like {@link #ROUNDING_GEOMETRY}, but the geometry is a mesh shared by any size and radii
+     * that the vertex shader stretches to the view, so resizing the view or animating the corner
+     * radii costs no geometry generation nor uploads, only a couple of uniforms. The mesh is only
+     * switched when the radii grow or shrink past what its amount of triangles draws smoothly.
+     */
+    public static final int ROUNDING_UNIT_MESH = 2;
+
+    /**
+     * Renders as soon as the decoder makes a video frame available and waits for the GPU to
+     * finish every frame before swapping.
+     */
+    public static final int SCHEDULING_ON_FRAME_AVAILABLE = 0;
+    /**
+     * Renders on the display vsync after a video frame becomes available, showing only the
+     * newest of the frames that arrived in between, and lets the buffer swap pace the render
+     * thread instead of waiting for the GPU. Needs Jelly Bean, on older versions frames are
+     * still rendered right away but without waiting for the GPU.
+     */
+    public static final int SCHEDULING_VSYNC = 1;
+
+    /**
+     * Stretches the video over the whole view.
+     */
+    public static final int SCALE_FILL = 0;
+    /**
+     * Scales the video to cover the whole view keeping its aspect ratio, cropping the sides that
+     * don't fit.
+     */
+    public static final int SCALE_CENTER_CROP = 1;
+    /**
+     * Scales the video to fit inside the view keeping its aspect ratio, centered, with the
+     * corners rounded on the video itself.
+     */
+    public static final int SCALE_FIT_CENTER = 2;
+
+    /**
+     * How long without video frames before the view goes idle, by default, see
+     * {@link #setIdleTimeout(long)}.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Receives the timings of every frame the view draws, see
+     * {@link #setOnFrameMetricsListener(OnFrameMetricsListener)}.
+     */
+    public interface OnFrameMetricsListener {
+        /**
+         * Called on the GL thread right after a frame is drawn, so keep it short. Both arguments
+         * are reused for the next frames.
+         *
+         * @param metrics the timings of the frame just drawn.
+         * @param statistics the timings of the last frames, already including this one.
+         */
+        void onFrameMetrics(@NonNull FrameMetrics metrics, @NonNull FrameStatistics statistics);
+    }
+
+    /**
+     * Told when the view goes idle and wakes up, see {@link #setIdleTimeout(long)}.
+     */
+    public interface OnIdleChangedListener {
+        /**
+         * Called on the UI thread.
+         *
+         * @param idle true when no video frame arrived for the idle timeout, false when the
+         *             next one does.
+         */
+        void onIdleChanged(boolean idle);
+    }
 
     VideoRenderer mRenderer;
-    MediaPlayer mMediaPlayer = null;
-    MultiSampleEGLConfigChooser mMultiSamplingConfigChooser;
+    CachingEGLConfigChooser mConfigChooser;
+    // only set when drawn by a render thread shared with other views
+    SharedRenderThread mSharedRenderThread;
+    SharedRenderThread.Target mSharedRenderTarget;
 
     public VideoSurfaceView(Context context) {
         super(context);
-        init(new VideoRenderer(this));
+        init(new VideoRenderer(this), EGLConfigPolicy.TRANSLUCENT_MSAA_4X);
     }
 
     public VideoSurfaceView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        init(new VideoRenderer(this));
+        init(new VideoRenderer(this), EGLConfigPolicy.TRANSLUCENT_MSAA_4X);
+    }
+
+    /**
+     * @param configPolicy the kind of EGL config to render into. It can't be changed later since
+     *                     the config is picked along with the surface. E.g. use
+     *                     {@link EGLConfigPolicy#TRANSLUCENT} with {@link #ROUNDING_SDF}, which
+     *                     doesn't need multisampling.
+     */
+    public VideoSurfaceView(Context context, @NonNull EGLConfigPolicy configPolicy) {
+        super(context);
+        init(new VideoRenderer(this), configPolicy);
+    }
+
+    /**
+     * @param configPolicy the kind of EGL config to render into, see
+     *                     {@link #VideoSurfaceView(Context, EGLConfigPolicy)}.
+     * @param shareRenderThread true to be drawn by a render thread shared with every other view
+     *                          that asks for it with the same config policy, instead of a render
+     *                          thread of its own. Keeps the amount of threads constant no matter
+     *                          how many videos are on screen. Those views also share one EGL
+     *                          context and so their GL programs, and only render when dirty.
+     */
+    public VideoSurfaceView(Context context, @NonNull EGLConfigPolicy configPolicy,
+                            boolean shareRenderThread) {
+        super(context);
+        if (!shareRenderThread) {
+            init(new VideoRenderer(this), configPolicy);
+            return;
+        }
+        mSharedRenderThread = SharedRenderThread.getInstance(configPolicy);
+        mConfigChooser = mSharedRenderThread.getConfigChooser();
+        mRenderer = new VideoRenderer(this, mSharedRenderThread.getGLStateCache(),
+                new GLRoundedGeometry(), new RectF(-1, 1, 1, -1));
+        mRenderer.setProgramCache(mSharedRenderThread.getProgramCache());
+        mRenderer.setConfigChooser(mConfigChooser);
+        mSharedRenderTarget = mSharedRenderThread.createTarget(mRenderer);
+        // No setRenderer() since that starts a render thread of our own
+        if (configPolicy.isTranslucent()) {
+            setZOrderOnTop(true);
+        }
+        getHolder().setFormat(configPolicy.getPixelFormat());
     }
 
     VideoSurfaceView(Context context, @NonNull VideoRenderer videoRender) {
         super(context);
-        init(videoRender);
+        init(videoRender, EGLConfigPolicy.TRANSLUCENT_MSAA_4X);
     }
 
-    private void init(@NonNull VideoRenderer videoRender) {
+    private void init(@NonNull VideoRenderer videoRender, @NonNull EGLConfigPolicy configPolicy) {
         setEGLContextClientVersion(2);
 
-        setupEGLConfig(true, USE_MULTI_SAMPLING);
-        if (USE_MULTI_SAMPLING && mMultiSamplingConfigChooser != null) {
-            videoRender.setUsesCoverageAa(mMultiSamplingConfigChooser.usesCoverageAa());
-        }
+        setupEGLConfig(configPolicy);
+        videoRender.setConfigChooser(mConfigChooser);
         mRenderer = videoRender;
+        // Keeps the programs, texture and SurfaceTexture across onPause/onResume where the
+        // device allows, so resuming is a single draw of the frame we already have
+        setPreserveEGLContextOnPause(true);
         setRenderer(mRenderer);
         setRenderMode(RENDERMODE_WHEN_DIRTY);
     }
@@ -96,30 +207,26 @@ public class VideoSurfaceView extends GLSurfaceView {
     /**
      * Make sure the {@link android.view.SurfaceHolder} pixel format matches your EGL configuration.
      *
-     * @param translucent true if the view should show views below if parts of the view area are
-     *                    transparent. Has performance implications.
-     * @param multisampling true if the GL Surface should perform multi-sampling. This avoids hard
-     *                      edges on the geometry. Has performance implications.
+     * @param configPolicy the EGL config to look for. Translucent ones show the views below if
+     *                     parts of the view area are transparent, multisampled ones avoid hard
+     *                     edges on the geometry. Both have performance implications.
      */
-    private void setupEGLConfig(boolean translucent, boolean multisampling) {
-        if (translucent) {
+    private void setupEGLConfig(@NonNull EGLConfigPolicy configPolicy) {
+        if (configPolicy.isTranslucent()) {
             setZOrderOnTop(true);
-            if (multisampling) {
-                mMultiSamplingConfigChooser = new MultiSampleEGLConfigChooser();
-                setEGLConfigChooser(mMultiSamplingConfigChooser);
-            } else {
-                setEGLConfigChooser(8, 8, 8, 8, 16, 0);
-            }
-            this.getHolder().setFormat(PixelFormat.RGBA_8888);
-        } else {
-            if (multisampling) {
-                mMultiSamplingConfigChooser = new MultiSampleEGLConfigChooser();
-                setEGLConfigChooser(mMultiSamplingConfigChooser);
-            } else {
-                setEGLConfigChooser(5, 6, 5, 0, 16, 0);
-            }
-            this.getHolder().setFormat(PixelFormat.RGB_565);
         }
+        mConfigChooser = new CachingEGLConfigChooser(configPolicy);
+        setEGLConfigChooser(mConfigChooser);
+        this.getHolder().setFormat(configPolicy.getPixelFormat());
+    }
+
+    /**
+     * @return the EGL config the view renders into, or null if it wasn't picked yet. That happens
+     * on the GL thread once the surface is created.
+     */
+    @Nullable
+    public CachingEGLConfigChooser.Choice getEGLConfigChoice() {
+        return mConfigChooser.getChoice();
     }
 
     public void setCornerRadius(float radius) {
@@ -131,349 +238,256 @@ public class VideoSurfaceView extends GLSurfaceView {
         mRenderer.setCornerRadius(topLeft, topRight, bottomRight, bottomLeft);
     }
 
-    // TODO
-    public void setVideoAspectRatio(float aspectRatio) {
-        mRenderer.setVideoAspectRatio(aspectRatio);
-    }
-
-    @Override
-    public void onResume() {
-        queueEvent(new Runnable(){
+    /**
+     * Sets whether the geometry is kept in GL buffer objects, uploaded only when it changes,
+     * instead of being passed from client memory on every frame. Defaults to true.
+     */
+    public void setUseBufferObjects(final boolean useBufferObjects) {
+        queueEvent(new Runnable() {
             public void run() {
-                mRenderer.setMediaPlayer(mMediaPlayer);
+                mRenderer.setUseBufferObjects(useBufferObjects);
             }});
+    }
 
-        super.onResume();
+    /**
+     * Sets how the rounded geometry is laid out. A single triangle fan takes fewer vertices,
+     * which pays off when showing lots of videos at once.
+     *
+     * @param topology either {@link GLRoundedGeometry#TOPOLOGY_TRIANGLES} or
+     *                 {@link GLRoundedGeometry#TOPOLOGY_TRIANGLE_FAN}.
+     */
+    public void setGeometryTopology(int topology) {
+        mRenderer.setGeometryTopology(topology);
     }
 
-    public void setMediaPlayer(@Nullable MediaPlayer mediaPlayer) {
-        mMediaPlayer = mediaPlayer;
-        if (mRenderer != null) {
-            mRenderer.setMediaPlayer(mediaPlayer);
-        }
+    /**
+     * Sets how the corners are rounded. Defaults to {@link #ROUNDING_GEOMETRY}.
+     *
+     * @param roundingMode one of {@link #ROUNDING_GEOMETRY}, {@link #ROUNDING_SDF} or
+     *                     {@link #ROUNDING_UNIT_MESH}.
+     */
+    public void setRoundingMode(int roundingMode) {
+        mRenderer.setRoundingMode(roundingMode);
     }
 
-    private static class VideoRenderer
-            implements GLSurfaceView.Renderer, SurfaceTexture.OnFrameAvailableListener {
-        private static String TAG = "VideoRender";
-
-        private static final int FLOAT_SIZE_BYTES = 4;
-        private static final int SHORT_SIZE_BYTES = 2;
-        private static final int TRIANGLE_VERTICES_DATA_STRIDE_BYTES = 5 * FLOAT_SIZE_BYTES;
-        private static final int TRIANGLE_VERTICES_DATA_POS_OFFSET = 0;
-        private static final int TRIANGLE_VERTICES_DATA_UV_OFFSET = 3;
-
-        private final boolean USE_DRAW_ELEMENTS = true;
-
-        private final String mVertexShader =
-                "uniform mat4 uMVPMatrix;\n" +
-                        "uniform mat4 uSTMatrix;\n" +
-                        "attribute vec4 aPosition;\n" +
-                        "attribute vec4 aTextureCoord;\n" +
-                        "varying vec2 vTextureCoord;\n" +
-                        "void main() {\n" +
-                        "  gl_Position = uMVPMatrix * aPosition;\n" +
-                        "  vTextureCoord = (uSTMatrix * aTextureCoord).xy;\n" +
-                        "}\n";
-
-        private final String mFragmentShader =
-                "#extension GL_OES_EGL_image_external : require\n" +
-                        "precision mediump float;\n" +
-                        "varying vec2 vTextureCoord;\n" +
-                        "uniform samplerExternalOES sTexture;\n" +
-                        "void main() {\n" +
-                        "  gl_FragColor = texture2D(sTexture, vTextureCoord);\n" +
-                        "}\n";
-
-        private float[] mMVPMatrix = new float[16];
-        private float[] mSTMatrix = new float[16];
-
-        private int mProgram;
-        private int mTextureID;
-        private int muMVPMatrixHandle;
-        private int muSTMatrixHandle;
-        private int maPositionHandle;
-        private int maTextureHandle;
-
-        private static int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
-
-        private final GLSurfaceView mGLSurfaceView;
-        private MediaPlayer mMediaPlayer;
-        private SurfaceTexture mSurfaceTexture;
-        private boolean mUpdateSurface = false;
-
-        private float[] mTriangleVerticesData;
-        private short[] mTriangleIndicesData;
-        private FloatBuffer mTriangleVertices;
-        private ShortBuffer mTriangleIndices;
-        private RectF mRoundRadius = new RectF();
-        private GLRoundedGeometry mRoundedGeometry;
-        private final Point mViewPortSize = new Point();
-        private final RectF mViewPortGLBounds;
-        private boolean mUsesCoverageAa = false;
-
-        public VideoRenderer(@NonNull GLSurfaceView view) {
-            this(view, new GLRoundedGeometry(), new RectF(-1, 1, 1, -1));
-        }
+    /**
+     * Gets the part of the view, in view pixels, the video covers fully. The view is translucent
+     * so whatever is behind it shows through the rounded corners and the sides of a fitted
+     * video, but nothing behind the opaque region is ever seen, e.g. views behind this one can
+     * skip drawing under it. It changes with the size, scale mode and corner radii.
+     *
+     * @return false if the view has no size yet, leaving the region empty.
+     */
+    public boolean getOpaqueRegion(@NonNull Region region) {
+        return mRenderer.getOpaqueRegion(region);
+    }
 
-        public VideoRenderer(@NonNull GLSurfaceView view,
-                             @NonNull GLRoundedGeometry roundedGeometry,
-                             @NonNull RectF viewPortGLBounds) {
-            mGLSurfaceView = view;
-            mRoundedGeometry = roundedGeometry;
-            mViewPortGLBounds = viewPortGLBounds;
-            mViewPortSize.set(1, 1); // init this with a non-zero size
+    /**
+     * Sets when frames are rendered. Defaults to {@link #SCHEDULING_ON_FRAME_AVAILABLE}. Must be
+     * called on the UI thread.
+     *
+     * @param scheduling either {@link #SCHEDULING_ON_FRAME_AVAILABLE} or
+     *                   {@link #SCHEDULING_VSYNC}.
+     */
+    public void setRenderScheduling(int scheduling) {
+        mRenderer.setRenderScheduling(scheduling);
+    }
 
-            Matrix.setIdentityM(mSTMatrix, 0);
-        }
+    /**
+     * @return the cache of the GL programs of this view, which tells how much time went into
+     * compiling and linking them.
+     */
+    @NonNull
+    public ProgramCache getProgramCache() {
+        return mRenderer.getProgramCache();
+    }
 
-        public void setUsesCoverageAa(boolean usesCoverageAa) {
-            mUsesCoverageAa = usesCoverageAa;
-        }
+    /**
+     * Measures where the time of every frame goes: latching the video frame, issuing the draw and
+     * waiting for the GPU, plus how long video frames wait to be drawn and how many are replaced
+     * by newer ones before being shown. Measuring takes a few {@link System#nanoTime()} calls per
+     * frame and allocates nothing, so it can be left on. Nothing is measured without a listener.
+     *
+     * @param listener called on the GL thread after every frame, or null to stop measuring.
+     */
+    public void setOnFrameMetricsListener(@Nullable OnFrameMetricsListener listener) {
+        mRenderer.setOnFrameMetricsListener(listener);
+    }
 
-        public void setCornerRadius(float topLeft, float topRight, float bottomRight,
-                                    float bottomLeft) {
-            mRoundRadius.left = topLeft;
-            mRoundRadius.top = topRight;
-            mRoundRadius.right = bottomRight;
-            mRoundRadius.bottom = bottomLeft;
-            if (mViewPortSize.x > 1) {
-                updateVertexData();
-            }
-        }
+    /**
+     * Sets how long the view waits for a video frame before going idle, e.g. because playback
+     * is paused or stalled. An idle view stops scheduling renders and redraws the last frame,
+     * when the system asks for it, without waiting for the GPU. The next frame wakes it up and
+     * is drawn right away. Defaults to {@link #DEFAULT_IDLE_TIMEOUT_MILLIS}.
+     *
+     * The multisampled and depth buffers belong to the surface and can't be let go while it
+     * exists. Screens full of paused previews can hide their idle views behind a thumbnail
+     * from {@link OnIdleChangedListener}, which destroys their surfaces and frees them.
+     *
+     * @param idleTimeoutMillis the time without video frames before going idle, or 0 to never
+     *                          go idle.
+     */
+    public void setIdleTimeout(long idleTimeoutMillis) {
+        mRenderer.setIdleTimeout(idleTimeoutMillis);
+    }
 
-        private void updateVertexData() {
-             final GLRoundedGeometry.GeometryArrays arrays =
-                     mRoundedGeometry.generateVertexData(
-                             mRoundRadius,
-                             mViewPortGLBounds,
-                             mViewPortSize);
-            mTriangleVerticesData = arrays.triangleVertices;
-            mTriangleIndicesData = arrays.triangleIndices;
-            if (mTriangleVertices != null) {
-                mTriangleVertices.clear();
-            } else {
-                mTriangleVertices = ByteBuffer.allocateDirect(
-                        mTriangleVerticesData.length * FLOAT_SIZE_BYTES)
-                        .order(ByteOrder.nativeOrder()).asFloatBuffer();
-            }
-            if (mTriangleIndices != null) {
-                mTriangleIndices.clear();
-            } else {
-                mTriangleIndices = ByteBuffer.allocateDirect(
-                        mTriangleIndicesData.length * SHORT_SIZE_BYTES)
-                        .order(ByteOrder.nativeOrder()).asShortBuffer();
-            }
-            mTriangleVertices.put(mTriangleVerticesData).position(0);
-            mTriangleIndices.put(mTriangleIndicesData).position(0);
-        }
+    /**
+     * @return true if no video frame arrived for the idle timeout, see
+     * {@link #setIdleTimeout(long)}.
+     */
+    public boolean isIdle() {
+        return mRenderer.isIdle();
+    }
+
+    /**
+     * @param listener called on the UI thread when the view goes idle or wakes up, or null.
+     */
+    public void setOnIdleChangedListener(@Nullable OnIdleChangedListener listener) {
+        mRenderer.setOnIdleChangedListener(listener);
+    }
+
+    /**
+     * Sets the aspect ratio of the video, which the scale modes other than {@link #SCALE_FILL}
+     * need, e.g. from {@link MediaPlayer.OnVideoSizeChangedListener}.
+     *
+     * @param aspectRatio width over height of the video frames, or 0 if unknown.
+     */
+    public void setVideoAspectRatio(final float aspectRatio) {
+        queueEvent(new Runnable() {
+            public void run() {
+                mRenderer.setVideoAspectRatio(aspectRatio);
+            }});
+        requestRender();
+    }
+
+    /**
+     * Sets how the video is scaled into the view. Defaults to {@link #SCALE_FILL}. Scaling is
+     * done by the GL transforms, so changing it or the video aspect ratio only regenerates the
+     * geometry when fitting changes the size the video is drawn at.
+     *
+     * @param scaleMode one of {@link #SCALE_FILL}, {@link #SCALE_CENTER_CROP} or
+     *                  {@link #SCALE_FIT_CENTER}.
+     */
+    public void setScaleMode(final int scaleMode) {
+        queueEvent(new Runnable() {
+            public void run() {
+                mRenderer.setScaleMode(scaleMode);
+            }});
+        requestRender();
+    }
 
-        public void setMediaPlayer(MediaPlayer player) {
-            mMediaPlayer = player;
-            if (mSurfaceTexture != null) {
-                Surface surface = new Surface(mSurfaceTexture);
-                mMediaPlayer.setSurface(surface);
-                surface.release();
-
-                try {
-                    mMediaPlayer.prepare();
-                } catch (IOException t) {
-                    Log.e(TAG, "media player prepare failed");
-                }
-            }
+    @Override
+    public void requestRender() {
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.requestRender(mSharedRenderTarget);
+        } else {
+            super.requestRender();
         }
+    }
 
-        public void onDrawFrame(GL10 glUnused) {
-            synchronized(this) {
-                if (mUpdateSurface) {
-                    mSurfaceTexture.updateTexImage();
-                    mSurfaceTexture.getTransformMatrix(mSTMatrix);
-                    mUpdateSurface = false;
-                }
-            }
-
-            GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
-            int clearMask = GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT;
-            if (mUsesCoverageAa) { // Tegra weirdness
-                final int GL_COVERAGE_BUFFER_BIT_NV = 0x8000;
-                clearMask |= GL_COVERAGE_BUFFER_BIT_NV;
-            }
-            GLES20.glClear(clearMask);
-
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
-                    GLES20.GL_CLAMP_TO_EDGE);
-            GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
-                    GLES20.GL_CLAMP_TO_EDGE);
-
-            GLES20.glUseProgram(mProgram);
-            checkGlError("glUseProgram");
-
-            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-            GLES20.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureID);
-
-            mTriangleVertices.position(TRIANGLE_VERTICES_DATA_POS_OFFSET);
-            GLES20.glVertexAttribPointer(maPositionHandle, 3, GLES20.GL_FLOAT, false,
-                    TRIANGLE_VERTICES_DATA_STRIDE_BYTES, mTriangleVertices);
-            checkGlError("glVertexAttribPointer maPosition");
-            GLES20.glEnableVertexAttribArray(maPositionHandle);
-            checkGlError("glEnableVertexAttribArray maPositionHandle");
-
-            mTriangleVertices.position(TRIANGLE_VERTICES_DATA_UV_OFFSET);
-            GLES20.glVertexAttribPointer(maTextureHandle, 3, GLES20.GL_FLOAT, false,
-                    TRIANGLE_VERTICES_DATA_STRIDE_BYTES, mTriangleVertices);
-            checkGlError("glVertexAttribPointer maTextureHandle");
-            GLES20.glEnableVertexAttribArray(maTextureHandle);
-            checkGlError("glEnableVertexAttribArray maTextureHandle");
-
-            Matrix.setIdentityM(mMVPMatrix, 0);
-            Matrix.scaleM(mMVPMatrix, 0, 1f, 1f, 1f);
-            GLES20.glUniformMatrix4fv(muMVPMatrixHandle, 1, false, mMVPMatrix, 0);
-            GLES20.glUniformMatrix4fv(muSTMatrixHandle, 1, false, mSTMatrix, 0);
-
-            // Alternatively we can use
-            //
-            // GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, mTriangleVerticesData.length / 5);
-            //
-            // but with the current geometry setup it ends up drawing a lot of 'degenerate'
-            // triangles which represents more work for our shaders, especially the fragment one.
-            GLES20.glDrawElements(GLES20.GL_TRIANGLES, mTriangleIndicesData.length,
-                    GL10.GL_UNSIGNED_SHORT, mTriangleIndices);
-
-            checkGlError("glDrawElements");
-            GLES20.glFinish();
+    /**
+     * Views drawn by a shared render thread only support {@link #RENDERMODE_WHEN_DIRTY}, a view
+     * rendering continuously would keep the thread from the others.
+     */
+    @Override
+    public void setRenderMode(int renderMode) {
+        if (mSharedRenderThread == null) {
+            super.setRenderMode(renderMode);
+        } else if (renderMode != RENDERMODE_WHEN_DIRTY) {
+            throw new IllegalArgumentException("Views sharing a render thread only render when "
+                    + "dirty");
         }
+    }
+
+    @Override
+    public int getRenderMode() {
+        return mSharedRenderThread != null ? RENDERMODE_WHEN_DIRTY : super.getRenderMode();
+    }
 
-        public void onSurfaceChanged(GL10 glUnused, int width, int height) {
-            GLES20.glViewport(0, 0, width, height);
-            mViewPortSize.set(width, height);
-            updateVertexData();
+    @Override
+    public void queueEvent(Runnable r) {
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.queueEvent(r);
+        } else {
+            super.queueEvent(r);
         }
+    }
 
-        public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
-            mProgram = createProgram(mVertexShader, mFragmentShader);
-            if (mProgram == 0) {
-                return;
-            }
-            maPositionHandle = GLES20.glGetAttribLocation(mProgram, "aPosition");
-            checkGlError("glGetAttribLocation aPosition");
-            if (maPositionHandle == -1) {
-                throw new RuntimeException("Could not get attrib location for aPosition");
-            }
-            maTextureHandle = GLES20.glGetAttribLocation(mProgram, "aTextureCoord");
-            checkGlError("glGetAttribLocation aTextureCoord");
-            if (maTextureHandle == -1) {
-                throw new RuntimeException("Could not get attrib location for aTextureCoord");
-            }
-
-            muMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-            checkGlError("glGetUniformLocation uMVPMatrix");
-            if (muMVPMatrixHandle == -1) {
-                throw new RuntimeException("Could not get attrib location for uMVPMatrix");
-            }
-
-            muSTMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uSTMatrix");
-            checkGlError("glGetUniformLocation uSTMatrix");
-            if (muSTMatrixHandle == -1) {
-                throw new RuntimeException("Could not get attrib location for uSTMatrix");
-            }
-
-            int[] textures = new int[1];
-            GLES20.glGenTextures(1, textures, 0);
-
-            mTextureID = textures[0];
-            GLES20.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureID);
-            checkGlError("glBindTexture mTextureID");
-
-            GLES20.glTexParameterf(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER,
-                    GLES20.GL_LINEAR);
-            GLES20.glTexParameterf(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER,
-                    GLES20.GL_LINEAR);
-
-            /*
-             * Create the SurfaceTexture that will feed this textureID,
-             * and pass it to the MediaPlayer
-             */
-            mSurfaceTexture = new SurfaceTexture(mTextureID);
-            mSurfaceTexture.setOnFrameAvailableListener(this);
-
-            if (mMediaPlayer != null) {
-                Surface surface = new Surface(mSurfaceTexture);
-                mMediaPlayer.setSurface(surface);
-                surface.release();
-                try {
-                    mMediaPlayer.prepare();
-                } catch (IOException t) {
-                    Log.e(TAG, "media player prepare failed");
-                }
-            }
-
-            synchronized(this) {
-                mUpdateSurface = false;
-            }
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.surfaceCreated(mSharedRenderTarget, holder);
+        } else {
+            super.surfaceCreated(holder);
         }
+    }
 
-        synchronized public void onFrameAvailable(SurfaceTexture surface) {
-            mUpdateSurface = true;
-            mGLSurfaceView.requestRender();
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int w, int h) {
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.surfaceChanged(mSharedRenderTarget, w, h);
+        } else {
+            super.surfaceChanged(holder, format, w, h);
         }
+    }
 
-        private int loadShader(int shaderType, String source) {
-            int shader = GLES20.glCreateShader(shaderType);
-            if (shader != 0) {
-                GLES20.glShaderSource(shader, source);
-                GLES20.glCompileShader(shader);
-                int[] compiled = new int[1];
-                GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-                if (compiled[0] == 0) {
-                    Log.e(TAG, "Could not compile shader " + shaderType + ":");
-                    Log.e(TAG, GLES20.glGetShaderInfoLog(shader));
-                    GLES20.glDeleteShader(shader);
-                    shader = 0;
-                }
-            }
-            return shader;
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.surfaceDestroyed(mSharedRenderTarget);
+        } else {
+            super.surfaceDestroyed(holder);
         }
+        // The render thread is done with the surface by now and runs events without one
+        queueEvent(new Runnable() {
+            public void run() {
+                mRenderer.releaseGeometryBuffers();
+            }});
+    }
 
-        private int createProgram(String vertexSource, String fragmentSource) {
-            int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
-            if (vertexShader == 0) {
-                return 0;
-            }
-            int pixelShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
-            if (pixelShader == 0) {
-                return 0;
-            }
-
-            int program = GLES20.glCreateProgram();
-            if (program != 0) {
-                GLES20.glAttachShader(program, vertexShader);
-                checkGlError("glAttachShader");
-                GLES20.glAttachShader(program, pixelShader);
-                checkGlError("glAttachShader");
-                GLES20.glLinkProgram(program);
-                int[] linkStatus = new int[1];
-                GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
-                if (linkStatus[0] != GLES20.GL_TRUE) {
-                    Log.e(TAG, "Could not link program: ");
-                    Log.e(TAG, GLES20.glGetProgramInfoLog(program));
-                    GLES20.glDeleteProgram(program);
-                    program = 0;
-                }
-            }
-            return program;
+    @Override
+    protected void onDetachedFromWindow() {
+        if (mSharedRenderThread != null) {
+            // The shared context outlives us, so our GL objects have to go explicitly
+            mSharedRenderThread.release(mSharedRenderTarget);
         }
+        super.onDetachedFromWindow();
+    }
 
-        private void checkGlError(String op) {
-            int error;
-            while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
-                Log.e(TAG, op + ": glError " + error);
-                throw new RuntimeException(op + ": glError " + error);
-            }
+    @Override
+    public void onResume() {
+        // Nothing to hand the player: it keeps the Surface of our SurfaceTexture while the
+        // context lives, and a new context gives it a new one without preparing it again
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.onResume(mSharedRenderTarget);
+        } else {
+            super.onResume();
         }
+        // A video that stays paused sends no frame to start the idle check
+        mRenderer.startIdleCheck();
+    }
 
-        public void setVideoAspectRatio(float aspectRatio) {
-            // TODO
+    @Override
+    public void onPause() {
+        mRenderer.cancelScheduledRender();
+        if (mSharedRenderThread != null) {
+            mSharedRenderThread.onPause(mSharedRenderTarget);
+        } else {
+            super.onPause();
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Sets the player of the video. The view gives it a Surface and prepares it once the GL
+     * texture exists, only the first time it's set.
+     */
+    public void setMediaPlayer(@Nullable final MediaPlayer mediaPlayer) {
+        if (mRenderer != null) {
+            // The SurfaceTexture belongs to the GL thread
+            queueEvent(new Runnable() {
+                public void run() {
+                    mRenderer.setMediaPlayer(mediaPlayer);
+                }});
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.abrantix.roundedvideo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Draws a wall of 50 tiles through a {@link RecordingGLBackend} and checks how many draw calls
+ * {@link CompositorRenderer} makes for it, with and without batching.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CompositorRendererTest {
+
+    private static final int TILES = 50;
+    private static final int COLUMNS = 10;
+
+    private RecordingGLBackend mGL;
+    private CompositorRenderer mRenderer;
+
+    @Before
+    public void setUp() {
+        mGL = new RecordingGLBackend();
+        mRenderer = createRenderer(mGL);
+    }
+
+    private static CompositorRenderer createRenderer(RecordingGLBackend gl) {
+        final CompositorRenderer renderer = new CompositorRenderer(gl, new GLRoundedGeometry());
+        for (int i = 0; i < TILES; i++) {
+            final VideoLayer layer = new VideoLayer();
+            final int left = (i % COLUMNS) * 70;
+            final int top = (i / COLUMNS) * 70;
+            layer.setBounds(left, top, left + 64, top + 64);
+            layer.setCornerRadius(8);
+            renderer.addLayer(layer);
+        }
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 700, 350);
+        return renderer;
+    }
+
+    @Test
+    public void drawsEveryLayerOnItsOwn() {
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(TILES, mGL.getDrawCallCount());
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(TILES, mGL.getDrawCallCount());
+    }
+
+    @Test
+    public void batchingDrawsABatchOfLayersPerCall() {
+        mRenderer.setBatching(true);
+        final int batches = (TILES + VideoProgram.BATCH_TEXTURE_UNITS - 1) /
+                VideoProgram.BATCH_TEXTURE_UNITS;
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(7, batches);
+        assertEquals(batches, mGL.getDrawCallCount());
+
+        // nothing changed, so nothing is uploaded again
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(batches, mGL.getDrawCallCount());
+        assertEquals(0, mGL.getUploadedBytes());
+    }
+
+    @Test
+    public void newTextureTransformOnlyUploadsItsLayer() {
+        mRenderer.setBatching(true);
+        mRenderer.onDrawFrame(null);
+        mRenderer.getLayers().get(3).mSTMatrix[5] = -1f;
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(1, mGL.getCallCount("glBufferSubData"));
+        assertEquals(0, mGL.getCallCount("glBufferData"));
+    }
+
+    @Test
+    public void turningBatchingOffDrawsEveryLayerAgain() {
+        mRenderer.setBatching(true);
+        mRenderer.onDrawFrame(null);
+        mRenderer.setBatching(false);
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(TILES, mGL.getDrawCallCount());
+
+        // The programs are linked apart, so a driver can hand the arrays of the batched one the
+        // locations of the plain one
+        final OverlappingAttribsGLBackend gl = new OverlappingAttribsGLBackend();
+        final CompositorRenderer renderer = createRenderer(gl);
+        renderer.setBatching(true);
+        renderer.onDrawFrame(null);
+        renderer.setBatching(false);
+        renderer.onDrawFrame(null);
+        renderer.onDrawFrame(null);
+        assertEquals(0, gl.mDrawsWithoutArrays);
+    }
+
+    /**
+     * Gives aSTRow1 the location of aPosition and aSTRow0 the one of aTextureCoord, in every
+     * program, and counts the draws made while either array is disabled.
+     */
+    private static final class OverlappingAttribsGLBackend extends RecordingGLBackend {
+        private final boolean[] mEnabled = new boolean[4];
+        int mDrawsWithoutArrays;
+
+        @Override
+        public int glGetAttribLocation(int program, String name) {
+            super.glGetAttribLocation(program, name);
+            if ("aPosition".equals(name) || "aSTRow1".equals(name)) {
+                return 0;
+            } else if ("aTextureCoord".equals(name) || "aSTRow0".equals(name)) {
+                return 1;
+            }
+            return 2;
+        }
+
+        @Override
+        public void glEnableVertexAttribArray(int index) {
+            super.glEnableVertexAttribArray(index);
+            mEnabled[index] = true;
+        }
+
+        @Override
+        public void glDisableVertexAttribArray(int index) {
+            super.glDisableVertexAttribArray(index);
+            mEnabled[index] = false;
+        }
+
+        @Override
+        public void glDrawElements(int mode, int count, int type, int offset) {
+            super.glDrawElements(mode, count, type, offset);
+            if (!mEnabled[0] || !mEnabled[1]) {
+                mDrawsWithoutArrays++;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.abrantix.roundedvideo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DirectBufferPoolTest {
+
+    private static final int ONE_MB = 1024 * 1024;
+
+    private DirectBufferPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new DirectBufferPool(DirectBufferPool.DEFAULT_MAX_HELD_BYTES);
+    }
+
+    @Test
+    public void roundsUpToTheSizeClass() {
+        assertEquals(256, mPool.acquire(0).capacity());
+        assertEquals(256, mPool.acquire(256).capacity());
+        assertEquals(512, mPool.acquire(257).capacity());
+        assertEquals(4096, mPool.acquire(3000).capacity());
+        assertEquals(ONE_MB, mPool.acquire(ONE_MB).capacity());
+        // too big for a size class, so exact
+        assertEquals(ONE_MB + 1, mPool.acquire(ONE_MB + 1).capacity());
+    }
+
+    @Test
+    public void reusesAReleasedBuffer() {
+        final ByteBuffer buffer = mPool.acquire(300);
+        assertTrue(buffer.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), buffer.order());
+        buffer.putInt(42).flip();
+        buffer.order(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ?
+                ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        mPool.release(buffer);
+
+        final ByteBuffer reused = mPool.acquire(400);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+        assertEquals(ByteOrder.nativeOrder(), reused.order());
+        assertEquals(1, mPool.getHitCount());
+        assertEquals(1, mPool.getMissCount());
+
+        // other size classes don't get it
+        mPool.release(reused);
+        assertNotSame(reused, mPool.acquire(100));
+        assertNotSame(reused, mPool.acquire(1024));
+    }
+
+    @Test
+    public void dropsOversizedBuffers() {
+        mPool.setMaxHeldBytes(4 * ONE_MB);
+        final ByteBuffer buffer = mPool.acquire(ONE_MB + 1);
+        mPool.release(buffer);
+        assertEquals(0, mPool.getHeldBytes());
+        assertEquals(1, mPool.getDropCount());
+        assertNotSame(buffer, mPool.acquire(ONE_MB + 1));
+        assertEquals(0, mPool.getHitCount());
+
+        // the biggest class is still pooled
+        final ByteBuffer biggest = mPool.acquire(ONE_MB);
+        mPool.release(biggest);
+        assertEquals(ONE_MB, mPool.getHeldBytes());
+        assertSame(biggest, mPool.acquire(ONE_MB));
+    }
+
+    @Test
+    public void holdsNoMoreThanItsBound() {
+        mPool.setMaxHeldBytes(1024);
+        final ByteBuffer first = mPool.acquire(512);
+        final ByteBuffer second = mPool.acquire(512);
+        final ByteBuffer third = mPool.acquire(512);
+        mPool.release(first);
+        mPool.release(second);
+        mPool.release(third);
+        assertEquals(1024, mPool.getHeldBytes());
+        assertEquals(1, mPool.getDropCount());
+        assertSame(second, mPool.acquire(512));
+        assertSame(first, mPool.acquire(512));
+        assertNotSame(third, mPool.acquire(512));
+    }
+
+    @Test
+    public void shrinkingTheBoundDropsTheBiggestBuffersFirst() {
+        mPool.setMaxHeldBytes(4096);
+        final ByteBuffer b256 = mPool.acquire(256);
+        final ByteBuffer b512 = mPool.acquire(512);
+        final ByteBuffer b1024 = mPool.acquire(1024);
+        final ByteBuffer b2048 = mPool.acquire(2048);
+        mPool.release(b256);
+        mPool.release(b512);
+        mPool.release(b1024);
+        mPool.release(b2048);
+        assertEquals(3840, mPool.getHeldBytes());
+
+        mPool.setMaxHeldBytes(1000);
+        assertEquals(768, mPool.getHeldBytes());
+        assertEquals(2, mPool.getDropCount());
+        assertSame(b256, mPool.acquire(256));
+        assertSame(b512, mPool.acquire(512));
+        assertNotSame(b1024, mPool.acquire(1024));
+        assertNotSame(b2048, mPool.acquire(2048));
+
+        mPool.setMaxHeldBytes(0);
+        mPool.release(b256);
+        assertEquals(0, mPool.getHeldBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundCantBeNegative() {
+        mPool.setMaxHeldBytes(-1);
+    }
+
+    @Test
+    public void accountsForHeldAndOutstandingBytes() {
+        final ByteBuffer small = mPool.acquire(100);
+        final ByteBuffer large = mPool.acquire(ONE_MB + 1);
+        assertEquals(256 + ONE_MB + 1, mPool.getOutstandingBytes());
+        assertEquals(0, mPool.getHeldBytes());
+
+        mPool.release(small);
+        assertEquals(ONE_MB + 1, mPool.getOutstandingBytes());
+        assertEquals(256, mPool.getHeldBytes());
+
+        mPool.release(large);
+        assertEquals(0, mPool.getOutstandingBytes());
+        assertEquals(256, mPool.getHeldBytes());
+
+        mPool.acquire(200);
+        assertEquals(256, mPool.getOutstandingBytes());
+        assertEquals(0, mPool.getHeldBytes());
+
+        mPool.release(mPool.acquire(2000));
+        mPool.evictAll();
+        assertEquals(256, mPool.getOutstandingBytes());
+        assertEquals(0, mPool.getHeldBytes());
+        assertEquals(2, mPool.getDropCount());
+    }
+}
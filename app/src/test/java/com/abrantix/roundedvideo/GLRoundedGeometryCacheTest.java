@@ -0,0 +1,200 @@
+package com.abrantix.roundedvideo;
+
+import android.graphics.Point;
+import android.graphics.RectF;
+
+import com.abrantix.roundedvideo.geometry.RoundedGeometry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks what {@link GLRoundedGeometryCache} keys its meshes by and the order it evicts them in.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class GLRoundedGeometryCacheTest {
+
+    private static final int MAX_ENTRIES = 100;
+    private static final int MAX_BYTES = 10 * 1024 * 1024;
+
+    private GLRoundedGeometryCache mCache;
+    private GLRoundedGeometry mGeometry;
+
+    @Before
+    public void setUp() {
+        mCache = new GLRoundedGeometryCache(MAX_ENTRIES, MAX_BYTES);
+        mGeometry = new GLRoundedGeometry();
+    }
+
+    @Test
+    public void identicalRequestHits() {
+        final GLRoundedGeometry.GeometryArrays arrays = get(0f);
+        // equal parameters in other instances
+        assertSame(arrays, get(0f));
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+        assertEquals(1, mCache.size());
+    }
+
+    @Test
+    public void everyParameterIsPartOfTheKey() {
+        final GLRoundedGeometry.GeometryArrays arrays = get(0f);
+        final RectF radii = radii();
+        final RectF bounds = bounds();
+        final Point size = size();
+        final float[][] rects = {
+                {radii.left + 1, radii.top, radii.right, radii.bottom},
+                {radii.left, radii.top + 1, radii.right, radii.bottom},
+                {radii.left, radii.top, radii.right + 1, radii.bottom},
+                {radii.left, radii.top, radii.right, radii.bottom + 1},
+        };
+        for (float[] rect : rects) {
+            assertNotSame(arrays, mCache.get(mGeometry,
+                    new RectF(rect[0], rect[1], rect[2], rect[3]), bounds, size, 0f));
+        }
+        for (float[] rect : rects) {
+            // the same offsets, on the bounds this time
+            final RectF other = new RectF(bounds.left + rect[0] - radii.left,
+                    bounds.top + rect[1] - radii.top, bounds.right + rect[2] - radii.right,
+                    bounds.bottom + rect[3] - radii.bottom);
+            assertNotSame(arrays, mCache.get(mGeometry, radii, other, size, 0f));
+        }
+        assertNotSame(arrays, mCache.get(mGeometry, radii, bounds, new Point(size.x + 1, size.y),
+                0f));
+        assertNotSame(arrays, mCache.get(mGeometry, radii, bounds, new Point(size.x, size.y + 1),
+                0f));
+        assertNotSame(arrays, get(0.5f));
+        assertEquals(0, mCache.getHitCount());
+        assertEquals(12, mCache.getMissCount());
+        // and the original is still there
+        assertSame(arrays, get(0f));
+    }
+
+    @Test
+    public void tessellationAndTopologyArePartOfTheKey() {
+        final GLRoundedGeometry.GeometryArrays arrays = get(0f);
+
+        mGeometry.setTrianglesPerCorner(mGeometry.getTrianglesPerCorner(radii().left) + 1);
+        final GLRoundedGeometry.GeometryArrays moreTriangles = get(0f);
+        assertNotSame(arrays, moreTriangles);
+        assertSame(moreTriangles, get(0f));
+
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLE_FAN);
+        final GLRoundedGeometry.GeometryArrays fan = get(0f);
+        assertNotSame(moreTriangles, fan);
+        assertSame(fan, get(0f));
+
+        // another generator, set up like the first one was, shares its mesh
+        final GLRoundedGeometry other = new GLRoundedGeometry();
+        assertSame(arrays, mCache.get(other, radii(), bounds(), size(), 0f));
+        other.setMaxChordError(RoundedGeometry.DEFAULT_MAX_CHORD_ERROR_PX / 4f);
+        assertNotSame(arrays, mCache.get(other, radii(), bounds(), size(), 0f));
+        assertEquals(4, mCache.getMissCount());
+    }
+
+    @Test
+    public void entryBoundEvictsTheLeastRecentlyUsed() {
+        mCache.setMaxSize(2, MAX_BYTES);
+        final GLRoundedGeometry.GeometryArrays first = get(0f);
+        final GLRoundedGeometry.GeometryArrays second = get(1f);
+        assertSame(first, get(0f));
+        get(2f);
+        assertEquals(2, mCache.size());
+        assertEquals(1, mCache.getEvictionCount());
+        // second was the least recently used
+        assertSame(first, get(0f));
+        assertNotSame(second, get(1f));
+        assertEquals(2, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void byteBoundEvictsTheLeastRecentlyUsed() {
+        // every z gives a mesh of the same size
+        final GLRoundedGeometry.GeometryArrays first = get(0f);
+        final int bytes = sizeOf(first);
+        assertEquals(bytes, mCache.sizeBytes());
+        mCache.setMaxSize(MAX_ENTRIES, 2 * bytes + bytes / 2);
+
+        final GLRoundedGeometry.GeometryArrays second = get(1f);
+        assertSame(first, get(0f));
+        get(2f);
+        assertEquals(2, mCache.size());
+        assertEquals(2 * bytes, mCache.sizeBytes());
+        assertEquals(1, mCache.getEvictionCount());
+        assertSame(first, get(0f));
+        assertNotSame(second, get(1f));
+
+        // a mesh bigger than the whole bound isn't kept at all
+        mCache.setMaxSize(MAX_ENTRIES, bytes - 1);
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.sizeBytes());
+        get(0f);
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.sizeBytes());
+    }
+
+    @Test
+    public void accountingStaysConsistent() {
+        int bytes = 0;
+        for (int i = 0; i < 5; i++) {
+            bytes += sizeOf(get(i));
+            assertEquals(bytes, mCache.sizeBytes());
+        }
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLE_FAN);
+        bytes += sizeOf(get(0f));
+        assertEquals(bytes, mCache.sizeBytes());
+        assertEquals(6, mCache.size());
+        assertEquals(0, mCache.getEvictionCount());
+
+        mCache.setMaxSize(3, MAX_BYTES);
+        assertEquals(3, mCache.size());
+        assertEquals(3, mCache.getEvictionCount());
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLES);
+        bytes = sizeOf(get(3f)) + sizeOf(get(4f));
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLE_FAN);
+        bytes += sizeOf(get(0f));
+        assertEquals(bytes, mCache.sizeBytes());
+        assertEquals(3, mCache.getHitCount());
+
+        mCache.evictAll();
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.sizeBytes());
+        assertEquals(6, mCache.getEvictionCount());
+        assertEquals(3, mCache.getHitCount());
+        assertEquals(6, mCache.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundsCantBeNegative() {
+        mCache.setMaxSize(1, -1);
+    }
+
+    private GLRoundedGeometry.GeometryArrays get(float z) {
+        return mCache.get(mGeometry, radii(), bounds(), size(), z);
+    }
+
+    private static RectF radii() {
+        return new RectF(8, 12, 16, 20);
+    }
+
+    private static RectF bounds() {
+        return new RectF(-1, 1, 1, -1);
+    }
+
+    private static Point size() {
+        return new Point(300, 200);
+    }
+
+    private static int sizeOf(GLRoundedGeometry.GeometryArrays arrays) {
+        // floats and shorts
+        return arrays.triangleVertices.length * 4 + arrays.triangleIndices.length * 2;
+    }
+}
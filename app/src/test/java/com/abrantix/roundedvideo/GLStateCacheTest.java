@@ -0,0 +1,137 @@
+package com.abrantix.roundedvideo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class GLStateCacheTest {
+    // From GLES20
+    private static final int GL_TEXTURE0 = 0x84C0;
+    private static final int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+    private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    private static final int GL_FLOAT = 0x1406;
+
+    private RecordingGLBackend mGL;
+    private GLStateCache mCache;
+
+    @Before
+    public void setUp() {
+        mGL = new RecordingGLBackend();
+        mCache = new GLStateCache(mGL);
+    }
+
+    @Test
+    public void dropsCallsThatDontChangeTheState() {
+        for (int i = 0; i < 3; i++) {
+            mCache.glUseProgram(1);
+            mCache.glActiveTexture(GL_TEXTURE0);
+            mCache.glBindTexture(GL_TEXTURE_EXTERNAL_OES, 2);
+            mCache.glBindBuffer(GL_ARRAY_BUFFER, 3);
+            mCache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 4);
+            mCache.glClearColor(0f, 0f, 0f, 0f);
+            mCache.glViewport(0, 0, 300, 200);
+        }
+        assertEquals(7, mGL.getTotalCallCount());
+        assertEquals(14, mCache.getElidedCallCount());
+        assertEquals(2, mCache.getElidedCallCount("glUseProgram"));
+        assertEquals(4, mCache.getElidedCallCount("glBindBuffer"));
+    }
+
+    @Test
+    public void passesChanges() {
+        mCache.glUseProgram(1);
+        mCache.glUseProgram(2);
+        mCache.glActiveTexture(GL_TEXTURE0);
+        mCache.glBindTexture(GL_TEXTURE_EXTERNAL_OES, 2);
+        // another unit has its own binding
+        mCache.glActiveTexture(GL_TEXTURE0 + 1);
+        mCache.glBindTexture(GL_TEXTURE_EXTERNAL_OES, 2);
+        mCache.glViewport(0, 0, 300, 200);
+        mCache.glViewport(0, 0, 200, 300);
+        assertEquals(8, mGL.getTotalCallCount());
+        assertEquals(0, mCache.getElidedCallCount());
+    }
+
+    @Test
+    public void matrixUniformsAreKeptPerProgram() {
+        final float[] matrix = new float[16];
+        matrix[0] = 1f;
+        mCache.glUseProgram(1);
+        mCache.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        mCache.glUseProgram(2);
+        mCache.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        mCache.glUseProgram(1);
+        mCache.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        assertEquals(2, mGL.getCallCount("glUniformMatrix4fv"));
+        assertEquals(1, mCache.getElidedCallCount("glUniformMatrix4fv"));
+
+        matrix[0] = 2f;
+        mCache.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        assertEquals(3, mGL.getCallCount("glUniformMatrix4fv"));
+    }
+
+    @Test
+    public void vertexAttribPointersFollowTheBoundBuffer() {
+        mCache.glBindBuffer(GL_ARRAY_BUFFER, 3);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+        assertEquals(1, mCache.getElidedCallCount("glVertexAttribPointer"));
+        // the same offset into another buffer is another pointer
+        mCache.glBindBuffer(GL_ARRAY_BUFFER, 4);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+        assertEquals(2, mGL.getCallCount("glVertexAttribPointer"));
+
+        // client side arrays only match the very same buffer and position
+        mCache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        final FloatBuffer vertices = FloatBuffer.allocate(20);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, vertices);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, vertices);
+        vertices.position(3);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, vertices);
+        assertEquals(4, mGL.getCallCount("glVertexAttribPointer"));
+    }
+
+    @Test
+    public void deletedBuffersDontMatchTheirRegeneratedName() {
+        mCache.glBindBuffer(GL_ARRAY_BUFFER, 3);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+        mCache.glBindBuffer(GL_ARRAY_BUFFER, 4);
+        mCache.glVertexAttribPointer(1, 2, GL_FLOAT, false, 20, 12);
+        mCache.glDeleteBuffers(1, new int[] {3}, 0);
+
+        // glGenBuffers is free to hand out the deleted name again
+        mCache.glBindBuffer(GL_ARRAY_BUFFER, 3);
+        mCache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 20, 0);
+        assertEquals(3, mGL.getCallCount("glVertexAttribPointer"));
+        assertEquals(0, mCache.getElidedCallCount("glVertexAttribPointer"));
+
+        // pointers into other buffers are still known
+        mCache.glBindBuffer(GL_ARRAY_BUFFER, 4);
+        mCache.glVertexAttribPointer(1, 2, GL_FLOAT, false, 20, 12);
+        assertEquals(1, mCache.getElidedCallCount("glVertexAttribPointer"));
+    }
+
+    @Test
+    public void invalidateForgetsTheState() {
+        mCache.glUseProgram(1);
+        mCache.glClearColor(0f, 0f, 0f, 0f);
+        mCache.invalidate();
+        mCache.glUseProgram(1);
+        mCache.glClearColor(0f, 0f, 0f, 0f);
+        assertEquals(4, mGL.getTotalCallCount());
+        assertEquals(0, mCache.getElidedCallCount());
+    }
+
+    @Test
+    public void resetElidedCallCounts() {
+        mCache.glUseProgram(1);
+        mCache.glUseProgram(1);
+        mCache.resetElidedCallCounts();
+        assertEquals(0, mCache.getElidedCallCount());
+        assertEquals(0, mCache.getElidedCallCount("glUseProgram"));
+    }
+}
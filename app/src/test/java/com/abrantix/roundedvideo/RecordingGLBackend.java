@@ -0,0 +1,438 @@
+package com.abrantix.roundedvideo;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link GLBackend} that doesn't draw anything but counts the calls made through it, so the unit
+ * tests can check how much GL work a renderer does per frame off device.
+ *
+ * Besides the amount of calls to each method, it keeps track of:
+ * <ul>
+ *     <li>draw calls</li>
+ *     <li>uploaded bytes: data handed to buffer objects plus the data the driver has to copy
+ *     from client memory on draws that don't use buffer objects</li>
+ *     <li>state changes: program, texture, buffer, attribute, uniform and fixed state calls</li>
+ * </ul>
+ *
+ * Creation calls hand out increasing object names, shaders always compile, programs always link
+ * and attribute and uniform locations are handed out per program and name, so renderers go
+ * through their regular code paths. Call {@link #reset()} to start counting a new frame.
+ */
+public class RecordingGLBackend implements GLBackend {
+    // From GLES20, copied so this class doesn't need the Android framework
+    private static final int GL_TRUE = 1;
+    private static final int GL_NO_ERROR = 0;
+    private static final int GL_UNSIGNED_SHORT = 0x1403;
+    private static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+
+    private final Map<String, int[]> mCallCounts = new HashMap<String, int[]>();
+    private final Map<String, Integer> mLocations = new HashMap<String, Integer>();
+    private final List<String> mCallLog = new ArrayList<String>();
+    private boolean mRecordCalls = false;
+
+    private int mNextName = 1;
+    private int mBoundElementArrayBuffer;
+    // client side attribute pointers and their size when set, null when the attribute comes from
+    // a buffer object
+    private final Buffer[] mClientAttribs = new Buffer[MAX_VERTEX_ATTRIBS];
+    private final int[] mClientAttribBytes = new int[MAX_VERTEX_ATTRIBS];
+
+    private long mTotalCalls;
+    private long mDrawCalls;
+    private long mStateChanges;
+    private long mUploadedBytes;
+
+    /**
+     * @param recordCalls true to also keep a log with the name of every call, in order.
+     */
+    public void setRecordCalls(boolean recordCalls) {
+        mRecordCalls = recordCalls;
+    }
+
+    /**
+     * Clears all the counters and the call log. The objects created so far are kept.
+     */
+    public void reset() {
+        mCallCounts.clear();
+        mCallLog.clear();
+        mTotalCalls = 0;
+        mDrawCalls = 0;
+        mStateChanges = 0;
+        mUploadedBytes = 0;
+    }
+
+    /**
+     * @param method the name of a GL method, e.g. "glDrawElements".
+     * @return how many times it was called since the last {@link #reset()}.
+     */
+    public int getCallCount(String method) {
+        final int[] count = mCallCounts.get(method);
+        return count != null ? count[0] : 0;
+    }
+
+    public long getTotalCallCount() {
+        return mTotalCalls;
+    }
+
+    public long getDrawCallCount() {
+        return mDrawCalls;
+    }
+
+    public long getStateChangeCount() {
+        return mStateChanges;
+    }
+
+    public long getUploadedBytes() {
+        return mUploadedBytes;
+    }
+
+    /**
+     * @return the name of every call since the last {@link #reset()}, in order, if recording
+     * calls was enabled.
+     */
+    public List<String> getCallLog() {
+        return Collections.unmodifiableList(mCallLog);
+    }
+
+    @Override
+    public String toString() {
+        return "RecordingGLBackend[calls=" + mTotalCalls + ", draws=" + mDrawCalls +
+                ", stateChanges=" + mStateChanges + ", uploadedBytes=" + mUploadedBytes +
+                ", perMethod=" + toString(mCallCounts) + "]";
+    }
+
+    private static String toString(Map<String, int[]> callCounts) {
+        final StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, int[]> entry : callCounts.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue()[0]);
+        }
+        return sb.append('}').toString();
+    }
+
+    private void call(String method) {
+        mTotalCalls++;
+        int[] count = mCallCounts.get(method);
+        if (count == null) {
+            count = new int[1];
+            mCallCounts.put(method, count);
+        }
+        count[0]++;
+        if (mRecordCalls) {
+            mCallLog.add(method);
+        }
+    }
+
+    private void stateChange(String method) {
+        call(method);
+        mStateChanges++;
+    }
+
+    private void genNames(int n, int[] names, int offset) {
+        for (int i = 0; i < n; i++) {
+            names[offset + i] = mNextName++;
+        }
+    }
+
+    private int location(int program, String kind, String name) {
+        final String key = program + "/" + kind + "/" + name;
+        Integer location = mLocations.get(key);
+        if (location == null) {
+            // like GL, every program numbers its attributes and its uniforms from 0
+            final String countKey = program + "/" + kind;
+            final Integer count = mLocations.get(countKey);
+            location = count != null ? count : 0;
+            mLocations.put(countKey, location + 1);
+            mLocations.put(key, location);
+        }
+        return location;
+    }
+
+    private static int sizeInBytes(Buffer buffer) {
+        if (buffer == null) {
+            return 0;
+        }
+        if (buffer instanceof ByteBuffer) {
+            return buffer.remaining();
+        } else if (buffer instanceof ShortBuffer) {
+            return buffer.remaining() * 2;
+        } else if (buffer instanceof FloatBuffer || buffer instanceof IntBuffer) {
+            return buffer.remaining() * 4;
+        }
+        return buffer.remaining() * 8;
+    }
+
+    private void clientDraw(int count, int type, boolean clientIndices) {
+        mDrawCalls++;
+        // without buffer objects the driver has to copy whatever the draw reads, interleaved
+        // attributes share a buffer which is only copied once
+        if (clientIndices) {
+            mUploadedBytes += count * (type == GL_UNSIGNED_SHORT ? 2 : 1);
+        }
+        for (int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+            if (mClientAttribs[i] == null || isSharedWithPreviousAttrib(i)) {
+                continue;
+            }
+            int bytes = mClientAttribBytes[i];
+            for (int j = i + 1; j < MAX_VERTEX_ATTRIBS; j++) {
+                if (mClientAttribs[j] == mClientAttribs[i]) {
+                    bytes = Math.max(bytes, mClientAttribBytes[j]);
+                }
+            }
+            mUploadedBytes += bytes;
+        }
+    }
+
+    private boolean isSharedWithPreviousAttrib(int index) {
+        for (int i = 0; i < index; i++) {
+            if (mClientAttribs[i] == mClientAttribs[index]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        stateChange("glActiveTexture");
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        call("glAttachShader");
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        stateChange("glBindBuffer");
+        if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            mBoundElementArrayBuffer = buffer;
+        }
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        stateChange("glBindTexture");
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        call("glBufferData");
+        mUploadedBytes += size;
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        call("glBufferSubData");
+        mUploadedBytes += size;
+    }
+
+    @Override
+    public void glClear(int mask) {
+        call("glClear");
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        stateChange("glClearColor");
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        call("glCompileShader");
+    }
+
+    @Override
+    public int glCreateProgram() {
+        call("glCreateProgram");
+        return mNextName++;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        call("glCreateShader");
+        return mNextName++;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        call("glDeleteBuffers");
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        call("glDeleteProgram");
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        call("glDeleteShader");
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        call("glDeleteTextures");
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        stateChange("glDisableVertexAttribArray");
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, Buffer indices) {
+        call("glDrawElements");
+        clientDraw(count, type, true);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        call("glDrawElements");
+        clientDraw(count, type, mBoundElementArrayBuffer == 0);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        stateChange("glEnableVertexAttribArray");
+    }
+
+    @Override
+    public void glFinish() {
+        call("glFinish");
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        call("glGenBuffers");
+        genNames(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        call("glGenTextures");
+        genNames(n, textures, offset);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        call("glGetAttribLocation");
+        return location(program, "attrib", name);
+    }
+
+    @Override
+    public int glGetError() {
+        call("glGetError");
+        return GL_NO_ERROR;
+    }
+
+    @Override
+    public String glGetProgramInfoLog(int program) {
+        call("glGetProgramInfoLog");
+        return "";
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        call("glGetProgramiv");
+        params[offset] = GL_TRUE;
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader) {
+        call("glGetShaderInfoLog");
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        call("glGetShaderiv");
+        params[offset] = GL_TRUE;
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        call("glGetUniformLocation");
+        return location(program, "uniform", name);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        call("glLinkProgram");
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string) {
+        call("glShaderSource");
+    }
+
+    @Override
+    public void glTexParameterf(int target, int pname, float param) {
+        stateChange("glTexParameterf");
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        stateChange("glUniform1i");
+        mUploadedBytes += 4;
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        stateChange("glUniform2f");
+        mUploadedBytes += 2 * 4;
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        stateChange("glUniform4f");
+        mUploadedBytes += 4 * 4;
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                   int offset) {
+        stateChange("glUniformMatrix4fv");
+        mUploadedBytes += count * 16 * 4;
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        stateChange("glUseProgram");
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, Buffer ptr) {
+        stateChange("glVertexAttribPointer");
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            mClientAttribs[index] = ptr;
+            mClientAttribBytes[index] = sizeInBytes(ptr);
+        }
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, int offset) {
+        stateChange("glVertexAttribPointer");
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            mClientAttribs[index] = null;
+        }
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        stateChange("glViewport");
+    }
+}
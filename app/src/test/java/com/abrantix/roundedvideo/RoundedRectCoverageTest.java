@@ -0,0 +1,99 @@
+package com.abrantix.roundedvideo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RoundedRectCoverageTest {
+
+    private static final float WIDTH = 300f;
+    private static final float HEIGHT = 200f;
+    // topLeft, topRight, bottomRight, bottomLeft
+    private static final float TOP_LEFT = 10f;
+    private static final float TOP_RIGHT = 20f;
+    private static final float BOTTOM_RIGHT = 30f;
+    private static final float BOTTOM_LEFT = 0f;
+    private static final float SQRT_2 = (float) Math.sqrt(2.0);
+
+    @Test
+    public void interiorIsCovered() {
+        assertEquals(1f, coverage(WIDTH / 2f, HEIGHT / 2f), 0f);
+        assertEquals(1f, coverage(1.5f, HEIGHT / 2f), 0f);
+        assertEquals(1f, coverage(WIDTH / 2f, HEIGHT - 1.5f), 0f);
+    }
+
+    @Test
+    public void exteriorIsNotCovered() {
+        assertEquals(0f, coverage(-1f, HEIGHT / 2f), 0f);
+        assertEquals(0f, coverage(WIDTH / 2f, HEIGHT + 1f), 0f);
+        // past the arc, but within the bounds of the rect
+        assertEquals(0f, coverage(0.5f, 0.5f), 0f);
+    }
+
+    @Test
+    public void edgesAreHalfCovered() {
+        assertEquals(0.5f, coverage(0f, HEIGHT / 2f), 0f);
+        assertEquals(0.5f, coverage(WIDTH, HEIGHT / 2f), 0f);
+        assertEquals(0.5f, coverage(WIDTH / 2f, 0f), 0f);
+        assertEquals(0.5f, coverage(WIDTH / 2f, HEIGHT), 0f);
+        // on the arc of the top right corner, halfway
+        final float offset = TOP_RIGHT - TOP_RIGHT / SQRT_2;
+        assertEquals(0.5f, coverage(WIDTH - offset, offset), 1e-4f);
+    }
+
+    @Test
+    public void eachCornerHasItsRadius() {
+        // a corner point is r * (sqrt(2) - 1) away from its arc
+        assertEquals(TOP_LEFT * (SQRT_2 - 1f), distance(0f, 0f), 1e-4f);
+        assertEquals(TOP_RIGHT * (SQRT_2 - 1f), distance(WIDTH, 0f), 1e-4f);
+        assertEquals(BOTTOM_RIGHT * (SQRT_2 - 1f), distance(WIDTH, HEIGHT), 1e-4f);
+        assertEquals(0f, distance(0f, HEIGHT), 1e-4f);
+    }
+
+    @Test
+    public void clampsTheRadiusToHalfTheShortestSide() {
+        assertEquals(100f, RoundedRectCoverage.clampRadius(500f, WIDTH, HEIGHT), 0f);
+        assertEquals(100f, RoundedRectCoverage.clampRadius(500f, HEIGHT, WIDTH), 0f);
+        assertEquals(20f, RoundedRectCoverage.clampRadius(20f, WIDTH, HEIGHT), 0f);
+        assertEquals(0f, RoundedRectCoverage.clampRadius(-5f, WIDTH, HEIGHT), 0f);
+        // an oversized radius rounds like the clamped one
+        assertEquals(100f * (SQRT_2 - 1f),
+                RoundedRectCoverage.signedDistance(0f, 0f, WIDTH, HEIGHT, 500f, 0f, 0f, 0f),
+                1e-3f);
+        // the left and right ends of a pill meet in the middle
+        assertTrue(RoundedRectCoverage.signedDistance(WIDTH / 2f, HEIGHT / 2f, WIDTH, HEIGHT,
+                500f, 500f, 500f, 500f) < 0f);
+    }
+
+    /**
+     * The Java version is only worth something while it computes what the shader does, so this
+     * breaks whenever the SDF of the fragment shader changes without it.
+     */
+    @Test
+    public void mirrorsTheFragmentShader() {
+        final String shader = VideoProgram.FRAGMENT_SHADER;
+        assertContains(shader, "float r = p.x < 0.0 ? (p.y < 0.0 ? uRadii.x : uRadii.w)\n" +
+                "                      : (p.y < 0.0 ? uRadii.y : uRadii.z);\n");
+        assertContains(shader, "vec2 q = abs(p) - vHalfSize + r;\n");
+        assertContains(shader, "float d = min(max(q.x, q.y), 0.0) + length(max(q, 0.0)) - r;\n");
+        assertContains(shader, "float coverage = clamp(0.5 - d, 0.0, 1.0);\n");
+        // y grows downwards from the center, so p.y < 0 is the top
+        assertContains(VideoProgram.VERTEX_SHADER,
+                "vPosition = vec2(textureCoord.x - 0.5, 0.5 - textureCoord.y) * uSize;\n");
+    }
+
+    private static void assertContains(String shader, String line) {
+        assertTrue(line, shader.contains(line));
+    }
+
+    private static float coverage(float x, float y) {
+        return RoundedRectCoverage.coverage(x, y, WIDTH, HEIGHT, TOP_LEFT, TOP_RIGHT,
+                BOTTOM_RIGHT, BOTTOM_LEFT);
+    }
+
+    private static float distance(float x, float y) {
+        return RoundedRectCoverage.signedDistance(x, y, WIDTH, HEIGHT, TOP_LEFT, TOP_RIGHT,
+                BOTTOM_RIGHT, BOTTOM_LEFT);
+    }
+}
@@ -0,0 +1,79 @@
+package com.abrantix.roundedvideo;
+
+import android.opengl.GLSurfaceView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SharedRenderThreadTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test
+    public void oneInstancePerPolicy() {
+        final EGLConfigPolicy policy = new EGLConfigPolicy(EGLConfigPolicy.TRANSLUCENT
+                .getPixelFormat(), 0, 0);
+        assertSame(SharedRenderThread.getInstance(policy),
+                SharedRenderThread.getInstance(policy));
+    }
+
+    @Test
+    public void threadOnlyRunsWhileThereIsWork() throws InterruptedException {
+        final SharedRenderThread renderThread = SharedRenderThread.getInstance(
+                new EGLConfigPolicy(EGLConfigPolicy.TRANSLUCENT.getPixelFormat(), 0, 16));
+        final Thread first = runEvent(renderThread);
+        // no view has a surface, so it's done once the event ran
+        first.join(TIMEOUT_MILLIS);
+        assertFalse(first.isAlive());
+
+        final Thread second = runEvent(renderThread);
+        assertNotSame(first, second);
+        second.join(TIMEOUT_MILLIS);
+        assertFalse(second.isAlive());
+    }
+
+    @Test
+    public void sharedViewsOnlyRenderWhenDirty() {
+        final VideoSurfaceView view = new VideoSurfaceView(RuntimeEnvironment.application,
+                EGLConfigPolicy.TRANSLUCENT, true);
+        assertEquals(GLSurfaceView.RENDERMODE_WHEN_DIRTY, view.getRenderMode());
+        view.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        assertEquals(GLSurfaceView.RENDERMODE_WHEN_DIRTY, view.getRenderMode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sharedViewsCantRenderContinuously() {
+        new VideoSurfaceView(RuntimeEnvironment.application, EGLConfigPolicy.TRANSLUCENT, true)
+                .setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+    }
+
+    /**
+     * @return the thread the event ran on.
+     */
+    private static Thread runEvent(SharedRenderThread renderThread)
+            throws InterruptedException {
+        final Thread[] thread = new Thread[1];
+        final CountDownLatch ran = new CountDownLatch(1);
+        renderThread.queueEvent(new Runnable() {
+            public void run() {
+                thread[0] = Thread.currentThread();
+                ran.countDown();
+            }});
+        assertTrue(ran.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        return thread[0];
+    }
+}
@@ -0,0 +1,123 @@
+package com.abrantix.roundedvideo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TripleBufferTest {
+
+    private Slot[] mSlots;
+    private TripleBuffer<Slot> mBuffer;
+
+    @Before
+    public void setUp() {
+        mSlots = new Slot[] {new Slot(), new Slot(), new Slot()};
+        mBuffer = new TripleBuffer<Slot>(mSlots);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsThreeSlots() {
+        new TripleBuffer<Slot>(new Slot[] {new Slot(), new Slot()});
+    }
+
+    @Test
+    public void swapWithoutPublishKeepsTheFront() {
+        assertSame(mSlots[0], mBuffer.getFront());
+        assertFalse(mBuffer.swap());
+        assertSame(mSlots[0], mBuffer.getFront());
+    }
+
+    @Test
+    public void swapInThePublishedSlot() {
+        final Slot back = mBuffer.getBack();
+        back.mSequence = 1;
+        mBuffer.publish();
+        assertTrue(mBuffer.swap());
+        assertSame(back, mBuffer.getFront());
+        // only once
+        assertFalse(mBuffer.swap());
+        assertSame(back, mBuffer.getFront());
+    }
+
+    @Test
+    public void swapSkipsOlderPublishedSlots() {
+        mBuffer.getBack().mSequence = 1;
+        mBuffer.publish();
+        final Slot newest = mBuffer.getBack();
+        newest.mSequence = 2;
+        mBuffer.publish();
+        assertTrue(mBuffer.swap());
+        assertSame(newest, mBuffer.getFront());
+        assertEquals(2, mBuffer.getFront().mSequence);
+        assertFalse(mBuffer.swap());
+    }
+
+    @Test
+    public void frontAndBackNeverAlias() {
+        // every mix of 8 publishes and swaps
+        for (int steps = 0; steps < 1 << 8; steps++) {
+            setUp();
+            for (int i = 0; i < 8; i++) {
+                if ((steps & (1 << i)) != 0) {
+                    mBuffer.publish();
+                } else {
+                    mBuffer.swap();
+                }
+                assertNotSame("steps " + Integer.toBinaryString(steps), mBuffer.getFront(),
+                        mBuffer.getBack());
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void consumerNeverSeesASlotBeingWritten() throws InterruptedException {
+        final int frames = 200000;
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int sequence = 1; sequence <= frames; sequence++) {
+                    final Slot back = mBuffer.getBack();
+                    back.mWriting = true;
+                    back.mSequence = sequence;
+                    back.mCheck = -sequence;
+                    back.mWriting = false;
+                    mBuffer.publish();
+                }
+            }
+        });
+        producer.start();
+
+        int lastSequence = 0;
+        while (lastSequence < frames && failure.get() == null) {
+            mBuffer.swap();
+            final Slot front = mBuffer.getFront();
+            final int sequence = front.mSequence;
+            if (front.mWriting) {
+                failure.set("read slot " + sequence + " while it was written");
+            } else if (front.mCheck != -sequence) {
+                failure.set("slot " + sequence + " half written");
+            } else if (sequence < lastSequence) {
+                failure.set("went back from " + lastSequence + " to " + sequence);
+            } else if (front.mSequence != sequence) {
+                failure.set("slot " + sequence + " changed while held");
+            }
+            lastSequence = sequence;
+        }
+        producer.join();
+        assertNull(failure.get(), failure.get());
+    }
+
+    private static final class Slot {
+        volatile boolean mWriting;
+        int mSequence;
+        int mCheck;
+    }
+}
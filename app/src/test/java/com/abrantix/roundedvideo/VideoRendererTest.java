@@ -0,0 +1,162 @@
+package com.abrantix.roundedvideo;
+
+import android.graphics.RectF;
+import android.opengl.GLSurfaceView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the render path of {@link VideoRenderer} through a {@link RecordingGLBackend}, the
+ * way the GL thread of {@link VideoSurfaceView} does, and checks the GL work of each step.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class VideoRendererTest {
+
+    private RecordingGLBackend mGL;
+    private VideoRenderer mRenderer;
+
+    @Before
+    public void setUp() {
+        mGL = new RecordingGLBackend();
+        mRenderer = new VideoRenderer(new GLSurfaceView(RuntimeEnvironment.application), mGL,
+                new GLRoundedGeometry(), new RectF(-1, 1, 1, -1));
+        mRenderer.setCornerRadius(16, 16, 16, 16);
+        mRenderer.onSurfaceCreated(null, null);
+        mRenderer.onSurfaceChanged(null, 300, 200);
+    }
+
+    @Test
+    public void surfaceCreatedBuildsTheProgramAndTexture() {
+        mGL.reset();
+        mRenderer.onSurfaceCreated(null, null);
+        assertEquals(1, mGL.getCallCount("glLinkProgram"));
+        assertEquals(1, mGL.getCallCount("glGenTextures"));
+        assertEquals(0, mGL.getDrawCallCount());
+    }
+
+    @Test
+    public void firstFrameUploadsAndDrawsOnce() {
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(1, mGL.getDrawCallCount());
+        assertEquals(1, mGL.getCallCount("glClear"));
+        assertEquals(1, mGL.getCallCount("glFinish"));
+        // the vertices and indices go to buffer objects once
+        assertEquals(1, mGL.getCallCount("glGenBuffers"));
+        assertEquals(2, mGL.getCallCount("glBufferData"));
+        assertTrue(mGL.getUploadedBytes() > 0);
+    }
+
+    @Test
+    public void steadyStateFrameOnlyClearsDrawsAndFinishes() {
+        final GLStateCache cache = mRenderer.getGLStateCache();
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(22, mGL.getTotalCallCount());
+
+        mGL.reset();
+        cache.resetElidedCallCounts();
+        mRenderer.onDrawFrame(null);
+        assertEquals(4, mGL.getTotalCallCount());
+        assertEquals(1, mGL.getCallCount("glClear"));
+        assertEquals(1, mGL.getCallCount("glDrawElements"));
+        assertEquals(1, mGL.getCallCount("glFinish"));
+        assertEquals(1, mGL.getCallCount("glGetError"));
+        assertEquals(0, mGL.getStateChangeCount());
+        assertEquals(0, mGL.getUploadedBytes());
+        // the state set again every frame, dropped by the cache
+        assertEquals(12, cache.getElidedCallCount());
+        assertEquals(1, cache.getElidedCallCount("glUseProgram"));
+        assertEquals(1, cache.getElidedCallCount("glActiveTexture"));
+        assertEquals(1, cache.getElidedCallCount("glBindTexture"));
+        assertEquals(2, cache.getElidedCallCount("glBindBuffer"));
+        assertEquals(2, cache.getElidedCallCount("glEnableVertexAttribArray"));
+        assertEquals(2, cache.getElidedCallCount("glVertexAttribPointer"));
+        assertEquals(2, cache.getElidedCallCount("glUniformMatrix4fv"));
+        assertEquals(1, cache.getElidedCallCount("glClearColor"));
+    }
+
+    @Test
+    public void newContextSetsTheStateAgain() {
+        mRenderer.onDrawFrame(null);
+        mRenderer.onSurfaceCreated(null, null);
+        mGL.reset();
+        mRenderer.onDrawFrame(null);
+        assertEquals(1, mGL.getCallCount("glUseProgram"));
+        assertEquals(1, mGL.getCallCount("glBindTexture"));
+        assertEquals(2, mGL.getCallCount("glBufferData"));
+    }
+
+    @Test
+    public void sdfRadiiAreClampedLikeTheCoverage() {
+        final float[] radii = new float[4];
+        final float[] size = new float[2];
+        final RecordingGLBackend gl = new RecordingGLBackend() {
+            @Override
+            public void glUniform2f(int location, float x, float y) {
+                super.glUniform2f(location, x, y);
+                size[0] = x;
+                size[1] = y;
+            }
+
+            @Override
+            public void glUniform4f(int location, float x, float y, float z, float w) {
+                super.glUniform4f(location, x, y, z, w);
+                radii[0] = x;
+                radii[1] = y;
+                radii[2] = z;
+                radii[3] = w;
+            }
+        };
+        final VideoRenderer renderer = new VideoRenderer(
+                new GLSurfaceView(RuntimeEnvironment.application), gl, new GLRoundedGeometry(),
+                new RectF(-1, 1, 1, -1));
+        renderer.setRoundingMode(VideoSurfaceView.ROUNDING_SDF);
+        renderer.setCornerRadius(500, 40, -5, 0);
+        renderer.onSurfaceCreated(null, null);
+        renderer.onSurfaceChanged(null, 300, 200);
+        renderer.onDrawFrame(null);
+        assertEquals(300f, size[0], 0f);
+        assertEquals(200f, size[1], 0f);
+        assertEquals(RoundedRectCoverage.clampRadius(500, 300, 200), radii[0], 0f);
+        assertEquals(100f, radii[0], 0f);
+        assertEquals(40f, radii[1], 0f);
+        assertEquals(0f, radii[2], 0f);
+        assertEquals(0f, radii[3], 0f);
+    }
+
+    @Test
+    public void releaseDeletesTheGLObjects() {
+        mRenderer.onDrawFrame(null);
+        mGL.reset();
+        mRenderer.release();
+        assertEquals(1, mGL.getCallCount("glDeleteTextures"));
+        assertEquals(1, mGL.getCallCount("glDeleteBuffers"));
+        assertEquals(0, mGL.getDrawCallCount());
+    }
+
+    @Test
+    public void releaseWithoutContextOnlyForgetsTheGLObjects() {
+        mRenderer.onDrawFrame(null);
+        mGL.reset();
+        mRenderer.releaseWithoutContext();
+        assertEquals(0, mGL.getTotalCallCount());
+
+        // a new context gets all of them again
+        mRenderer.onSurfaceCreated(null, null);
+        mRenderer.onSurfaceChanged(null, 300, 200);
+        mRenderer.onDrawFrame(null);
+        assertEquals(1, mGL.getCallCount("glGenTextures"));
+        assertEquals(1, mGL.getCallCount("glGenBuffers"));
+        assertEquals(1, mGL.getDrawCallCount());
+    }
+}
@@ -0,0 +1,111 @@
+package com.abrantix.roundedvideo.geometry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long {@link RoundedGeometry#generateVertexData} takes, and how much it allocates, across
+ * corner radii, view port sizes, tessellation levels and topologies. Run with
+ * ./gradlew :geometry:jmh, which adds the gc profiler for the bytes allocated per operation.
+ *
+ * The array and buffer variants are what the renderers call on every radius or size change and
+ * must not allocate at all, the allocating one is what a cache miss of GLRoundedGeometryCache
+ * costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoundedGeometryBenchmark {
+
+    @Param({"0", "8", "32", "128"})
+    public float radius;
+
+    @Param({"320x180", "1080x1920"})
+    public String viewPort;
+
+    /**
+     * "auto" derives the triangles of each corner from its radius, otherwise it's the fixed
+     * amount of triangles per corner.
+     */
+    @Param({"auto", "8", "64"})
+    public String tessellation;
+
+    @Param({"0", "1"})
+    public int topology;
+
+    private final RoundedGeometry mGeometry = new RoundedGeometry();
+    private final Corners mRadii = new Corners();
+    private final Bounds mViewPortGLBounds = new Bounds(-1f, 1f, 1f, -1f);
+    private int mWidth;
+    private int mHeight;
+    private float[] mVertexArray;
+    private short[] mIndexArray;
+    private FloatBuffer mVertexBuffer;
+    private ShortBuffer mIndexBuffer;
+
+    @Setup
+    public void setUp() {
+        final int separator = viewPort.indexOf('x');
+        mWidth = Integer.parseInt(viewPort.substring(0, separator));
+        mHeight = Integer.parseInt(viewPort.substring(separator + 1));
+        if (!"auto".equals(tessellation)) {
+            mGeometry.setTrianglesPerCorner(Integer.parseInt(tessellation));
+        }
+        mGeometry.setTopology(topology);
+        // different radii so that the corners don't all take the same path
+        mRadii.set(radius, radius / 2f, radius, radius * 1.5f);
+
+        final int verticesSize = mGeometry.getVertexFloatCount(mRadii);
+        final int indicesSize = mGeometry.getIndexCount(mRadii);
+        mVertexArray = new float[verticesSize];
+        mIndexArray = new short[indicesSize];
+        mVertexBuffer = ByteBuffer.allocateDirect(verticesSize * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mIndexBuffer = ByteBuffer.allocateDirect(indicesSize * 2)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+    }
+
+    @Benchmark
+    public RoundedGeometry.GeometryArrays generateAllocating() {
+        return mGeometry.generateVertexData(mRadii, mViewPortGLBounds, mWidth, mHeight, 0f);
+    }
+
+    @Benchmark
+    public float[] generateIntoArrays() {
+        mGeometry.generateVertexData(mRadii, mViewPortGLBounds, mWidth, mHeight, 0f,
+                mVertexArray, 0, mIndexArray, 0);
+        return mVertexArray;
+    }
+
+    @Benchmark
+    public FloatBuffer generateIntoDirectBuffers() {
+        mVertexBuffer.clear();
+        mIndexBuffer.clear();
+        mGeometry.generateVertexData(mRadii, mViewPortGLBounds, mWidth, mHeight, 0f,
+                mVertexBuffer, mIndexBuffer);
+        return mVertexBuffer;
+    }
+
+    @Benchmark
+    public int countOnly() {
+        return mGeometry.getVertexFloatCount(mRadii) + mGeometry.getIndexCount(mRadii);
+    }
+}
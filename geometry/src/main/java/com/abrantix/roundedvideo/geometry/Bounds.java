@@ -0,0 +1,39 @@
+package com.abrantix.roundedvideo.geometry;
+
+/**
+ * The edges of a rect, like Android's RectF. In GL units top is usually bigger than bottom, so
+ * the height is negative.
+ */
+public final class Bounds {
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    public Bounds() {
+    }
+
+    public Bounds(float left, float top, float right, float bottom) {
+        set(left, top, right, bottom);
+    }
+
+    public void set(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public float width() {
+        return right - left;
+    }
+
+    public float height() {
+        return bottom - top;
+    }
+
+    @Override
+    public String toString() {
+        return "Bounds(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
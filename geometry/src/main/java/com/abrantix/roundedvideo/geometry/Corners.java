@@ -0,0 +1,31 @@
+package com.abrantix.roundedvideo.geometry;
+
+/**
+ * The radius of each corner of a rounded rect, in pixels.
+ */
+public final class Corners {
+    public float topLeft;
+    public float topRight;
+    public float bottomRight;
+    public float bottomLeft;
+
+    public Corners() {
+    }
+
+    public Corners(float topLeft, float topRight, float bottomRight, float bottomLeft) {
+        set(topLeft, topRight, bottomRight, bottomLeft);
+    }
+
+    public void set(float topLeft, float topRight, float bottomRight, float bottomLeft) {
+        this.topLeft = topLeft;
+        this.topRight = topRight;
+        this.bottomRight = bottomRight;
+        this.bottomLeft = bottomLeft;
+    }
+
+    @Override
+    public String toString() {
+        return "Corners(" + topLeft + ", " + topRight + ", " + bottomRight + ", " + bottomLeft +
+                ")";
+    }
+}
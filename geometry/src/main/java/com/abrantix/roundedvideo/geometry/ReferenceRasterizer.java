@@ -0,0 +1,354 @@
+package com.abrantix.roundedvideo.geometry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Software rasterizer that renders the meshes of {@link RoundedGeometry} into a coverage bitmap,
+ * so the error of a tessellation can be measured against the true rounded rect without a GPU.
+ *
+ * Every pixel is split in samplesPerAxis * samplesPerAxis cells with a sample at a fixed pseudo
+ * random spot of each, and its coverage is the fraction of samples inside the shape. Jittering
+ * the samples keeps edges nearly parallel to the grid from flipping whole rows of samples at
+ * once, so coverage differences follow the area between the outlines. The same samples are used
+ * for {@link #drawMesh} and {@link #drawRoundedRect}, so comparing the two only shows where the
+ * triangles leave the arcs. Coverage is still only resolved to a sample though, a difference of
+ * a couple of samples can be a sliver much thinner than a sample that happens to hold them.
+ * Samples on an edge shared by two triangles count once.
+ *
+ * The bitmap is a window of the view port, in pixels with y growing downwards, so a single
+ * corner can be scored without rasterizing the whole view.
+ */
+public final class ReferenceRasterizer {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mSamplesPerAxis;
+    private final int mSamplesWidth;
+    private final int mSamplesHeight;
+    // a bit per sample, row by row
+    private final long[] mSamples;
+    private int mWindowX;
+    private int mWindowY;
+    // the x extent of the triangle being filled within the current sample row
+    private double mBandMinX;
+    private double mBandMaxX;
+
+    /**
+     * @param width the width of the bitmap in pixels.
+     * @param height the height of the bitmap in pixels.
+     * @param samplesPerAxis the amount of samples of each pixel on each axis, 32 resolves
+     *                       coverage differences down to 1 / 1024.
+     */
+    public ReferenceRasterizer(int width, int height, int samplesPerAxis) {
+        if (width < 1 || height < 1 || samplesPerAxis < 1) {
+            throw new IllegalArgumentException("The bitmap needs at least one sample");
+        }
+        mWidth = width;
+        mHeight = height;
+        mSamplesPerAxis = samplesPerAxis;
+        mSamplesWidth = width * samplesPerAxis;
+        mSamplesHeight = height * samplesPerAxis;
+        mSamples = new long[(int) (((long) mSamplesWidth * mSamplesHeight + 63) / 64)];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Clears the bitmap and places it in the view port.
+     *
+     * @param windowX the x of the left edge of the bitmap in the view port, in pixels.
+     * @param windowY the y of the top edge of the bitmap in the view port, in pixels.
+     */
+    public void reset(int windowX, int windowY) {
+        Arrays.fill(mSamples, 0L);
+        mWindowX = windowX;
+        mWindowY = windowY;
+    }
+
+    /**
+     * Rasterizes a mesh generated by {@link RoundedGeometry}, or any mesh laid out the same way.
+     *
+     * @param mesh the vertices (xyz + uv, in GL units) and indices.
+     * @param topology how the indices are laid out, either
+     *                 {@link RoundedGeometry#TOPOLOGY_TRIANGLES} or
+     *                 {@link RoundedGeometry#TOPOLOGY_TRIANGLE_FAN}.
+     * @param viewPortGLBounds the bounds of the GL viewport the mesh was generated for.
+     * @param viewPortPxWidth the width of the view port in pixels.
+     * @param viewPortPxHeight the height of the view port in pixels.
+     */
+    public void drawMesh(RoundedGeometry.GeometryArrays mesh, int topology,
+                         Bounds viewPortGLBounds, int viewPortPxWidth, int viewPortPxHeight) {
+        final float[] vertices = mesh.triangleVertices;
+        final short[] indices = mesh.triangleIndices;
+        // GL units to window pixels, y down
+        final double scaleX = viewPortPxWidth / (double) viewPortGLBounds.width();
+        final double scaleY = viewPortPxHeight / (double) viewPortGLBounds.height();
+        final double offsetX = -viewPortGLBounds.left * scaleX - mWindowX;
+        final double offsetY = -viewPortGLBounds.top * scaleY - mWindowY;
+
+        final int triangles = topology == RoundedGeometry.TOPOLOGY_TRIANGLE_FAN ?
+                indices.length - 2 : indices.length / 3;
+        for (int t = 0; t < triangles; t++) {
+            final int i0;
+            final int i1;
+            final int i2;
+            if (topology == RoundedGeometry.TOPOLOGY_TRIANGLE_FAN) {
+                i0 = indices[0];
+                i1 = indices[t + 1];
+                i2 = indices[t + 2];
+            } else {
+                i0 = indices[t * 3];
+                i1 = indices[t * 3 + 1];
+                i2 = indices[t * 3 + 2];
+            }
+            final int v0 = i0 * RoundedGeometry.FLOATS_PER_VERTEX;
+            final int v1 = i1 * RoundedGeometry.FLOATS_PER_VERTEX;
+            final int v2 = i2 * RoundedGeometry.FLOATS_PER_VERTEX;
+            fillTriangle(
+                    vertices[v0] * scaleX + offsetX, vertices[v0 + 1] * scaleY + offsetY,
+                    vertices[v1] * scaleX + offsetX, vertices[v1 + 1] * scaleY + offsetY,
+                    vertices[v2] * scaleX + offsetX, vertices[v2 + 1] * scaleY + offsetY);
+        }
+    }
+
+    /**
+     * Rasterizes the true rounded rect covering the whole view port, sampling the exact arcs.
+     * Radii are not clamped, like {@link RoundedGeometry} doesn't, so they must fit the view port.
+     *
+     * @param radii the corner radius of each corner, in pixels.
+     * @param viewPortPxWidth the width of the view port in pixels.
+     * @param viewPortPxHeight the height of the view port in pixels.
+     */
+    public void drawRoundedRect(Corners radii, int viewPortPxWidth, int viewPortPxHeight) {
+        final double halfWidth = viewPortPxWidth * 0.5;
+        final double halfHeight = viewPortPxHeight * 0.5;
+        for (int sy = 0; sy < mSamplesHeight; sy++) {
+            for (int sx = 0; sx < mSamplesWidth; sx++) {
+                final double px = mWindowX + getSampleX(sx, sy) - halfWidth;
+                final double py = mWindowY + getSampleY(sx, sy) - halfHeight;
+                final double radius;
+                if (px < 0) {
+                    radius = py < 0 ? radii.topLeft : radii.bottomLeft;
+                } else {
+                    radius = py < 0 ? radii.topRight : radii.bottomRight;
+                }
+                // offset from the center of the corner arc, inside the rect when not positive
+                final double qx = Math.abs(px) - halfWidth + radius;
+                final double qy = Math.abs(py) - halfHeight + radius;
+                final boolean inside;
+                if (qx > 0 && qy > 0) {
+                    inside = qx * qx + qy * qy <= radius * radius;
+                } else {
+                    inside = qx <= radius && qy <= radius;
+                }
+                if (inside) {
+                    set(sy * mSamplesWidth + sx);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the fraction of the samples of the pixel that are covered, from 0 to 1.
+     */
+    public float getCoverage(int x, int y) {
+        int covered = 0;
+        for (int j = 0; j < mSamplesPerAxis; j++) {
+            final int row = (y * mSamplesPerAxis + j) * mSamplesWidth + x * mSamplesPerAxis;
+            for (int i = 0; i < mSamplesPerAxis; i++) {
+                if (get(row + i)) {
+                    covered++;
+                }
+            }
+        }
+        return covered / (float) (mSamplesPerAxis * mSamplesPerAxis);
+    }
+
+    /**
+     * Compares the coverage of two bitmaps of the same size, usually a mesh against the true
+     * rounded rect.
+     *
+     * @return the coverage differences, in fractions of a pixel.
+     */
+    public static Score compare(ReferenceRasterizer a, ReferenceRasterizer b) {
+        if (a.mWidth != b.mWidth || a.mHeight != b.mHeight) {
+            throw new IllegalArgumentException("The bitmaps must have the same size");
+        }
+        final Score score = new Score();
+        double errorSum = 0;
+        for (int y = 0; y < a.mHeight; y++) {
+            for (int x = 0; x < a.mWidth; x++) {
+                final float coverageA = a.getCoverage(x, y);
+                final float coverageB = b.getCoverage(x, y);
+                final float error = Math.abs(coverageA - coverageB);
+                // pixels crossed by either outline, the only ones tessellation can change
+                if (error > 0f || (coverageA > 0f && coverageA < 1f) ||
+                        (coverageB > 0f && coverageB < 1f)) {
+                    score.edgePixels++;
+                    errorSum += error;
+                }
+                if (error > score.maxError) {
+                    score.maxError = error;
+                }
+                if (error * 255f >= 1f) {
+                    score.visiblePixels++;
+                }
+            }
+        }
+        score.meanError = score.edgePixels == 0 ? 0f : (float) (errorSum / score.edgePixels);
+        return score;
+    }
+
+    /**
+     * Writes the coverage as a binary 8 bit PGM image, white being fully covered, e.g. to keep
+     * a golden image of a configuration or look at where two bitmaps differ.
+     */
+    public void writePgm(OutputStream out) throws IOException {
+        out.write(("P5\n" + mWidth + " " + mHeight + "\n255\n").getBytes("US-ASCII"));
+        final byte[] row = new byte[mWidth];
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                row[x] = (byte) Math.round(getCoverage(x, y) * 255f);
+            }
+            out.write(row);
+        }
+    }
+
+    /**
+     * Marks the samples inside the triangle, whatever its winding. Samples exactly on an edge
+     * are inside, which is fine since marking a sample twice doesn't count it twice.
+     */
+    private void fillTriangle(double x0, double y0, double x1, double y1, double x2,
+                              double y2) {
+        final double area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (area == 0) {
+            return;
+        }
+        final double sign = area > 0 ? 1 : -1;
+        final int n = mSamplesPerAxis;
+        // sample (sx, sy) is somewhere in [sx / n, (sx + 1) / n) x [sy / n, (sy + 1) / n)
+        final int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2)) * n));
+        final int maxY = Math.min(mSamplesHeight - 1,
+                (int) Math.floor(Math.max(y0, Math.max(y1, y2)) * n));
+        for (int sy = minY; sy <= maxY; sy++) {
+            // only test the samples the triangle can reach within the band of this row, long
+            // thin triangles would waste most of their bounding box otherwise
+            final double bandTop = sy / (double) n;
+            final double bandBottom = (sy + 1) / (double) n;
+            mBandMinX = Double.POSITIVE_INFINITY;
+            mBandMaxX = Double.NEGATIVE_INFINITY;
+            addBandExtent(x0, y0, x1, y1, bandTop, bandBottom);
+            addBandExtent(x1, y1, x2, y2, bandTop, bandBottom);
+            addBandExtent(x2, y2, x0, y0, bandTop, bandBottom);
+            if (mBandMinX > mBandMaxX) {
+                continue;
+            }
+            final int minX = Math.max(0, (int) Math.floor(mBandMinX * n));
+            final int maxX = Math.min(mSamplesWidth - 1, (int) Math.floor(mBandMaxX * n));
+            for (int sx = minX; sx <= maxX; sx++) {
+                final double px = getSampleX(sx, sy);
+                final double py = getSampleY(sx, sy);
+                final double e0 = ((x1 - x0) * (py - y0) - (y1 - y0) * (px - x0)) * sign;
+                final double e1 = ((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1)) * sign;
+                final double e2 = ((x0 - x2) * (py - y2) - (y0 - y2) * (px - x2)) * sign;
+                if (e0 >= 0 && e1 >= 0 && e2 >= 0) {
+                    set(sy * mSamplesWidth + sx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Grows mBandMinX and mBandMaxX to the part of the edge from (xa, ya) to (xb, yb) that lies
+     * between the two given y.
+     */
+    private void addBandExtent(double xa, double ya, double xb, double yb, double bandTop,
+                               double bandBottom) {
+        final double top = Math.max(bandTop, Math.min(ya, yb));
+        final double bottom = Math.min(bandBottom, Math.max(ya, yb));
+        if (top > bottom) {
+            return;
+        }
+        double xTop = xa;
+        double xBottom = xb;
+        if (ya != yb) {
+            final double slope = (xb - xa) / (yb - ya);
+            xTop = xa + (top - ya) * slope;
+            xBottom = xa + (bottom - ya) * slope;
+        }
+        mBandMinX = Math.min(mBandMinX, Math.min(xTop, xBottom));
+        mBandMaxX = Math.max(mBandMaxX, Math.max(xTop, xBottom));
+    }
+
+    private void set(int sample) {
+        mSamples[sample >>> 6] |= 1L << sample;
+    }
+
+    private boolean get(int sample) {
+        return (mSamples[sample >>> 6] & (1L << sample)) != 0;
+    }
+
+    /**
+     * @return the x of a sample, in window pixels.
+     */
+    private double getSampleX(int sx, int sy) {
+        return (sx + jitter(sx, sy, 0)) / mSamplesPerAxis;
+    }
+
+    /**
+     * @return the y of a sample, in window pixels.
+     */
+    private double getSampleY(int sx, int sy) {
+        return (sy + jitter(sx, sy, 1)) / mSamplesPerAxis;
+    }
+
+    /**
+     * @return a pseudo random number in [0, 1) that only depends on its arguments, so every
+     * drawing uses the very same samples.
+     */
+    private static double jitter(int sx, int sy, int axis) {
+        int hash = sx * 0x9E3779B1 + sy * 0x85EBCA77 + axis * 0xC2B2AE3D;
+        hash ^= hash >>> 15;
+        hash *= 0x2C1B3C6D;
+        hash ^= hash >>> 12;
+        hash *= 0x297A2D39;
+        hash ^= hash >>> 15;
+        return (hash >>> 8) / (double) (1 << 24);
+    }
+
+    /**
+     * How far the coverage of two bitmaps is apart.
+     */
+    public static final class Score {
+        /**
+         * The biggest coverage difference of a single pixel, in fractions of a pixel.
+         */
+        public float maxError;
+        /**
+         * The mean coverage difference over the edge pixels.
+         */
+        public float meanError;
+        /**
+         * The pixels crossed by either outline or that differ.
+         */
+        public int edgePixels;
+        /**
+         * The pixels that differ by at least one level of 8 bit alpha.
+         */
+        public int visiblePixels;
+
+        @Override
+        public String toString() {
+            return "Score[max=" + maxError + ", mean=" + meanError + ", edgePixels=" +
+                    edgePixels + ", visiblePixels=" + visiblePixels + "]";
+        }
+    }
+}
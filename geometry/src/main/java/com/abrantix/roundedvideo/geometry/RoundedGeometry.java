@@ -0,0 +1,731 @@
+package com.abrantix.roundedvideo.geometry;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Generates the mesh of a rounded rect, made of triangles in GL coordinates with texture
+ * coordinates to map a video frame on it.
+ *
+ * Plain Java, without any Android dependency, so the hot path of every renderer can be tested and
+ * benchmarked on a regular JVM. The Android side adapts its RectF and Point to {@link Corners},
+ * {@link Bounds} and sizes in pixels.
+ */
+public class RoundedGeometry {
+
+    /**
+     * The maximum distance, in pixels, allowed by default between the true arc of a rounded
+     * corner and the triangles used to draw it.
+     */
+    public static final float DEFAULT_MAX_CHORD_ERROR_PX = 0.5f;
+
+    /**
+     * Upper bound for the amount of triangles used to draw a single rounded corner.
+     */
+    public static final int MAX_TRIANGLES_PER_CORNER = 64;
+
+    /**
+     * The geometry is an indexed list of independent triangles: the inner rect, the 4 side rects
+     * and a triangle fan for each corner. Every vertex is shared by all the triangles touching it.
+     * Draw it with GL_TRIANGLES.
+     */
+    public static final int TOPOLOGY_TRIANGLES = 0;
+
+    /**
+     * The geometry is a single triangle fan starting at the center of the view port and sweeping
+     * along the whole outline, which works since a rounded rect is convex. This takes fewer
+     * vertices and indices than {@link #TOPOLOGY_TRIANGLES} but yields long thin triangles.
+     * Draw it with GL_TRIANGLE_FAN.
+     */
+    public static final int TOPOLOGY_TRIANGLE_FAN = 1;
+
+    /**
+     * Each vertex has 5 floats (xyz + uv).
+     */
+    public static final int FLOATS_PER_VERTEX = 5;
+
+    // The key points of the geometry
+    private float[] mLeftTop = new float[2];
+    private float[] mLeftBottom = new float[2];
+    private float[] mTopLeft = new float[2];
+    private float[] mTopRight = new float[2];
+    private float[] mRightTop = new float[2];
+    private float[] mRightBottom = new float[2];
+    private float[] mBottomLeft = new float[2];
+    private float[] mBottomRight = new float[2];
+
+    private float[] mInnerTopLeft = new float[2];
+    private float[] mInnerTopRight = new float[2];
+    private float[] mInnerBottomRight = new float[2];
+    private float[] mInnerBottomLeft = new float[2];
+
+    private float[] mTopLeftRadius = new float[2];
+    private float[] mTopRightRadius = new float[2];
+    private float[] mBottomRightRadius = new float[2];
+    private float[] mBottomLeftRadius = new float[2];
+
+    // The output of the geometry being generated, either arrays or buffers
+    private float[] mVertexArray;
+    private short[] mIndexArray;
+    private FloatBuffer mVertexBuffer;
+    private ShortBuffer mIndexBuffer;
+    private int mVertexPosition;
+    private int mIndexPosition;
+
+    private float mMaxChordError = DEFAULT_MAX_CHORD_ERROR_PX;
+    private int mFixedTrianglesPerCorner = 0;
+    private int mTopology = TOPOLOGY_TRIANGLES;
+
+    // mRadiusLimits[n] is the biggest radius, in pixels, that n triangles per corner can draw
+    // within the chord error tolerance. Lazily computed.
+    private float[] mRadiusLimits;
+
+    // Unit quarter circle tables, shared by all instances and lazily built for each amount of
+    // triangles per corner. sQuarterCircles[n][i] is cos(i * (PI / 2) / n), for i in [0, n].
+    private static final float[][] sQuarterCircles = new float[MAX_TRIANGLES_PER_CORNER + 1][];
+
+    // Unit meshes, shared by all instances and lazily built for each topology and amount of
+    // triangles per corner, see getUnitMesh()
+    private static final GeometryArrays[][] sUnitMeshes =
+            new GeometryArrays[2][MAX_TRIANGLES_PER_CORNER + 1];
+
+    /**
+     * Sets the maximum distance, in pixels, between the true arc of a rounded corner and the
+     * triangles used to draw it. The amount of triangles of each corner is then derived from its
+     * radius in pixels, so small corners use few triangles and big ones as many as needed to look
+     * smooth. This is the default behaviour.
+     *
+     * @param maxChordErrorPx the tolerance in pixels, must be bigger than 0.
+     */
+    public void setMaxChordError(float maxChordErrorPx) {
+        if (!(maxChordErrorPx > 0f)) {
+            throw new IllegalArgumentException("maxChordErrorPx must be bigger than 0");
+        }
+        mMaxChordError = maxChordErrorPx;
+        mFixedTrianglesPerCorner = 0;
+        mRadiusLimits = null;
+    }
+
+    public float getMaxChordError() {
+        return mMaxChordError;
+    }
+
+    /**
+     * Makes every rounded corner use the same amount of triangles, regardless of its size. This
+     * overrides {@link #setMaxChordError(float)}.
+     *
+     * @param trianglesPerCorner the amount of triangles per corner, between 1 and
+     *                           {@link #MAX_TRIANGLES_PER_CORNER}.
+     */
+    public void setTrianglesPerCorner(int trianglesPerCorner) {
+        if (trianglesPerCorner < 1 || trianglesPerCorner > MAX_TRIANGLES_PER_CORNER) {
+            throw new IllegalArgumentException("trianglesPerCorner must be between 1 and "
+                    + MAX_TRIANGLES_PER_CORNER);
+        }
+        mFixedTrianglesPerCorner = trianglesPerCorner;
+    }
+
+    /**
+     * Sets how the triangles of the geometry are laid out.
+     *
+     * @param topology either {@link #TOPOLOGY_TRIANGLES} or {@link #TOPOLOGY_TRIANGLE_FAN}.
+     */
+    public void setTopology(int topology) {
+        if (topology != TOPOLOGY_TRIANGLES && topology != TOPOLOGY_TRIANGLE_FAN) {
+            throw new IllegalArgumentException("Unknown topology " + topology);
+        }
+        mTopology = topology;
+    }
+
+    public int getTopology() {
+        return mTopology;
+    }
+
+    /**
+     * Returns the amount of triangles a rounded corner with the given radius is drawn with.
+     *
+     * A chord spanning an angle a of an arc with radius r deviates at most r * (1 - cos(a / 2))
+     * from the arc, so we pick the smallest amount of triangles that keeps that deviation within
+     * the chord error tolerance. The radius limits for each amount of triangles are computed
+     * once so this doesn't need any trigonometry.
+     *
+     * @param radiusPx the radius of the corner, in pixels.
+     * @return the amount of triangles for that corner.
+     */
+    public int getTrianglesPerCorner(float radiusPx) {
+        if (mFixedTrianglesPerCorner > 0) {
+            return mFixedTrianglesPerCorner;
+        }
+        if (mRadiusLimits == null) {
+            final float[] radiusLimits = new float[MAX_TRIANGLES_PER_CORNER + 1];
+            for (int n = 1; n <= MAX_TRIANGLES_PER_CORNER; n++) {
+                radiusLimits[n] =
+                        (float) (mMaxChordError / (1.0 - Math.cos(Math.PI / (4.0 * n))));
+            }
+            mRadiusLimits = radiusLimits;
+        }
+        // The limits grow with the amount of triangles, find the first one that fits
+        int low = 1;
+        int high = MAX_TRIANGLES_PER_CORNER;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (radiusPx <= mRadiusLimits[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the unit quarter circle for the given amount of triangles, building it the first
+     * time it's needed. Every corner is derived from it by swapping axes and flipping signs.
+     *
+     * @param triangles the amount of triangles in the corner.
+     * @return an array with cos(i * (PI / 2) / triangles) at index i, for i in [0, triangles].
+     * Since sin(x) == cos(PI / 2 - x), the sine at index i is the value at triangles - i.
+     */
+    private static float[] getQuarterCircle(int triangles) {
+        synchronized (sQuarterCircles) {
+            float[] quarterCircle = sQuarterCircles[triangles];
+            if (quarterCircle == null) {
+                quarterCircle = new float[triangles + 1];
+                for (int i = 0; i <= triangles; i++) {
+                    quarterCircle[i] = (float) Math.cos(i * (Math.PI / 2.0) / triangles);
+                }
+                // make sure the end points are exact so corners meet the rect edges
+                quarterCircle[0] = 1f;
+                quarterCircle[triangles] = 0f;
+                sQuarterCircles[triangles] = quarterCircle;
+            }
+            return quarterCircle;
+        }
+    }
+
+    /**
+     * Returns the amount of floats {@link #generateVertexData} writes for the given radii. Each
+     * vertex takes 5 floats (xyz + uv).
+     *
+     * @param radii the corner radius of each corner, in pixels.
+     * @return the required capacity of the vertex buffer or array, in floats.
+     */
+    public int getVertexFloatCount(Corners radii) {
+        final int vertices;
+        if (mTopology == TOPOLOGY_TRIANGLE_FAN) {
+            // 1 center point + the outline (4 arcs, each has X triangles and X + 1 vertices)
+            vertices = 1 + getCornerTriangleCount(radii) + 4;
+        } else {
+            // 4 inner points + 4 arcs (each has X triangles and X + 1 vertices)
+            vertices = 4 + getCornerTriangleCount(radii) + 4;
+        }
+        return vertices * FLOATS_PER_VERTEX;
+    }
+
+    /**
+     * Returns the amount of indices {@link #generateVertexData} writes for the given radii.
+     *
+     * @param radii the corner radius of each corner, in pixels.
+     * @return the required capacity of the index buffer or array, in shorts.
+     */
+    public int getIndexCount(Corners radii) {
+        if (mTopology == TOPOLOGY_TRIANGLE_FAN) {
+            // every vertex + the first outline vertex again to close the fan
+            return getVertexFloatCount(radii) / FLOATS_PER_VERTEX + 1;
+        }
+        // 5 squares (each has 2 triangles) + the corner triangles
+        return (5 * 2 + getCornerTriangleCount(radii)) * 3;
+    }
+
+    private int getCornerTriangleCount(Corners radii) {
+        return getTrianglesPerCorner(radii.topLeft) + getTrianglesPerCorner(radii.topRight) +
+                getTrianglesPerCorner(radii.bottomRight) +
+                getTrianglesPerCorner(radii.bottomLeft);
+    }
+
+    /**
+     * @see #generateVertexData(Corners, Bounds, int, int, float)
+     */
+    public GeometryArrays generateVertexData(Corners radii, Bounds viewPortGLBounds,
+                                             int viewPortPxWidth, int viewPortPxHeight) {
+        return generateVertexData(radii, viewPortGLBounds, viewPortPxWidth, viewPortPxHeight, 0f);
+    }
+
+    /**
+     * Generates a {@link GeometryArrays} object with arrays containing the resulting geometry
+     * vertices and the corresponding triangle indexes, laid out as set by
+     * {@link #setTopology(int)}.
+     *
+     * @param radii the corner radius of each corner, in pixels.
+     * @param viewPortGLBounds the bounds of the GL viewport in GL scalar units.
+     * @param viewPortPxWidth the width of the view port in pixels.
+     * @param viewPortPxHeight the height of the view port in pixels.
+     * @param z the z coordinate for the z-plane geometry.
+     * @return an object with the resulting geometry.
+     */
+    public GeometryArrays generateVertexData(Corners radii, Bounds viewPortGLBounds,
+                                             int viewPortPxWidth, int viewPortPxHeight,
+                                             float z) {
+        final float[] vertices = new float[getVertexFloatCount(radii)];
+        final short[] indices = new short[getIndexCount(radii)];
+        generateVertexData(radii, viewPortGLBounds, viewPortPxWidth, viewPortPxHeight, z,
+                vertices, 0, indices, 0);
+        return new GeometryArrays(vertices, indices);
+    }
+
+    /**
+     * Same as {@link #generateVertexData(Corners, Bounds, int, int, float)} but writes the
+     * geometry into the given arrays instead of allocating new ones. Nothing is allocated.
+     *
+     * The indices refer to the position of the vertices in the whole vertices array, i.e. they
+     * account for verticesOffset.
+     *
+     * @param vertices the array the vertices are written to, must have room for
+     *                 {@link #getVertexFloatCount(Corners)} floats after verticesOffset.
+     * @param verticesOffset where to start writing vertices, in floats. Must be a multiple of 5.
+     * @param indices the array the indices are written to, must have room for
+     *                {@link #getIndexCount(Corners)} shorts after indicesOffset.
+     * @param indicesOffset where to start writing indices.
+     * @see #generateVertexData(Corners, Bounds, int, int, float)
+     */
+    public void generateVertexData(Corners radii, Bounds viewPortGLBounds,
+                                   int viewPortPxWidth, int viewPortPxHeight, float z,
+                                   float[] vertices, int verticesOffset,
+                                   short[] indices, int indicesOffset) {
+        if (vertices.length - verticesOffset < getVertexFloatCount(radii) ||
+                indices.length - indicesOffset < getIndexCount(radii)) {
+            throw new IllegalArgumentException("Not enough room for the geometry");
+        }
+        mVertexArray = vertices;
+        mIndexArray = indices;
+        mVertexPosition = verticesOffset;
+        mIndexPosition = indicesOffset;
+        try {
+            generate(radii, viewPortGLBounds, viewPortPxWidth, viewPortPxHeight, z);
+        } finally {
+            mVertexArray = null;
+            mIndexArray = null;
+        }
+    }
+
+    /**
+     * Same as {@link #generateVertexData(Corners, Bounds, int, int, float)} but writes the geometry
+     * straight into the given buffers, usually direct ones ready to be handed to GL. Nothing is
+     * allocated.
+     *
+     * Writing starts at the current position of each buffer and the positions are advanced past
+     * the written data. The indices refer to the position of the vertices in the whole vertex
+     * buffer.
+     *
+     * @param vertices the buffer the vertices are written to, must have
+     *                 {@link #getVertexFloatCount(Corners)} floats remaining and its position
+     *                 must be a multiple of 5.
+     * @param indices the buffer the indices are written to, must have
+     *                {@link #getIndexCount(Corners)} shorts remaining.
+     * @see #generateVertexData(Corners, Bounds, int, int, float)
+     */
+    public void generateVertexData(Corners radii, Bounds viewPortGLBounds,
+                                   int viewPortPxWidth, int viewPortPxHeight, float z,
+                                   FloatBuffer vertices, ShortBuffer indices) {
+        if (vertices.remaining() < getVertexFloatCount(radii) ||
+                indices.remaining() < getIndexCount(radii)) {
+            throw new IllegalArgumentException("Not enough room for the geometry");
+        }
+        mVertexBuffer = vertices;
+        mIndexBuffer = indices;
+        mVertexPosition = vertices.position();
+        mIndexPosition = indices.position();
+        try {
+            generate(radii, viewPortGLBounds, viewPortPxWidth, viewPortPxHeight, z);
+            vertices.position(mVertexPosition);
+            indices.position(mIndexPosition);
+        } finally {
+            mVertexBuffer = null;
+            mIndexBuffer = null;
+        }
+    }
+
+    private void generate(Corners radii, Bounds viewPortGLBounds, int viewPortPxWidth,
+                          int viewPortPxHeight, float z) {
+        final float x0 = viewPortGLBounds.left;
+        final float x1 = viewPortGLBounds.right;
+        final float y0 = viewPortGLBounds.bottom;
+        final float y1 = viewPortGLBounds.top;
+
+        final float leftTopRadius = radii.topLeft;
+        final float rightTopRadius = radii.topRight;
+        final float rightBottomRadius = radii.bottomRight;
+        final float leftBottomRadius = radii.bottomLeft;
+
+        mTopLeftRadius[0] = leftTopRadius / viewPortPxWidth * viewPortGLBounds.width();
+        mTopLeftRadius[1] = leftTopRadius / viewPortPxHeight * -viewPortGLBounds.height();
+        mTopRightRadius[0] = rightTopRadius / viewPortPxWidth * viewPortGLBounds.width();
+        mTopRightRadius[1] = rightTopRadius / viewPortPxHeight * -viewPortGLBounds.height();
+        mBottomRightRadius[0] = rightBottomRadius / viewPortPxWidth * viewPortGLBounds.width();
+        mBottomRightRadius[1] = rightBottomRadius / viewPortPxHeight * -viewPortGLBounds.height();
+        mBottomLeftRadius[0] = leftBottomRadius / viewPortPxWidth * viewPortGLBounds.width();
+        mBottomLeftRadius[1] = leftBottomRadius / viewPortPxHeight * -viewPortGLBounds.height();
+
+        mLeftTop[0] = x0;
+        mLeftTop[1] = y1 - mTopLeftRadius[1];
+        mLeftBottom[0] = x0;
+        mLeftBottom[1] = y0 + mBottomLeftRadius[1];
+        mTopLeft[0] = x0 + mTopLeftRadius[0];
+        mTopLeft[1] = y1;
+        mTopRight[0] = x1 - mTopRightRadius[0];
+        mTopRight[1] = y1;
+        mRightTop[0] = x1;
+        mRightTop[1] = y1 - mTopRightRadius[1];
+        mRightBottom[0] = x1;
+        mRightBottom[1] = y0 + mBottomRightRadius[1];
+        mBottomLeft[0] = x0 + mBottomLeftRadius[0];
+        mBottomLeft[1] = y0;
+        mBottomRight[0] = x1 - mBottomRightRadius[0];
+        mBottomRight[1] = y0;
+
+        mInnerTopLeft[0] = mTopLeft[0];
+        mInnerTopLeft[1] = mLeftTop[1];
+        mInnerTopRight[0] = mTopRight[0];
+        mInnerTopRight[1] = mRightTop[1];
+        mInnerBottomLeft[0] = mBottomLeft[0];
+        mInnerBottomLeft[1] = mLeftBottom[1];
+        mInnerBottomRight[0] = mBottomRight[0];
+        mInnerBottomRight[1] = mRightBottom[1];
+
+        final int topLeftTriangles = getTrianglesPerCorner(leftTopRadius);
+        final int topRightTriangles = getTrianglesPerCorner(rightTopRadius);
+        final int bottomRightTriangles = getTrianglesPerCorner(rightBottomRadius);
+        final int bottomLeftTriangles = getTrianglesPerCorner(leftBottomRadius);
+        final int initialIdx = mVertexPosition / FLOATS_PER_VERTEX;
+
+        // These assume uniform corners (i.e. same radius on both axis)
+        if (mTopology == TOPOLOGY_TRIANGLE_FAN) {
+            // XYZUV - center point of the whole geometry, every triangle starts here
+            putVertex((x0 + x1) / 2f, (y0 + y1) / 2f, z, viewPortGLBounds);
+
+            // The outline, clockwise starting at the top of the left edge. The straight edges
+            // are the triangles between the end of an arc and the start of the next one.
+            addCornerArc(mInnerTopLeft, mTopLeftRadius, -1f, 1f, false, topLeftTriangles,
+                    mLeftTop, mTopLeft, false, viewPortGLBounds, z);
+            addCornerArc(mInnerTopRight, mTopRightRadius, 1f, 1f, true, topRightTriangles,
+                    mTopRight, mRightTop, false, viewPortGLBounds, z);
+            addCornerArc(mInnerBottomRight, mBottomRightRadius, 1f, -1f, true,
+                    bottomRightTriangles, mBottomRight, mRightBottom, true, viewPortGLBounds, z);
+            addCornerArc(mInnerBottomLeft, mBottomLeftRadius, -1f, -1f, false,
+                    bottomLeftTriangles, mLeftBottom, mBottomLeft, true, viewPortGLBounds, z);
+
+            addIndices(initialIdx, topLeftTriangles, topRightTriangles, bottomRightTriangles,
+                    bottomLeftTriangles);
+            return;
+        }
+
+        // XYZUV - inner points, shared by the center rect, the side rects and the corners
+        putVertex(mInnerTopLeft[0], mInnerTopLeft[1], z, viewPortGLBounds);
+        putVertex(mInnerTopRight[0], mInnerTopRight[1], z, viewPortGLBounds);
+        putVertex(mInnerBottomRight[0], mInnerBottomRight[1], z, viewPortGLBounds);
+        putVertex(mInnerBottomLeft[0], mInnerBottomLeft[1], z, viewPortGLBounds);
+
+        // XYZUV - the arcs, their end points are shared with the side rects
+        // Top left corner, sweeps from PI to PI / 2
+        addCornerArc(mInnerTopLeft, mTopLeftRadius, -1f, 1f, false, topLeftTriangles,
+                mLeftTop, mTopLeft, false, viewPortGLBounds, z);
+        // Top right corner, sweeps from PI / 2 to 0
+        addCornerArc(mInnerTopRight, mTopRightRadius, 1f, 1f, true, topRightTriangles,
+                mTopRight, mRightTop, false, viewPortGLBounds, z);
+        // Bottom right corner, sweeps from 3 * PI / 2 to 2 * PI
+        addCornerArc(mInnerBottomRight, mBottomRightRadius, 1f, -1f, true, bottomRightTriangles,
+                mBottomRight, mRightBottom, false, viewPortGLBounds, z);
+        // Bottom left corner, sweeps from PI to 3 * PI / 2
+        addCornerArc(mInnerBottomLeft, mBottomLeftRadius, -1f, -1f, false, bottomLeftTriangles,
+                mLeftBottom, mBottomLeft, false, viewPortGLBounds, z);
+
+        addIndices(initialIdx, topLeftTriangles, topRightTriangles, bottomRightTriangles,
+                bottomLeftTriangles);
+    }
+
+    /**
+     * Adds the indices of the geometry, which only depend on the topology and the amount of
+     * triangles of each corner, for vertices laid out as {@link #generate} and
+     * {@link #generateUnit} do.
+     *
+     * @param initialIdx the index of the first vertex of the geometry.
+     */
+    private void addIndices(int initialIdx, int topLeftTriangles, int topRightTriangles,
+                            int bottomRightTriangles, int bottomLeftTriangles) {
+        if (mTopology == TOPOLOGY_TRIANGLE_FAN) {
+            final int outlineVertices = topLeftTriangles + topRightTriangles +
+                    bottomRightTriangles + bottomLeftTriangles + 4;
+            for (int i = 0; i <= outlineVertices; i++) {
+                putIndex(initialIdx + i);
+            }
+            // close the outline
+            putIndex(initialIdx + 1);
+            return;
+        }
+
+        final int innerTopLeftIdx = initialIdx;
+        final int innerTopRightIdx = initialIdx + 1;
+        final int innerBottomRightIdx = initialIdx + 2;
+        final int innerBottomLeftIdx = initialIdx + 3;
+        final int topLeftArcIdx = initialIdx + 4;
+        final int topRightArcIdx = topLeftArcIdx + topLeftTriangles + 1;
+        final int bottomRightArcIdx = topRightArcIdx + topRightTriangles + 1;
+        final int bottomLeftArcIdx = bottomRightArcIdx + bottomRightTriangles + 1;
+
+        // Inner center rect
+        addRect(innerTopLeftIdx, innerTopRightIdx, innerBottomLeftIdx, innerBottomRightIdx);
+
+        // Left rect
+        addRect(topLeftArcIdx, innerTopLeftIdx, bottomLeftArcIdx, innerBottomLeftIdx);
+
+        // Right rect
+        addRect(innerTopRightIdx, topRightArcIdx + topRightTriangles, innerBottomRightIdx,
+                bottomRightArcIdx + bottomRightTriangles);
+
+        // Top rect
+        addRect(topLeftArcIdx + topLeftTriangles, innerTopLeftIdx, topRightArcIdx,
+                innerTopRightIdx);
+
+        // Bottom rect
+        addRect(innerBottomLeftIdx, bottomLeftArcIdx + bottomLeftTriangles, innerBottomRightIdx,
+                bottomRightArcIdx);
+
+        // Rounded corners
+        addRoundedCorner(innerTopLeftIdx, topLeftArcIdx, topLeftTriangles);
+        addRoundedCorner(innerTopRightIdx, topRightArcIdx, topRightTriangles);
+        addRoundedCorner(innerBottomRightIdx, bottomRightArcIdx, bottomRightTriangles);
+        addRoundedCorner(innerBottomLeftIdx, bottomLeftArcIdx, bottomLeftTriangles);
+    }
+
+    /**
+     * Returns the amount of triangles per corner of the unit mesh to draw corners up to the given
+     * radius with, see {@link #getUnitMesh(int, int)}. Only powers of two are used, so animating
+     * the radii only switches meshes a handful of times.
+     *
+     * @param maxRadiusPx the biggest corner radius, in pixels.
+     */
+    public int getUnitMeshTrianglesPerCorner(float maxRadiusPx) {
+        final int triangles = getTrianglesPerCorner(maxRadiusPx);
+        return triangles == 1 ? 1 : Math.min(MAX_TRIANGLES_PER_CORNER,
+                Integer.highestOneBit(triangles - 1) << 1);
+    }
+
+    /**
+     * Returns a mesh that fits any view size and corner radii, laid out like the geometry of
+     * {@link #generateVertexData} with the same amount of triangles in every corner, so it shares
+     * its indices. It's built once for each topology and amount of triangles and shared.
+     *
+     * Instead of a position and texture coordinates, each vertex holds the corner of the view it
+     * hangs from, in GL units (-1 or 1 on each axis, y up, 0 for the center of the fan), and its
+     * offset from there in radii of that corner. A vertex is then placed, in pixels from the view
+     * center, at corner * size / 2 + offset * radius, which a vertex shader can do with the size
+     * and radii as uniforms.
+     *
+     * @param topology either {@link #TOPOLOGY_TRIANGLES} or {@link #TOPOLOGY_TRIANGLE_FAN}.
+     * @param trianglesPerCorner the amount of triangles of every corner.
+     * @return the shared mesh, not to be modified.
+     */
+    public static GeometryArrays getUnitMesh(int topology, int trianglesPerCorner) {
+        if (topology != TOPOLOGY_TRIANGLES && topology != TOPOLOGY_TRIANGLE_FAN) {
+            throw new IllegalArgumentException("Unknown topology " + topology);
+        }
+        if (trianglesPerCorner < 1 || trianglesPerCorner > MAX_TRIANGLES_PER_CORNER) {
+            throw new IllegalArgumentException("trianglesPerCorner must be between 1 and "
+                    + MAX_TRIANGLES_PER_CORNER);
+        }
+        synchronized (sUnitMeshes) {
+            GeometryArrays mesh = sUnitMeshes[topology][trianglesPerCorner];
+            if (mesh == null) {
+                final RoundedGeometry geometry = new RoundedGeometry();
+                geometry.setTopology(topology);
+                geometry.setTrianglesPerCorner(trianglesPerCorner);
+                final Corners radii = new Corners();
+                mesh = new GeometryArrays(new float[geometry.getVertexFloatCount(radii)],
+                        new short[geometry.getIndexCount(radii)]);
+                geometry.mVertexArray = mesh.triangleVertices;
+                geometry.mIndexArray = mesh.triangleIndices;
+                geometry.generateUnit(trianglesPerCorner);
+                geometry.mVertexArray = null;
+                geometry.mIndexArray = null;
+                sUnitMeshes[topology][trianglesPerCorner] = mesh;
+            }
+            return mesh;
+        }
+    }
+
+    private void generateUnit(int triangles) {
+        if (mTopology == TOPOLOGY_TRIANGLE_FAN) {
+            putVertex(0f, 0f, 0f, 0f, 0f);
+            addUnitCornerArc(-1f, 1f, false, triangles, false);
+            addUnitCornerArc(1f, 1f, true, triangles, false);
+            addUnitCornerArc(1f, -1f, true, triangles, true);
+            addUnitCornerArc(-1f, -1f, false, triangles, true);
+        } else {
+            // inner points, the centers of the arcs
+            putVertex(-1f, 1f, 0f, 1f, -1f);
+            putVertex(1f, 1f, 0f, -1f, -1f);
+            putVertex(1f, -1f, 0f, -1f, 1f);
+            putVertex(-1f, -1f, 0f, 1f, 1f);
+            addUnitCornerArc(-1f, 1f, false, triangles, false);
+            addUnitCornerArc(1f, 1f, true, triangles, false);
+            addUnitCornerArc(1f, -1f, true, triangles, false);
+            addUnitCornerArc(-1f, -1f, false, triangles, false);
+        }
+        addIndices(0, triangles, triangles, triangles, triangles);
+    }
+
+    /**
+     * Same as {@link #addCornerArc} for a unit mesh: the arc of the corner at (signX, signY) has
+     * its center one radius inwards on each axis, so its points are offset by
+     * (signX * (cos - 1), signY * (sin - 1)) radii from the corner.
+     */
+    private void addUnitCornerArc(float signX, float signY, boolean swap, int triangles,
+                                  boolean reverse) {
+        final float[] quarterCircle = getQuarterCircle(triangles);
+        for (int j = 0; j <= triangles; j++) {
+            final int i = reverse ? triangles - j : j;
+            final float cos = quarterCircle[i];
+            final float sin = quarterCircle[triangles - i];
+            putVertex(signX, signY, 0f, signX * ((swap ? sin : cos) - 1f),
+                    signY * ((swap ? cos : sin) - 1f));
+        }
+    }
+
+    /**
+     * Adds the indices of the two triangles of a rectangle defined by the vertices at its 4
+     * corners.
+     *
+     * @param idx0 the index of the first corner.
+     * @param idx1 the index of the second corner, shares an edge with the first one.
+     * @param idx2 the index of the third corner, shares an edge with the first one.
+     * @param idx3 the index of the fourth corner, opposite to the first one.
+     */
+    private void addRect(int idx0, int idx1, int idx2, int idx3) {
+        putIndex(idx0);
+        putIndex(idx1);
+        putIndex(idx2);
+        putIndex(idx1);
+        putIndex(idx2);
+        putIndex(idx3);
+    }
+
+    /**
+     * Adds the indices of a number of triangles forming a rounded corner. The triangles start at
+     * the center point and sweep along the arc vertices.
+     *
+     * @param centerIdx the index of the center point where all triangles will start.
+     * @param arcIdx the index of the first of the arc vertices.
+     * @param triangles the amount of triangles to create.
+     */
+    private void addRoundedCorner(int centerIdx, int arcIdx, int triangles) {
+        for (int i = 0; i < triangles; i++) {
+            putIndex(centerIdx);
+            putIndex(arcIdx + i);
+            putIndex(arcIdx + i + 1);
+        }
+    }
+
+    /**
+     * Adds the vertices along the arc of a rounded corner, triangles + 1 of them, from the start
+     * point to the end point. The start and end points are passed in, rather than computed, so
+     * they match exactly the ones of the straight edges.
+     *
+     * All corners sweep the same quarter circle, mirrored, so the points along the arc are taken
+     * from the shared unit quarter circle table: the i-th point is at (cos, sin) of i steps when
+     * not swapped and at (sin, cos) when swapped, with each axis multiplied by its sign.
+     *
+     * The coordinates of the rect corners should already be in the view port space.
+     *
+     * @param center the center point of the arc.
+     * @param radius the desired radius in the x and y axis, in viewport dimensions.
+     * @param signX the direction of the corner in the x axis, 1 or -1.
+     * @param signY the direction of the corner in the y axis, 1 or -1.
+     * @param swap true if the sweep starts at the y axis instead of the x axis.
+     * @param triangles the amount of triangles the arc is split into.
+     * @param start the first point of the arc.
+     * @param end the last point of the arc.
+     * @param reverse true to add the vertices from the end point to the start point.
+     * @param viewPort the bounds of the current GL viewport, this is used to calculate the texture
+     *                 mapping.
+     * @param z the z coordinate.
+     */
+    private void addCornerArc(float[] center,
+                              float[] radius,
+                              float signX,
+                              float signY,
+                              boolean swap,
+                              int triangles,
+                              float[] start,
+                              float[] end,
+                              boolean reverse,
+                              Bounds viewPort,
+                              float z) {
+        final float[] quarterCircle = getQuarterCircle(triangles);
+        final float radiusX = signX * radius[0];
+        final float radiusY = signY * radius[1];
+        for (int j = 0; j <= triangles; j++) {
+            final int i = reverse ? triangles - j : j;
+            if (i == 0) {
+                putVertex(start[0], start[1], z, viewPort);
+            } else if (i == triangles) {
+                putVertex(end[0], end[1], z, viewPort);
+            } else {
+                final float cos = quarterCircle[i];
+                final float sin = quarterCircle[triangles - i];
+                putVertex(center[0] + radiusX * (swap ? sin : cos),
+                        center[1] + radiusY * (swap ? cos : sin), z, viewPort);
+            }
+        }
+    }
+
+    /**
+     * Writes a vertex (xyz + uv) at the current vertex position of whatever output we're
+     * currently generating into.
+     */
+    private void putVertex(float x, float y, float z, Bounds viewPort) {
+        // UV (texture mapping)
+        final float u = (x - viewPort.left) / viewPort.width();
+        final float v = (y - viewPort.bottom) / -viewPort.height();
+        putVertex(x, y, z, u, v);
+    }
+
+    private void putVertex(float x, float y, float z, float u, float v) {
+        if (mVertexArray != null) {
+            final float[] vertices = mVertexArray;
+            vertices[mVertexPosition] = x;
+            vertices[mVertexPosition + 1] = y;
+            vertices[mVertexPosition + 2] = z;
+            vertices[mVertexPosition + 3] = u;
+            vertices[mVertexPosition + 4] = v;
+        } else {
+            final FloatBuffer vertices = mVertexBuffer;
+            vertices.put(mVertexPosition, x);
+            vertices.put(mVertexPosition + 1, y);
+            vertices.put(mVertexPosition + 2, z);
+            vertices.put(mVertexPosition + 3, u);
+            vertices.put(mVertexPosition + 4, v);
+        }
+        mVertexPosition += FLOATS_PER_VERTEX;
+    }
+
+    private void putIndex(int index) {
+        if (mIndexArray != null) {
+            mIndexArray[mIndexPosition] = (short) index;
+        } else {
+            mIndexBuffer.put(mIndexPosition, (short) index);
+        }
+        mIndexPosition++;
+    }
+
+    public static class GeometryArrays {
+        public float[] triangleVertices;
+        public short[] triangleIndices;
+        public int verticesOffset = 0;
+        public int indicesOffset = 0;
+
+        public GeometryArrays(float[] vertices, short[] indices) {
+            triangleVertices = vertices;
+            triangleIndices = indices;
+        }
+    }
+}
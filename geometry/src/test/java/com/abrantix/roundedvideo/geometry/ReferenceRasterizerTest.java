@@ -0,0 +1,171 @@
+package com.abrantix.roundedvideo.geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReferenceRasterizerTest {
+
+    // same window as TessellationReport: the top left corner and a few pixels past the arc
+    private static final int MARGIN = 4;
+    private static final int SAMPLES_PER_AXIS = 32;
+    private static final Bounds VIEW_PORT_GL_BOUNDS = new Bounds(-1f, 1f, 1f, -1f);
+
+    @Test
+    public void zeroRadiusMeshIsTheRect() {
+        for (int topology = RoundedGeometry.TOPOLOGY_TRIANGLES;
+             topology <= RoundedGeometry.TOPOLOGY_TRIANGLE_FAN; topology++) {
+            final ReferenceRasterizer.Score score = score(0, 1, topology);
+            assertEquals(0f, score.maxError, 0f);
+            assertEquals(0f, score.meanError, 0f);
+            assertEquals(0, score.edgePixels);
+            assertEquals(0, score.visiblePixels);
+        }
+    }
+
+    @Test
+    public void halfCoveredPixel() {
+        // a rect from x 0 to 1.5 px over a 4x2 px view port, covering half of the second column
+        final float right = -1f + 1.5f * 2f / 4f;
+        final RoundedGeometry.GeometryArrays rect = new RoundedGeometry.GeometryArrays(
+                new float[] {
+                        -1f, 1f, 0f, 0f, 0f,
+                        right, 1f, 0f, 0f, 0f,
+                        right, -1f, 0f, 0f, 0f,
+                        -1f, -1f, 0f, 0f, 0f},
+                new short[] {0, 1, 2, 0, 2, 3});
+        final ReferenceRasterizer raster = new ReferenceRasterizer(4, 2, SAMPLES_PER_AXIS);
+        raster.reset(0, 0);
+        raster.drawMesh(rect, RoundedGeometry.TOPOLOGY_TRIANGLES, VIEW_PORT_GL_BOUNDS, 4, 2);
+        for (int y = 0; y < 2; y++) {
+            assertEquals(1f, raster.getCoverage(0, y), 0f);
+            // the jittered samples of a column only split evenly on average
+            assertEquals(0.5f, raster.getCoverage(1, y), 1f / SAMPLES_PER_AXIS);
+            assertEquals(0f, raster.getCoverage(2, y), 0f);
+            assertEquals(0f, raster.getCoverage(3, y), 0f);
+        }
+    }
+
+    @Test
+    public void arcCoversTheQuarterCircle() {
+        for (int radius : new int[] {8, 32, 128}) {
+            final int window = radius + MARGIN;
+            final double expected = window * window - radius * radius * (1.0 - Math.PI / 4.0);
+            assertEquals("radius " + radius, expected, sumCoverage(drawArc(radius)), 0.1);
+        }
+    }
+
+    @Test
+    public void meshCoversTheInscribedPolygon() {
+        final int[][] pairs = {{8, 4}, {32, 8}, {32, 32}, {128, 16}};
+        for (int[] pair : pairs) {
+            final int radius = pair[0];
+            final int triangles = pair[1];
+            final int window = radius + MARGIN;
+            // the fan of the corner around the center of its arc
+            final double fan = triangles * 0.5 * radius * radius *
+                    Math.sin(Math.PI / (2.0 * triangles));
+            final double expected = window * window - radius * radius + fan;
+            assertEquals("radius " + radius + ", triangles " + triangles, expected,
+                    sumCoverage(drawMesh(radius, triangles, RoundedGeometry.TOPOLOGY_TRIANGLES)),
+                    0.1);
+        }
+    }
+
+    @Test
+    public void topologiesCoverTheSameSamples() {
+        final ReferenceRasterizer.Score score = ReferenceRasterizer.compare(
+                drawMesh(32, 8, RoundedGeometry.TOPOLOGY_TRIANGLES),
+                drawMesh(32, 8, RoundedGeometry.TOPOLOGY_TRIANGLE_FAN));
+        assertEquals(0f, score.maxError, 0f);
+    }
+
+    /**
+     * Pins the scores of a few radius and tessellation pairs, the samples are fixed so they
+     * only change along with the rasterizer or the mesh.
+     */
+    @Test
+    public void pinnedScores() {
+        assertScore(score(8, 4, RoundedGeometry.TOPOLOGY_TRIANGLES),
+                0.17578125f, 0.08645833f, 15, 15);
+        assertScore(score(32, 8, RoundedGeometry.TOPOLOGY_TRIANGLES),
+                0.20214844f, 0.07840613f, 66, 62);
+        assertScore(score(32, 32, RoundedGeometry.TOPOLOGY_TRIANGLES),
+                0.0126953125f, 0.0055758567f, 62, 37);
+        assertScore(score(128, 16, RoundedGeometry.TOPOLOGY_TRIANGLE_FAN),
+                0.19335938f, 0.07806212f, 264, 250);
+    }
+
+    @Test
+    public void moreTrianglesLessError() {
+        float previous = Float.MAX_VALUE;
+        for (int triangles = 2; triangles <= RoundedGeometry.MAX_TRIANGLES_PER_CORNER;
+             triangles *= 2) {
+            final float maxError = score(32, triangles, RoundedGeometry.TOPOLOGY_TRIANGLES)
+                    .maxError;
+            assertTrue("triangles " + triangles, maxError < previous);
+            previous = maxError;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noSamples() {
+        new ReferenceRasterizer(1, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compareDifferentSizes() {
+        ReferenceRasterizer.compare(new ReferenceRasterizer(2, 1, 1),
+                new ReferenceRasterizer(1, 2, 1));
+    }
+
+    private static void assertScore(ReferenceRasterizer.Score score, float maxError,
+                                    float meanError, int edgePixels, int visiblePixels) {
+        assertEquals(score.toString(), maxError, score.maxError, 1e-6f);
+        assertEquals(score.toString(), meanError, score.meanError, 1e-6f);
+        assertEquals(score.toString(), edgePixels, score.edgePixels);
+        assertEquals(score.toString(), visiblePixels, score.visiblePixels);
+    }
+
+    /**
+     * Scores the top left corner like TessellationReport does.
+     */
+    private static ReferenceRasterizer.Score score(int radius, int triangles, int topology) {
+        return ReferenceRasterizer.compare(drawMesh(radius, triangles, topology),
+                drawArc(radius));
+    }
+
+    private static ReferenceRasterizer drawMesh(int radius, int triangles, int topology) {
+        final int size = 2 * (radius + MARGIN);
+        final RoundedGeometry geometry = new RoundedGeometry();
+        geometry.setTrianglesPerCorner(triangles);
+        geometry.setTopology(topology);
+        final RoundedGeometry.GeometryArrays mesh = geometry.generateVertexData(
+                new Corners(radius, radius, radius, radius), VIEW_PORT_GL_BOUNDS, size, size);
+        final ReferenceRasterizer raster = new ReferenceRasterizer(radius + MARGIN,
+                radius + MARGIN, SAMPLES_PER_AXIS);
+        raster.reset(0, 0);
+        raster.drawMesh(mesh, topology, VIEW_PORT_GL_BOUNDS, size, size);
+        return raster;
+    }
+
+    private static ReferenceRasterizer drawArc(int radius) {
+        final int size = 2 * (radius + MARGIN);
+        final ReferenceRasterizer raster = new ReferenceRasterizer(radius + MARGIN,
+                radius + MARGIN, SAMPLES_PER_AXIS);
+        raster.reset(0, 0);
+        raster.drawRoundedRect(new Corners(radius, radius, radius, radius), size, size);
+        return raster;
+    }
+
+    private static double sumCoverage(ReferenceRasterizer raster) {
+        double sum = 0;
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < raster.getWidth(); x++) {
+                sum += raster.getCoverage(x, y);
+            }
+        }
+        return sum;
+    }
+}
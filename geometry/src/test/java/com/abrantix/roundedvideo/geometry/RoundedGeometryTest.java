@@ -0,0 +1,261 @@
+package com.abrantix.roundedvideo.geometry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RoundedGeometryTest {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    private RoundedGeometry mGeometry;
+    private Corners mRadii;
+    private Bounds mViewPortGLBounds;
+
+    @Before
+    public void setUp() {
+        mGeometry = new RoundedGeometry();
+        mRadii = new Corners(10f, 20f, 30f, 0f);
+        mViewPortGLBounds = new Bounds(-1f, 1f, 1f, -1f);
+    }
+
+    @Test
+    public void countsOfTriangles() {
+        mGeometry.setTrianglesPerCorner(6);
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLES);
+        // 4 inner points and 4 arcs of 7 vertices
+        assertEquals((4 + 4 * 7) * RoundedGeometry.FLOATS_PER_VERTEX,
+                mGeometry.getVertexFloatCount(mRadii));
+        // 5 rects of 2 triangles and 4 corners of 6 triangles
+        assertEquals((5 * 2 + 4 * 6) * 3, mGeometry.getIndexCount(mRadii));
+        assertGeneratedSizes();
+    }
+
+    @Test
+    public void countsOfTriangleFan() {
+        mGeometry.setTrianglesPerCorner(6);
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLE_FAN);
+        // the center and 4 arcs of 7 vertices
+        assertEquals((1 + 4 * 7) * RoundedGeometry.FLOATS_PER_VERTEX,
+                mGeometry.getVertexFloatCount(mRadii));
+        // every vertex and the first outline vertex again
+        assertEquals(1 + 4 * 7 + 1, mGeometry.getIndexCount(mRadii));
+        assertGeneratedSizes();
+    }
+
+    @Test
+    public void countsFollowTheTrianglesOfEachCorner() {
+        final int triangles = mGeometry.getTrianglesPerCorner(10f) +
+                mGeometry.getTrianglesPerCorner(20f) + mGeometry.getTrianglesPerCorner(30f) +
+                mGeometry.getTrianglesPerCorner(0f);
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLES);
+        assertEquals((4 + triangles + 4) * RoundedGeometry.FLOATS_PER_VERTEX,
+                mGeometry.getVertexFloatCount(mRadii));
+        assertEquals((5 * 2 + triangles) * 3, mGeometry.getIndexCount(mRadii));
+        assertGeneratedSizes();
+
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLE_FAN);
+        assertEquals((1 + triangles + 4) * RoundedGeometry.FLOATS_PER_VERTEX,
+                mGeometry.getVertexFloatCount(mRadii));
+        assertEquals(1 + triangles + 4 + 1, mGeometry.getIndexCount(mRadii));
+        assertGeneratedSizes();
+    }
+
+    @Test
+    public void fanStartsAtTheCenterAndClosesTheOutline() {
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLE_FAN);
+        final RoundedGeometry.GeometryArrays arrays =
+                mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT);
+        final short[] indices = arrays.triangleIndices;
+        assertEquals(0, indices[0]);
+        assertEquals(1, indices[1]);
+        assertEquals(indices[1], indices[indices.length - 1]);
+        // the center of the view port
+        assertEquals(0f, arrays.triangleVertices[0], 0f);
+        assertEquals(0f, arrays.triangleVertices[1], 0f);
+    }
+
+    @Test
+    public void fanClosingIndexAccountsForTheVerticesOffset() {
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLE_FAN);
+        final int verticesOffset = 3 * RoundedGeometry.FLOATS_PER_VERTEX;
+        final float[] vertices = new float[verticesOffset + mGeometry.getVertexFloatCount(mRadii)];
+        final short[] indices = new short[2 + mGeometry.getIndexCount(mRadii)];
+        mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT, 0f,
+                vertices, verticesOffset, indices, 2);
+        assertEquals(3, indices[2]);
+        assertEquals(4, indices[3]);
+        assertEquals(4, indices[indices.length - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void vertexArrayTooSmall() {
+        mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT, 0f,
+                new float[mGeometry.getVertexFloatCount(mRadii) - 1], 0,
+                new short[mGeometry.getIndexCount(mRadii)], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void indexArrayTooSmallForTheOffset() {
+        mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT, 0f,
+                new float[mGeometry.getVertexFloatCount(mRadii)], 0,
+                new short[mGeometry.getIndexCount(mRadii)], 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void vertexBufferTooSmall() {
+        final FloatBuffer vertices = FloatBuffer.allocate(mGeometry.getVertexFloatCount(mRadii));
+        vertices.position(RoundedGeometry.FLOATS_PER_VERTEX);
+        mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT, 0f, vertices,
+                ShortBuffer.allocate(mGeometry.getIndexCount(mRadii)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void indexBufferTooSmall() {
+        mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT, 0f,
+                FloatBuffer.allocate(mGeometry.getVertexFloatCount(mRadii)),
+                ShortBuffer.allocate(mGeometry.getIndexCount(mRadii) - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unitMeshOfUnknownTopology() {
+        RoundedGeometry.getUnitMesh(2, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unitMeshOfNegativeTopology() {
+        RoundedGeometry.getUnitMesh(-1, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unitMeshWithTooManyTriangles() {
+        RoundedGeometry.getUnitMesh(RoundedGeometry.TOPOLOGY_TRIANGLES,
+                RoundedGeometry.MAX_TRIANGLES_PER_CORNER + 1);
+    }
+
+    @Test
+    public void unitMeshSharesTheIndicesOfTheGeometry() {
+        for (int topology = RoundedGeometry.TOPOLOGY_TRIANGLES;
+             topology <= RoundedGeometry.TOPOLOGY_TRIANGLE_FAN; topology++) {
+            mGeometry.setTopology(topology);
+            mGeometry.setTrianglesPerCorner(8);
+            final RoundedGeometry.GeometryArrays mesh = RoundedGeometry.getUnitMesh(topology, 8);
+            assertSame(mesh, RoundedGeometry.getUnitMesh(topology, 8));
+            assertArrayEquals(mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH,
+                    HEIGHT).triangleIndices, mesh.triangleIndices);
+        }
+    }
+
+    @Test
+    public void trianglesPerCornerGrowWithTheRadius() {
+        int previous = mGeometry.getTrianglesPerCorner(0f);
+        assertEquals(1, previous);
+        for (float radius = 0.25f; radius <= 10000f; radius += 0.25f) {
+            final int triangles = mGeometry.getTrianglesPerCorner(radius);
+            assertTrue("radius " + radius, triangles >= previous);
+            assertTrue("radius " + radius, triangles <= RoundedGeometry.MAX_TRIANGLES_PER_CORNER);
+            if (triangles < RoundedGeometry.MAX_TRIANGLES_PER_CORNER) {
+                // within the chord error, unless capped
+                final double chordError = radius * (1.0 - Math.cos(Math.PI / (4.0 * triangles)));
+                assertTrue("radius " + radius,
+                        chordError <= RoundedGeometry.DEFAULT_MAX_CHORD_ERROR_PX + 1e-4);
+            }
+            previous = triangles;
+        }
+        assertEquals(RoundedGeometry.MAX_TRIANGLES_PER_CORNER, previous);
+    }
+
+    @Test
+    public void buffersGetTheSameGeometryAsArrays() {
+        for (int topology = RoundedGeometry.TOPOLOGY_TRIANGLES;
+             topology <= RoundedGeometry.TOPOLOGY_TRIANGLE_FAN; topology++) {
+            mGeometry.setTopology(topology);
+            final RoundedGeometry.GeometryArrays arrays =
+                    mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT);
+            final FloatBuffer vertices = FloatBuffer.allocate(arrays.triangleVertices.length);
+            final ShortBuffer indices = ShortBuffer.allocate(arrays.triangleIndices.length);
+            mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT, 0f,
+                    vertices, indices);
+            assertEquals(0, vertices.remaining());
+            assertEquals(0, indices.remaining());
+            assertArrayEquals(arrays.triangleVertices, vertices.array(), 0f);
+            assertArrayEquals(arrays.triangleIndices, indices.array());
+        }
+    }
+
+    @Test
+    public void matchesTheGoldenGeometry() throws IOException {
+        final RoundedGeometry.GeometryArrays golden =
+                readGolden("rounded_geometry_triangles_300x200.txt");
+        mGeometry.setTopology(RoundedGeometry.TOPOLOGY_TRIANGLES);
+        final RoundedGeometry.GeometryArrays arrays =
+                mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT);
+        assertArrayEquals(golden.triangleIndices, arrays.triangleIndices);
+        assertEquals(golden.triangleVertices.length, arrays.triangleVertices.length);
+        // bit for bit, not within a tolerance
+        for (int i = 0; i < golden.triangleVertices.length; i++) {
+            assertEquals("float " + i, Float.floatToIntBits(golden.triangleVertices[i]),
+                    Float.floatToIntBits(arrays.triangleVertices[i]));
+        }
+    }
+
+    private void assertGeneratedSizes() {
+        final RoundedGeometry.GeometryArrays arrays =
+                mGeometry.generateVertexData(mRadii, mViewPortGLBounds, WIDTH, HEIGHT);
+        assertEquals(mGeometry.getVertexFloatCount(mRadii), arrays.triangleVertices.length);
+        assertEquals(mGeometry.getIndexCount(mRadii), arrays.triangleIndices.length);
+        for (final short index : arrays.triangleIndices) {
+            assertTrue(index >= 0 &&
+                    index < arrays.triangleVertices.length / RoundedGeometry.FLOATS_PER_VERTEX);
+        }
+    }
+
+    /**
+     * Reads a geometry dump: comment lines starting with #, then "vertices n" followed by a line
+     * of 5 floats per vertex and "indices n" followed by the indices, any amount per line.
+     */
+    private static RoundedGeometry.GeometryArrays readGolden(String name) throws IOException {
+        final InputStream in = RoundedGeometryTest.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        final StringBuilder text = new StringBuilder();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    text.append(line).append(' ');
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        final String[] tokens = text.toString().trim().split("\\s+");
+        int i = 0;
+        assertEquals("vertices", tokens[i++]);
+        final float[] vertices =
+                new float[Integer.parseInt(tokens[i++]) * RoundedGeometry.FLOATS_PER_VERTEX];
+        for (int v = 0; v < vertices.length; v++) {
+            vertices[v] = Float.parseFloat(tokens[i++]);
+        }
+        assertEquals("indices", tokens[i++]);
+        final short[] indices = new short[Integer.parseInt(tokens[i++])];
+        for (int n = 0; n < indices.length; n++) {
+            indices[n] = Short.parseShort(tokens[i++]);
+        }
+        assertEquals(tokens.length, i);
+        return new RoundedGeometry.GeometryArrays(vertices, indices);
+    }
+}
@@ -0,0 +1,125 @@
+package com.abrantix.roundedvideo.geometry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Scores how far the corners of {@link RoundedGeometry} are from true arcs for a range of radii
+ * and triangle counts, by rasterizing both with {@link ReferenceRasterizer}, and picks the
+ * fewest triangles that keep each radius within a coverage error budget.
+ *
+ * Run with ./gradlew :geometry:tessellationReport, optionally with
+ * -Pargs='threshold samplesPerAxis imageDir': the largest acceptable coverage error of a pixel
+ * (1/64, four levels of 8 bit alpha, by default), the samples of each pixel on each axis (32 by
+ * default) and a directory to write the mesh and reference coverage of every configuration to,
+ * as PGM images, for golden images or a closer look.
+ *
+ * The errors are resolved to a sample, so a threshold only means something when it spans a
+ * few samples, see {@link ReferenceRasterizer}. The samples per axis are raised to
+ * {@link #getMinSamplesPerAxis(float)} for thresholds too fine for them, e.g. 64 for 1/255.
+ */
+public final class TessellationReport {
+
+    private static final int[] RADII = {2, 4, 8, 16, 32, 64, 128, 256};
+    private static final int[] TRIANGLES = {1, 2, 3, 4, 6, 8, 12, 16, 24, 32, 48, 64};
+    // room between the corner and the rest of the view port, so only one corner is in the window
+    private static final int MARGIN = 4;
+    private static final float DEFAULT_THRESHOLD = 1f / 64f;
+    private static final int DEFAULT_SAMPLES_PER_AXIS = 32;
+    // samples a threshold has to span to tell a configuration within it from one just above
+    private static final int MIN_SAMPLES_PER_THRESHOLD = 16;
+
+    private TessellationReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        final float threshold = args.length > 0 ? Float.parseFloat(args[0]) : DEFAULT_THRESHOLD;
+        if (threshold <= 0f || threshold >= 1f) {
+            throw new IllegalArgumentException("Threshold must be between 0 and 1");
+        }
+        final int samplesPerAxis = Math.max(getMinSamplesPerAxis(threshold),
+                args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SAMPLES_PER_AXIS);
+        final File imageDir = args.length > 2 ? new File(args[2]) : null;
+        if (imageDir != null && !imageDir.isDirectory() && !imageDir.mkdirs()) {
+            throw new IOException("Can't create " + imageDir);
+        }
+
+        System.out.println("threshold=" + threshold + " samplesPerAxis=" + samplesPerAxis);
+        System.out.println("radius\ttriangles\tsagitta\tmaxError\tmeanError\tvisiblePixels");
+        final RoundedGeometry defaults = new RoundedGeometry();
+        final StringBuilder summary = new StringBuilder();
+        for (final int radius : RADII) {
+            int minimum = -1;
+            for (final int triangles : TRIANGLES) {
+                final ReferenceRasterizer.Score score =
+                        score(radius, triangles, samplesPerAxis, imageDir);
+                // the farthest a chord gets from its arc
+                final double sagitta = radius * (1.0 - Math.cos(Math.PI / (4.0 * triangles)));
+                System.out.println(radius + "\t" + triangles + "\t" +
+                        String.format("%.4f\t%.4f\t%.5f\t%d", sagitta, score.maxError,
+                                score.meanError, score.visiblePixels));
+                if (minimum < 0 && score.maxError <= threshold) {
+                    minimum = triangles;
+                }
+            }
+            summary.append(radius).append("\t")
+                    .append(minimum < 0 ? ">" + TRIANGLES[TRIANGLES.length - 1] : minimum)
+                    .append("\t").append(defaults.getTrianglesPerCorner(radius))
+                    .append("\n");
+        }
+        System.out.println();
+        System.out.println("radius\tminimum\tdefault (" +
+                RoundedGeometry.DEFAULT_MAX_CHORD_ERROR_PX + "px chord error)");
+        System.out.print(summary);
+    }
+
+    /**
+     * @return the fewest samples per axis that resolve the given coverage error threshold to
+     * {@link #MIN_SAMPLES_PER_THRESHOLD} samples, 4 / sqrt(threshold) rounded up.
+     */
+    static int getMinSamplesPerAxis(float threshold) {
+        return (int) Math.ceil(Math.sqrt(MIN_SAMPLES_PER_THRESHOLD / threshold));
+    }
+
+    /**
+     * Rasterizes the top left corner of a view port with every corner rounded by the given
+     * radius, once from the mesh and once from the true arc, and compares them.
+     */
+    private static ReferenceRasterizer.Score score(int radius, int triangles, int samplesPerAxis,
+                                                  File imageDir) throws IOException {
+        final int size = 2 * (radius + MARGIN);
+        final Corners radii = new Corners(radius, radius, radius, radius);
+        final Bounds viewPortGLBounds = new Bounds(-1f, 1f, 1f, -1f);
+        final RoundedGeometry geometry = new RoundedGeometry();
+        geometry.setTrianglesPerCorner(triangles);
+        final RoundedGeometry.GeometryArrays mesh =
+                geometry.generateVertexData(radii, viewPortGLBounds, size, size);
+
+        final int window = radius + MARGIN;
+        final ReferenceRasterizer meshRaster =
+                new ReferenceRasterizer(window, window, samplesPerAxis);
+        meshRaster.reset(0, 0);
+        meshRaster.drawMesh(mesh, geometry.getTopology(), viewPortGLBounds, size, size);
+        final ReferenceRasterizer arcRaster =
+                new ReferenceRasterizer(window, window, samplesPerAxis);
+        arcRaster.reset(0, 0);
+        arcRaster.drawRoundedRect(radii, size, size);
+
+        if (imageDir != null) {
+            write(meshRaster, new File(imageDir, "r" + radius + "_t" + triangles + ".pgm"));
+            write(arcRaster, new File(imageDir, "r" + radius + "_arc.pgm"));
+        }
+        return ReferenceRasterizer.compare(meshRaster, arcRaster);
+    }
+
+    private static void write(ReferenceRasterizer raster, File file) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            raster.writePgm(out);
+        } finally {
+            out.close();
+        }
+    }
+}